@@ -0,0 +1,277 @@
+package com.dsvl.flood;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The SHA-256 of a file's content, and a Merkle tree of the SHA-256 of each of its
+ * {@link #CHUNK_SIZE} chunks.
+ * <br>
+ * The hash of the whole file is its ETag and, shortened, how search results tell copies of a file
+ * apart. The chunk hashes let a download check every chunk as it arrives; the root of the tree,
+ * which every node serving the file sends along with it, is what the chunk hashes a source sends
+ * are checked against. A parent in the tree is the SHA-256 of its two children one after the
+ * other; the last node of an odd level is carried up as it is. A digest is computed in one pass
+ * over the file and is only valid for the size and modification time it was computed from.
+ */
+public final class ContentDigest {
+
+    /**
+     * The same on every node, so that the trees of copies of a file are the same
+     */
+    public static final int CHUNK_SIZE = 64 * 1024;
+
+    /**
+     * Length of the hashes in SEROK, enough to tell the copies of a file apart
+     */
+    public static final int SHORT_HASH_LENGTH = 16;
+
+    /**
+     * Response header of {@code /file/{fileName}} holding the root of the file's tree in hex
+     */
+    public static final String ROOT_HEADER = "X-Content-Root";
+
+    private final long size;
+    private final long modified;
+    private final String hash;
+    private final List<byte[]> chunks;
+    private final String root;
+
+    private ContentDigest(long size, long modified, String hash, List<byte[]> chunks) {
+        this.size = size;
+        this.modified = modified;
+        this.hash = hash;
+        this.chunks = Collections.unmodifiableList(chunks);
+        this.root = hex(root(chunks));
+    }
+
+    /**
+     * Reads the whole file
+     */
+    public static ContentDigest compute(Path file) throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        MessageDigest whole = sha256();
+        MessageDigest chunk = sha256();
+        List<byte[]> chunks = new ArrayList<>();
+        ByteBuffer buffer = ByteBuffer.allocate(CHUNK_SIZE);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            boolean end = false;
+            while (!end) {
+                end = channel.read(buffer) == -1;
+                if (buffer.position() == CHUNK_SIZE || end && buffer.position() > 0) {
+                    buffer.flip();
+                    whole.update(buffer.duplicate());
+                    chunk.update(buffer);
+                    chunks.add(chunk.digest());
+                    buffer.clear();
+                }
+            }
+        }
+        return new ContentDigest(attributes.size(), attributes.lastModifiedTime().toMillis(), hex(whole.digest()), chunks);
+    }
+
+    /**
+     * @param chunks the chunk hashes in hex, as another node sent them
+     * @return the digest of a file of another node, or {@code null} if the hashes are not valid
+     * for a file of this size
+     */
+    public static ContentDigest of(long size, String hash, List<String> chunks) {
+        if (chunks.size() != (size + CHUNK_SIZE - 1) / CHUNK_SIZE) {
+            return null;
+        }
+        List<byte[]> decoded = new ArrayList<>(chunks.size());
+        for (String chunk : chunks) {
+            byte[] bytes = unhex(chunk);
+            if (bytes == null || bytes.length != 32) {
+                return null;
+            }
+            decoded.add(bytes);
+        }
+        return new ContentDigest(size, -1, hash, decoded);
+    }
+
+    /**
+     * @return whether the file is still the one the digest was computed from
+     */
+    public boolean isCurrent(BasicFileAttributes attributes) {
+        return size == attributes.size() && modified == attributes.lastModifiedTime().toMillis();
+    }
+
+    /**
+     * Checks data read from the file against the chunk hashes
+     *
+     * @param start where the data starts in the file, at the start of a chunk
+     * @param data  whole chunks, or the last chunk of the file; left as it is
+     */
+    public boolean matches(long start, ByteBuffer data) {
+        if (start % CHUNK_SIZE != 0) {
+            return false;
+        }
+        MessageDigest digest = sha256();
+        ByteBuffer remaining = data.duplicate();
+        int index = (int) (start / CHUNK_SIZE);
+        while (remaining.hasRemaining()) {
+            if (index >= chunks.size()) {
+                return false;
+            }
+            int length = (int) Math.min(CHUNK_SIZE, size - (long) index * CHUNK_SIZE);
+            if (remaining.remaining() < length) {
+                return false;
+            }
+            ByteBuffer chunk = remaining.duplicate();
+            chunk.limit(chunk.position() + length);
+            digest.update(chunk);
+            if (!Arrays.equals(digest.digest(), chunks.get(index))) {
+                return false;
+            }
+            remaining.position(remaining.position() + length);
+            index++;
+        }
+        return true;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     * @return the SHA-256 of the whole file in hex
+     */
+    public String getHash() {
+        return hash;
+    }
+
+    public String getShortHash() {
+        return hash.substring(0, SHORT_HASH_LENGTH);
+    }
+
+    /**
+     * @return the root of the chunk tree in hex
+     */
+    public String getRoot() {
+        return root;
+    }
+
+    /**
+     * @return the chunk hashes in hex, in file order
+     */
+    public List<String> getChunkHashes() {
+        List<String> hashes = new ArrayList<>(chunks.size());
+        for (byte[] chunk : chunks) {
+            hashes.add(hex(chunk));
+        }
+        return hashes;
+    }
+
+    /**
+     * Writes the digest to be read back with {@link #read(Path)} after a restart
+     */
+    public void write(Path file) throws IOException {
+        Path part = file.resolveSibling(file.getFileName() + ".part");
+        try (BufferedWriter writer = Files.newBufferedWriter(part, StandardCharsets.US_ASCII)) {
+            writer.write(size + " " + modified + ' ' + CHUNK_SIZE + ' ' + hash);
+            writer.newLine();
+            for (byte[] chunk : chunks) {
+                writer.write(hex(chunk));
+                writer.newLine();
+            }
+        }
+        Files.move(part, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * @return the digest written by {@link #write(Path)}, or {@code null} if there is none or it
+     * was written with another chunk size or is damaged
+     */
+    public static ContentDigest read(Path file) throws IOException {
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.US_ASCII)) {
+            String header = reader.readLine();
+            String[] fields = header == null ? new String[0] : header.split(" ");
+            if (fields.length != 4 || Integer.parseInt(fields[2]) != CHUNK_SIZE) {
+                return null;
+            }
+            List<String> chunks = new ArrayList<>();
+            String line;
+            while ((line = reader.readLine()) != null) {
+                chunks.add(line);
+            }
+            ContentDigest digest = of(Long.parseLong(fields[0]), fields[3], chunks);
+            return digest == null ? null
+                    : new ContentDigest(digest.size, Long.parseLong(fields[1]), digest.hash, digest.chunks);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static byte[] root(List<byte[]> chunks) {
+        if (chunks.isEmpty()) {
+            return sha256().digest();
+        }
+        List<byte[]> level = chunks;
+        MessageDigest digest = sha256();
+        while (level.size() > 1) {
+            List<byte[]> parents = new ArrayList<>((level.size() + 1) / 2);
+            for (int i = 0; i < level.size(); i += 2) {
+                if (i + 1 == level.size()) {
+                    parents.add(level.get(i));
+                } else {
+                    digest.update(level.get(i));
+                    digest.update(level.get(i + 1));
+                    parents.add(digest.digest());
+                }
+            }
+            level = parents;
+        }
+        return level.get(0);
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("Every JVM has SHA-256", e);
+        }
+    }
+
+    public static String hex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return hex.toString();
+    }
+
+    private static byte[] unhex(String hex) {
+        if (hex.length() % 2 != 0) {
+            return null;
+        }
+        byte[] bytes = new byte[hex.length() / 2];
+        for (int i = 0; i < bytes.length; i++) {
+            int high = Character.digit(hex.charAt(2 * i), 16);
+            int low = Character.digit(hex.charAt(2 * i + 1), 16);
+            if (high < 0 || low < 0) {
+                return null;
+            }
+            bytes[i] = (byte) (high << 4 | low);
+        }
+        return bytes;
+    }
+}
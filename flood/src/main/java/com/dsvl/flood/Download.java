@@ -0,0 +1,301 @@
+package com.dsvl.flood;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * One file downloaded in chunks from several nodes at once, and its progress.
+ * <br>
+ * Every source takes the next pending chunk whenever it is done with one, so a fast source
+ * fetches more chunks than a slow one. Once no chunk is pending the sources that are done fetch
+ * the chunks still in flight elsewhere as well, and whichever copy arrives first counts; a slow
+ * source therefore never holds up the last chunks. Safe for concurrent use.
+ *
+ * @see com.dsvl.flood.service.DownloadService
+ */
+public class Download {
+
+    public enum State {
+        /**
+         * Asking the sources for the size and version of the file
+         */
+        PROBING,
+        DOWNLOADING,
+        /**
+         * Checking the whole file against its content hash
+         */
+        VERIFYING,
+        DONE,
+        FAILED
+    }
+
+    private static final int PENDING = 0;
+    private static final int FETCHING = 1;
+    private static final int FETCHED = 2;
+
+    /**
+     * One node the file is fetched from
+     */
+    public static final class Source {
+        private final String url;
+        private final AtomicLong bytes = new AtomicLong();
+        private final AtomicLong nanos = new AtomicLong();
+        private final AtomicInteger failures = new AtomicInteger();
+        private volatile boolean active = true;
+
+        public Source(String url) {
+            this.url = url;
+        }
+
+        public String getUrl() {
+            return url;
+        }
+
+        /**
+         * Records a chunk fetched from the source
+         */
+        public void fetched(long chunkBytes, long chunkNanos) {
+            bytes.addAndGet(chunkBytes);
+            nanos.addAndGet(chunkNanos);
+        }
+
+        /**
+         * @return the number of failures so far, this one included
+         */
+        public int failed() {
+            return failures.incrementAndGet();
+        }
+
+        /**
+         * @return the average rate of the chunks fetched so far, {@code 0} before the first one
+         */
+        public long getBytesPerSecond() {
+            long spent = nanos.get();
+            return spent == 0 ? 0 : bytes.get() * TimeUnit.SECONDS.toNanos(1) / spent;
+        }
+
+        public boolean isActive() {
+            return active;
+        }
+
+        public void retire() {
+            active = false;
+        }
+
+        Map<String, Object> getProgress() {
+            Map<String, Object> progress = new LinkedHashMap<>();
+            progress.put("url", url);
+            progress.put("bytes", bytes.get());
+            progress.put("bytesPerSecond", getBytesPerSecond());
+            progress.put("failures", failures.get());
+            progress.put("active", active);
+            return progress;
+        }
+    }
+
+    private final long id;
+    private final String fileName;
+    private final long startedAt = System.nanoTime();
+    private volatile State state = State.PROBING;
+    private volatile String error;
+
+    private volatile List<Source> sources = Collections.emptyList();
+    private volatile int rejectedSources;
+    private volatile long size;
+    private volatile String eTag;
+    private volatile int chunkSize;
+    private volatile ContentDigest chunkHashes;
+    private volatile AtomicIntegerArray chunks = new AtomicIntegerArray(0);
+    private final Queue<Integer> pending = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger chunksFetched = new AtomicInteger();
+    private final AtomicLong bytesFetched = new AtomicLong();
+    private final AtomicInteger workers = new AtomicInteger();
+
+    public Download(long id, String fileName) {
+        this.id = id;
+        this.fileName = fileName;
+    }
+
+    /**
+     * Splits the file into chunks, all pending, and starts downloading
+     *
+     * @param sources  the sources serving this version of the file
+     * @param rejected the number of sources that serve another file under the same name or did not answer
+     * @param chunkHashes the hashes to check every chunk against, {@code null} if the sources did not send them
+     */
+    public void plan(long size, String eTag, int chunkSize, List<Source> sources, int rejected, ContentDigest chunkHashes) {
+        this.size = size;
+        this.eTag = eTag;
+        this.chunkSize = chunkSize;
+        this.chunkHashes = chunkHashes;
+        this.sources = Collections.unmodifiableList(new ArrayList<>(sources));
+        this.rejectedSources = rejected;
+        int count = (int) ((size + chunkSize - 1) / chunkSize);
+        chunks = new AtomicIntegerArray(count);
+        for (int i = 0; i < count; i++) {
+            pending.add(i);
+        }
+        state = State.DOWNLOADING;
+    }
+
+    /**
+     * @return the next chunk to fetch: a pending one, or once there are none, one that is still
+     * being fetched by another source; {@code -1} if every chunk has been fetched
+     */
+    public int nextChunk() {
+        Integer chunk;
+        while ((chunk = pending.poll()) != null) {
+            if (chunks.compareAndSet(chunk, PENDING, FETCHING)) {
+                return chunk;
+            }
+        }
+        for (int i = 0; i < chunks.length(); i++) {
+            if (chunks.get(i) == FETCHING) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return whether this fetch of the chunk is the first one to complete
+     */
+    public boolean fetched(int chunk) {
+        if (chunks.getAndSet(chunk, FETCHED) == FETCHED) {
+            return false;
+        }
+        chunksFetched.incrementAndGet();
+        bytesFetched.addAndGet(chunkLength(chunk));
+        return true;
+    }
+
+    /**
+     * Puts the chunk back to be fetched from another source, unless a copy of it already arrived
+     */
+    public void retry(int chunk) {
+        if (chunks.compareAndSet(chunk, FETCHING, PENDING)) {
+            pending.add(chunk);
+        }
+    }
+
+    public boolean isComplete() {
+        return chunksFetched.get() == chunks.length();
+    }
+
+    public long chunkStart(int chunk) {
+        return (long) chunk * chunkSize;
+    }
+
+    public int chunkLength(int chunk) {
+        return (int) Math.min(chunkSize, size - chunkStart(chunk));
+    }
+
+    /**
+     * @return whether the source is much slower than the fastest one still working
+     * @param slowFactor how many times slower a source may be
+     */
+    public boolean isSlow(Source source, int slowFactor) {
+        long rate = source.getBytesPerSecond();
+        if (rate == 0) {
+            return false;
+        }
+        for (Source other : sources) {
+            if (other != source && other.isActive() && other.getBytesPerSecond() > rate * slowFactor) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public void workerStarted() {
+        workers.incrementAndGet();
+    }
+
+    /**
+     * @return whether this was the last source still working
+     */
+    public boolean workerDone() {
+        return workers.decrementAndGet() == 0;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public String getFileName() {
+        return fileName;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     * @return the strong ETag every source serves the file with, the SHA-256 of its content in quotes
+     */
+    public String getETag() {
+        return eTag;
+    }
+
+    /**
+     * @return the hashes every chunk is checked against as it arrives, {@code null} if only the
+     * whole file is checked
+     */
+    public ContentDigest getChunkHashes() {
+        return chunkHashes;
+    }
+
+    public List<Source> getSources() {
+        return sources;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    public boolean isFinished() {
+        return state == State.DONE || state == State.FAILED;
+    }
+
+    public void setState(State state) {
+        this.state = state;
+    }
+
+    public void fail(String error) {
+        this.error = error;
+        this.state = State.FAILED;
+    }
+
+    public Map<String, Object> getProgress() {
+        Map<String, Object> progress = new LinkedHashMap<>();
+        progress.put("id", id);
+        progress.put("fileName", fileName);
+        progress.put("state", state);
+        progress.put("size", size);
+        progress.put("bytesFetched", bytesFetched.get());
+        progress.put("chunks", chunks.length());
+        progress.put("chunksFetched", chunksFetched.get());
+        progress.put("chunksChecked", chunkHashes != null);
+        long elapsed = System.nanoTime() - startedAt;
+        progress.put("bytesPerSecond", elapsed == 0 ? 0 : bytesFetched.get() * TimeUnit.SECONDS.toNanos(1) / elapsed);
+        List<Map<String, Object>> sourceProgress = new ArrayList<>();
+        for (Source source : sources) {
+            sourceProgress.add(source.getProgress());
+        }
+        progress.put("sources", sourceProgress);
+        progress.put("rejectedSources", rejectedSources);
+        if (error != null) {
+            progress.put("error", error);
+        }
+        return progress;
+    }
+}
@@ -0,0 +1,78 @@
+package com.dsvl.flood;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+
+/**
+ * An IPv4 address and a port, compared by value.
+ * <br>
+ * Both are packed in one {@code long}, see {@link #key()}, so comparing two endpoints never
+ * touches an {@code InetAddress} and never triggers a name lookup. Endpoints are obtained from
+ * {@link EndpointRegistry}, which hands out one canonical instance per address and port.
+ */
+public final class Endpoint {
+
+    private final long key;
+    private final InetAddress address;
+    private final String hostAddress;
+
+    Endpoint(int ip, int port) {
+        this.key = key(ip, port);
+        byte[] octets = {(byte) (ip >>> 24), (byte) (ip >>> 16), (byte) (ip >>> 8), (byte) ip};
+        try {
+            this.address = InetAddress.getByAddress(octets); // builds the address, no lookup
+        } catch (UnknownHostException e) {
+            throw new IllegalStateException("four octets are always a valid address", e);
+        }
+        this.hostAddress = address.getHostAddress();
+    }
+
+    /**
+     * @return the address in the upper 32 bits and the port in the lower 16
+     */
+    static long key(int ip, int port) {
+        return ((ip & 0xffffffffL) << 16) | (port & 0xffff);
+    }
+
+    public long key() {
+        return key;
+    }
+
+    public int getIp() {
+        return (int) (key >>> 16);
+    }
+
+    public int getPort() {
+        return (int) (key & 0xffff);
+    }
+
+    public InetAddress getAddress() {
+        return address;
+    }
+
+    /**
+     * @return the address as an IP literal, e.g. {@code 10.0.0.1}
+     */
+    public String getHostAddress() {
+        return hostAddress;
+    }
+
+    public boolean is(InetAddress address, int port) {
+        return port == getPort() && this.address.equals(address); // compares the octets, no lookup
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return this == o || o instanceof Endpoint && ((Endpoint) o).key == key;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(key);
+    }
+
+    @Override
+    public String toString() {
+        return hostAddress + ":" + getPort();
+    }
+}
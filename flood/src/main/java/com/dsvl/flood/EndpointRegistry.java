@@ -0,0 +1,105 @@
+package com.dsvl.flood;
+
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Hands out canonical {@link Endpoint}s without ever resolving a name.
+ * <br>
+ * Addresses arriving in messages are IP literals, so they are parsed, not looked up with
+ * {@code InetAddress.getByName}; host names are rejected instead. Endpoints are interned up to
+ * {@link #MAX_INTERNED}, after which equal but separate instances are returned, which still
+ * compare equal.
+ */
+public final class EndpointRegistry {
+
+    /**
+     * Enough for every peer a node hears of in a long running network
+     */
+    static final int MAX_INTERNED = 4096;
+
+    private static final Map<Long, Endpoint> endpoints = new ConcurrentHashMap<>();
+
+    private EndpointRegistry() {
+    }
+
+    /**
+     * @param ip IPv4 address packed in an {@code int}, most significant byte first
+     */
+    public static Endpoint of(int ip, int port) {
+        long key = Endpoint.key(ip, port);
+        Endpoint endpoint = endpoints.get(key);
+        if (endpoint != null) {
+            return endpoint;
+        }
+        endpoint = new Endpoint(ip, port);
+        if (endpoints.size() >= MAX_INTERNED) {
+            return endpoint;
+        }
+        Endpoint existing = endpoints.putIfAbsent(key, endpoint);
+        return existing != null ? existing : endpoint;
+    }
+
+    /**
+     * @throws IllegalArgumentException if the address is not an IPv4 address
+     */
+    public static Endpoint of(InetAddress address, int port) {
+        return of(toIp(address), port);
+    }
+
+    /**
+     * Parses a dotted quad IPv4 literal without any name resolution
+     *
+     * @return the endpoint, or {@code null} if {@code address} is not an IPv4 literal
+     */
+    public static Endpoint parse(String address, int port) {
+        if (address == null) {
+            return null;
+        }
+        int ip = 0;
+        int octets = 0;
+        int octet = -1;
+        for (int i = 0; i <= address.length(); i++) {
+            char c = i < address.length() ? address.charAt(i) : '.';
+            if (c == '.') {
+                if (octet < 0 || ++octets > 4) {
+                    return null;
+                }
+                ip = (ip << 8) | octet;
+                octet = -1;
+            } else if (c >= '0' && c <= '9') {
+                octet = (octet < 0 ? 0 : octet * 10) + (c - '0');
+                if (octet > 255) {
+                    return null;
+                }
+            } else {
+                return null;
+            }
+        }
+        return octets == 4 ? of(ip, port) : null;
+    }
+
+    /**
+     * Like {@link #parse(String, int)}, but resolves host names.
+     * Meant for configuration read at startup, never for addresses received in messages.
+     */
+    public static Endpoint resolve(String host, int port) throws UnknownHostException {
+        Endpoint endpoint = parse(host, port);
+        return endpoint != null ? endpoint : of(InetAddress.getByName(host), port);
+    }
+
+    static int toIp(InetAddress address) {
+        if (!(address instanceof Inet4Address)) {
+            throw new IllegalArgumentException("Not an IPv4 address: " + address);
+        }
+        byte[] octets = address.getAddress();
+        return (octets[0] & 0xff) << 24 | (octets[1] & 0xff) << 16 | (octets[2] & 0xff) << 8 | (octets[3] & 0xff);
+    }
+
+    public static int size() {
+        return endpoints.size();
+    }
+}
@@ -0,0 +1,326 @@
+package com.dsvl.flood;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Inverted index of file names, and the catalog of the node's files.
+ * <br>
+ * Every lower cased word of a file name maps to the ids of the files having it. A query
+ * matches the files having all of its words: the posting lists of the words are intersected
+ * starting from the shortest one, so a lookup costs about as much as the rarest word's
+ * postings, however many files are indexed.
+ * <br>
+ * A file keeps the id it was given when added until it is removed, ids are never reused.
+ * Adding or removing a file only touches the postings of its own words.
+ * <br>
+ * Words are separated by spaces or underscores, SER queries and SEROK file names use underscores.
+ * Safe for concurrent use; searches run in parallel, changes exclusively.
+ * <br>
+ * {@link #search(String, int)} ranks the matches by how much of the file name the query covers,
+ * each word weighted by its inverse document frequency: a rare word counts more than a word most
+ * files have. The query and the file name are compared as vectors of the weights of their words,
+ * so "Super Mario" ranks above "Super Mario 2" for the query "mario".
+ */
+public class FileIndex {
+
+    private static final String SEPARATORS = "[\\s_]+";
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * Files by id, in the order they were added
+     */
+    private final Map<Integer, File> files = new LinkedHashMap<>();
+    private final Map<String, Integer> ids = new HashMap<>();
+    /**
+     * Names of the files by their names with underscores for spaces, as SEROK sends them
+     */
+    private final Map<String, String> wireNames = new HashMap<>();
+    private final Map<String, Set<Integer>> postings = new HashMap<>();
+    /**
+     * Distinct words of the file names by id, so that ranking does not split the names again
+     */
+    private final Map<Integer, String[]> words = new HashMap<>();
+    private int nextId;
+
+    /**
+     * Adds the file unless a file of the same name is already indexed
+     *
+     * @return the id of the file
+     */
+    public int add(File file) {
+        lock.writeLock().lock();
+        try {
+            return addFile(file);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Adds all files at once, searches see either none or all of them
+     */
+    public void addAll(Collection<File> newFiles) {
+        lock.writeLock().lock();
+        try {
+            for (File file : newFiles) {
+                addFile(file);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private int addFile(File file) {
+        Integer existing = ids.get(file.getFileName());
+        if (existing != null) {
+            return existing;
+        }
+        int id = nextId++;
+        files.put(id, file);
+        ids.put(file.getFileName(), id);
+        wireNames.put(wireName(file.getFileName()), file.getFileName());
+        Set<String> tokens = tokens(file.getFileName());
+        for (String token : tokens) {
+            postings.computeIfAbsent(token, t -> new HashSet<>()).add(id);
+        }
+        words.put(id, tokens.toArray(new String[0]));
+        return id;
+    }
+
+    /**
+     * @param fileName the name of a file as it is or as SEROK sends it, with underscores for spaces
+     * @return the name the file is indexed with, or {@code null} if there is no such file
+     */
+    public String catalogName(String fileName) {
+        lock.readLock().lock();
+        try {
+            return ids.containsKey(fileName) ? fileName : wireNames.get(fileName);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private static String wireName(String fileName) {
+        return fileName.replace(' ', '_');
+    }
+
+    /**
+     * @return whether a file of that name was indexed
+     */
+    public boolean remove(File file) {
+        lock.writeLock().lock();
+        try {
+            Integer id = ids.remove(file.getFileName());
+            if (id == null) {
+                return false;
+            }
+            wireNames.remove(wireName(file.getFileName()), file.getFileName());
+            files.remove(id);
+            for (String token : words.remove(id)) {
+                Set<Integer> posting = postings.get(token);
+                posting.remove(id);
+                if (posting.isEmpty()) {
+                    postings.remove(token);
+                }
+            }
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return the files having every word of the query, in the order they were added
+     */
+    public List<File> search(String query) {
+        Set<String> tokens = tokens(query);
+        if (tokens.isEmpty()) {
+            return new ArrayList<>();
+        }
+        lock.readLock().lock();
+        try {
+            int[] matches = matches(tokens);
+            Arrays.sort(matches);
+
+            List<File> results = new ArrayList<>(matches.length);
+            for (int id : matches) {
+                results.add(files.get(id));
+            }
+            return results;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @param limit the most files to return, {@code 0} for all of them
+     * @return the files having every word of the query, best match first; equally good matches
+     * in the order they were added
+     */
+    public List<File> search(String query, int limit) {
+        Set<String> tokens = tokens(query);
+        if (tokens.isEmpty()) {
+            return new ArrayList<>();
+        }
+        lock.readLock().lock();
+        try {
+            int[] matches = matches(tokens);
+            int k = limit > 0 ? Math.min(limit, matches.length) : matches.length;
+            if (k == 0) {
+                return new ArrayList<>();
+            }
+
+            // every match has all the words of the query, so its score only depends on the weight
+            // of its own words: the lower that weight, the more of the file name the query covers
+            PriorityQueue<Scored> best = new PriorityQueue<>(k);
+            for (int id : matches) {
+                double worstKept = best.size() == k ? best.peek().fileNorm : Double.MAX_VALUE;
+                double fileNorm = 0;
+                for (String word : words.get(id)) {
+                    fileNorm += square(idf(word));
+                    if (fileNorm > worstKept) {
+                        break; // the weight only grows, this file cannot make it into the top k
+                    }
+                }
+                Scored scored = new Scored(id, fileNorm);
+                if (best.size() < k) {
+                    best.add(scored);
+                } else if (scored.compareTo(best.peek()) > 0) {
+                    best.poll();
+                    best.add(scored);
+                }
+            }
+
+            Scored[] ranked = best.toArray(new Scored[0]);
+            Arrays.sort(ranked, Collections.reverseOrder());
+            List<File> results = new ArrayList<>(ranked.length);
+            for (Scored scored : ranked) {
+                results.add(files.get(scored.id));
+            }
+            return results;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return the ids of the files having all the words, in no particular order
+     */
+    private int[] matches(Set<String> tokens) {
+        List<Set<Integer>> lists = new ArrayList<>(tokens.size());
+        for (String token : tokens) {
+            Set<Integer> posting = postings.get(token);
+            if (posting == null) {
+                return new int[0]; // no file has this word
+            }
+            lists.add(posting);
+        }
+        lists.sort(Comparator.comparingInt(Set::size));
+
+        Set<Integer> shortest = lists.get(0);
+        int[] matches = new int[shortest.size()];
+        int count = 0;
+        for (Integer id : shortest) {
+            boolean inAll = true;
+            for (int i = 1; i < lists.size() && inAll; i++) {
+                inAll = lists.get(i).contains(id);
+            }
+            if (inAll) {
+                matches[count++] = id;
+            }
+        }
+        return Arrays.copyOf(matches, count);
+    }
+
+    private double idf(String word) {
+        Set<Integer> posting = postings.get(word);
+        return Math.log(1 + (double) files.size() / (posting == null ? 1 : posting.size()));
+    }
+
+    private static double square(double value) {
+        return value * value;
+    }
+
+    /**
+     * A match and the weight of its file name; the heap keeps the worst kept match on top
+     */
+    private static final class Scored implements Comparable<Scored> {
+        final int id;
+        final double fileNorm;
+
+        Scored(int id, double fileNorm) {
+            this.id = id;
+            this.fileNorm = fileNorm;
+        }
+
+        /**
+         * Orders worse matches first: heavier file names, then files added later
+         */
+        @Override
+        public int compareTo(Scored other) {
+            int byNorm = Double.compare(other.fileNorm, fileNorm);
+            return byNorm != 0 ? byNorm : Integer.compare(other.id, id);
+        }
+    }
+
+    /**
+     * @return a copy of the indexed files, in the order they were added
+     */
+    public List<File> getFiles() {
+        lock.readLock().lock();
+        try {
+            return new ArrayList<>(files.values());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return a copy of the distinct words of the indexed file names
+     */
+    public Set<String> getWords() {
+        lock.readLock().lock();
+        try {
+            return new HashSet<>(postings.keySet());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return files.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return the distinct lower cased words of a file name or a query
+     */
+    public static Set<String> tokens(String text) {
+        Set<String> tokens = new LinkedHashSet<>();
+        for (String token : text.toLowerCase().split(SEPARATORS)) {
+            if (!token.isEmpty()) {
+                tokens.add(token);
+            }
+        }
+        return tokens;
+    }
+}
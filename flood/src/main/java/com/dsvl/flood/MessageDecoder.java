@@ -1,194 +1,333 @@
 package com.dsvl.flood;
 
 import com.dsvl.flood.exceptions.ErroneousResponseException;
-import com.dsvl.flood.model.Result;
+import com.dsvl.flood.message.Acknowledgement;
+import com.dsvl.flood.message.Join;
+import com.dsvl.flood.message.Leave;
+import com.dsvl.flood.message.Message;
+import com.dsvl.flood.message.MessagePool;
+import com.dsvl.flood.message.OtherMessage;
+import com.dsvl.flood.message.Ping;
+import com.dsvl.flood.message.PingOk;
+import com.dsvl.flood.message.RegisterOk;
+import com.dsvl.flood.message.Search;
+import com.dsvl.flood.message.SearchOk;
+import com.dsvl.flood.message.WalkCheck;
+import com.dsvl.flood.util.BloomFilter;
 
-import java.net.InetAddress;
-import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
-import java.util.StringTokenizer;
+import java.util.function.Supplier;
 
 public final class MessageDecoder {
     public static final String REGOK = "REGOK";
     public static final String UNROK = "UNROK";
     public static final String JOIN = "JOIN";
+    public static final String JOINOK = "JOINOK";
     public static final String LEAVE = "LEAVE";
+    public static final String LEAVEOK = "LEAVEOK";
     public static final String SER = "SER";
     public static final String SEROK = "SEROK";
     public static final String ERROR = "ERROR";
     public static final String PNG = "PNG";
     public static final String PNGOK = "PNGOK";
 
-    public static MessageObject decode(byte[] data, int dataLength) throws ErroneousResponseException {
-        String s = new String(data, 0, dataLength);
+    /**
+     * Starts the optional last token of a SER message, followed by the query id in hexadecimal
+     */
+    static final byte[] QUERY_ID_PREFIX = {'q', '='};
 
-        StringTokenizer st = new StringTokenizer(s, " ");
+    /**
+     * Optional token of a SER message passed on by random walkers, see {@link Search.Forwarding}
+     */
+    static final byte[] WALK_TOKEN = {'m', '=', 'w', 'a', 'l', 'k'};
+    private static final byte[] FORWARDING_PREFIX = {'m', '='};
+    static final byte[] LIMIT_PREFIX = {'k', '='};
+    /**
+     * Starts the optional token of SEROK with the content hashes of the files
+     */
+    static final byte[] CONTENT_HASHES_PREFIX = {'h', '='};
+    private static final byte[] SUMMARY_PREFIX = RoutingSummary.TOKEN_PREFIX.getBytes(StandardCharsets.US_ASCII);
 
-        MessageObject messageObject = new MessageObject();
-        if (st.countTokens() < 2) {
-            messageObject.setMsgType("NONE");
-            return messageObject;
+    /**
+     * Returns the command of a message of the format {@code length COMMAND ...}
+     * without decoding the rest of it
+     */
+    public static String command(String message) {
+        int start = message.indexOf(' ') + 1;
+        if (start == 0) {
+            return "";
         }
-        String length = st.nextToken();
-        String command = st.nextToken();
+        int end = message.indexOf(' ', start);
+        return end == -1 ? message.substring(start) : message.substring(start, end);
+    }
+
+    /**
+     * Splits the message between {@code data}'s position and limit into tokens of {@code frame}
+     * without allocating. Neither the position nor the limit of {@code data} is changed.
+     *
+     * @return {@code frame}, whose type is {@link MessageType#NONE} if the data is not a message
+     */
+    public static MessageFrame decode(ByteBuffer data, MessageFrame frame) {
+        frame.reset(data);
+        int end = data.limit();
+        int tokenStart = -1;
+        for (int i = data.position(); i < end; i++) {
+            byte b = data.get(i);
+            if (b == ' ' || b == '\n' || b == '\r') {
+                if (tokenStart >= 0) {
+                    frame.addToken(tokenStart, i);
+                    tokenStart = -1;
+                }
+            } else if (tokenStart < 0) {
+                tokenStart = i;
+            }
+        }
+        if (tokenStart >= 0) {
+            frame.addToken(tokenStart, end);
+        }
+        if (frame.tokenCount() >= 2) {
+            frame.setType(MessageType.of(frame, 1));
+        }
+        return frame;
+    }
 
-        switch (command) {
+    public static Message decode(byte[] data, int dataLength) throws ErroneousResponseException {
+        MessageFrame frame = new MessageFrame();
+        return toMessage(decode(frame.wrap(data, dataLength), frame), null);
+    }
+
+    /**
+     * Copies what the handlers need out of a decoded frame, so that the buffer the frame reads
+     * from can be reused before the message is handled
+     *
+     * @param pool to take the message from, or {@code null} to create a new one
+     */
+    public static Message toMessage(MessageFrame frame, MessagePool pool) throws ErroneousResponseException {
+        switch (frame.type()) {
             case REGOK:
                 //expected response ---> length REGOK no_nodes IP_1 port_1 IP_2 port_2
-                messageObject.setMsgType(REGOK);
-                String numberOfNodesSt = st.nextToken();
-                if (numberOfNodesSt.length() == 1) { // REGOK with success
-                    int numberOfNodes = Integer.parseInt(numberOfNodesSt);
-                    List<Neighbour> addresses = new ArrayList<>();
-                    for (int i = 0; i < numberOfNodes; i++) {
-                        try {
-                            addresses.add(new Neighbour(InetAddress.getByName(st.nextToken()), Integer.parseInt(st.nextToken())));
-                        } catch (UnknownHostException e) {
-                            continue;
-                        }
-                    }
-                    messageObject.setExistingNodes(addresses);
+                if (frame.tokenLength(2) == 1) { // REGOK with success
+                    int numberOfNodes = frame.intToken(2);
+                    return create(pool, MessageType.REGOK, RegisterOk::new)
+                            .set(neighbours(frame, 3, numberOfNodes));
                 } else { // REGOK with error
                     String reason;
-                    switch (numberOfNodesSt) {
-                        case "9999":
+                    switch (frame.intToken(2)) {
+                        case 9999:
                             reason = "REG unsuccessful - Error in the command";
-                        case "9998":
+                            break;
+                        case 9998:
                             reason = "REG unsuccessful - Already registered, unregister first";
-                        case "9997":
+                            break;
+                        case 9997:
                             reason = "REG unsuccessful - Registered to another user, try a different IP and port";
-                        case "9996":
+                            break;
+                        case 9996:
                             reason = "REG unsuccessful - Can’t register. Bootstrap server full.";
+                            break;
                         default:
                             reason = "REG unsuccessful - Error registering to Bootstrap server";
                     }
                     throw new ErroneousResponseException(reason);
                 }
-                break;
+            case UNROK:
+            case JOINOK:
+            case LEAVEOK:
+            case WALKOK:
+                //expected ---> length JOINOK value
+                int value = frame.intToken(2);
+                return create(pool, frame.type(), Acknowledgement::new)
+                        .set(frame.type(), value == MessageFrame.INVALID ? Acknowledgement.ERROR : value);
+            case WALK:
+                //expected ---> length WALK q=query_id
+                if (!frame.tokenStartsWith(2, QUERY_ID_PREFIX)) {
+                    return other(pool, MessageType.UNKNOWN);
+                }
+                return create(pool, MessageType.WALK, WalkCheck::new)
+                        .set(Math.max(Search.NO_ID, frame.hexToken(2, QUERY_ID_PREFIX.length)));
             case JOIN:
                 //expected ---> length JOIN IP_address port_no
-                messageObject.setMsgType(JOIN);
-                try {
-                    String ip = st.nextToken();
-                    int port = Integer.parseInt(st.nextToken());
-                    messageObject.setJoinRequester(new Neighbour(InetAddress.getByName(ip), port));
-                } catch (UnknownHostException e) {
-                    //ignore
-                }
-                break;
+                return create(pool, MessageType.JOIN, Join::new).set(endpoint(frame, 2));
             case SER:
-                messageObject.setMsgType(SER);
-
-                try {
-                    String ip = st.nextToken();
-                    int port = Integer.parseInt(st.nextToken());
-                    messageObject.setSearch_udp_Port(port);
-                    messageObject.setSearch_ip(ip);
-                    String file_name = st.nextToken();
-                    int hops = Integer.parseInt(st.nextToken());
-                    messageObject.setFile_name(file_name);
-                    messageObject.setHops(hops);
-                } catch (Exception e) {
-                    //ignore
+                //expected ---> length SER IP port file_name hops [k=limit] [m=walk] q=query_id, the file name may contain spaces
+                //or, from nodes that do not tag their queries ---> length SER IP port file_name hops
+                int last = frame.tokenCount() - 1;
+                long queryId = Search.NO_ID;
+                if (frame.tokenStartsWith(last, QUERY_ID_PREFIX)) {
+                    queryId = Math.max(Search.NO_ID, frame.hexToken(last, QUERY_ID_PREFIX.length));
+                    last--;
                 }
-                break;
-            case SEROK:
-                messageObject.setMsgType(SEROK);
-                try {
-                    int no_of_results = Integer.parseInt(st.nextToken());
-                    String ip = st.nextToken();
-                    int tcp_port = Integer.parseInt(st.nextToken());
-                    int hops = Integer.parseInt(st.nextToken()) + 1;
-
-                    Result result;
-                    while (st.hasMoreTokens()) {
-                        String fileName = st.nextToken();
-                        String uri = "http://" + ip + ":" + tcp_port + "/file/" + fileName;
-
-                        result = new Result(fileName, uri, hops);
-                        Node.latestSearchResults.add(result);
-
+                Search.Forwarding forwarding = Search.Forwarding.FLOOD;
+                if (frame.tokenStartsWith(last, FORWARDING_PREFIX)) {
+                    if (frame.tokenEquals(last, WALK_TOKEN)) {
+                        forwarding = Search.Forwarding.WALK;
                     }
-                    messageObject.setNo_of_results(no_of_results);
-                    messageObject.setSearch_result_ip(ip);
-                    messageObject.setSearch_result_tcp_Port(tcp_port);
-                    messageObject.setHops(hops);
-                } catch (Exception e) {
-                    //ignore
+                    last--;
+                }
+                int limit = Search.NO_LIMIT;
+                if (frame.tokenStartsWith(last, LIMIT_PREFIX)) {
+                    limit = Math.max(Search.NO_LIMIT, frame.intToken(last, LIMIT_PREFIX.length));
+                    last--;
+                }
+                Endpoint origin = endpoint(frame, 2);
+                if (last < 5 || origin == null) {
+                    return other(pool, MessageType.UNKNOWN);
+                }
+                return create(pool, MessageType.SER, Search::new).set(origin,
+                        frame.substring(frame.tokenStart(4), frame.tokenEnd(last - 1)), frame.intToken(last), queryId,
+                        forwarding, limit);
+            case SEROK:
+                //expected ---> length SEROK no_files IP port hops filename1 filename2 ... [h=hash1,hash2,...] q=query_id
+                //or, from nodes that do not echo the query id ---> length SEROK no_files IP port hops filename1 ...
+                if (frame.tokenCount() < 6) {
+                    return other(pool, MessageType.UNKNOWN);
                 }
-                break;
+                int end = frame.tokenCount();
+                long answered = Search.NO_ID;
+                if (end > 6 && frame.tokenStartsWith(end - 1, QUERY_ID_PREFIX)) {
+                    answered = Math.max(Search.NO_ID, frame.hexToken(end - 1, QUERY_ID_PREFIX.length));
+                    end--;
+                }
+                String hashes = null;
+                if (end > 6 && frame.tokenStartsWith(end - 1, CONTENT_HASHES_PREFIX)) {
+                    hashes = frame.stringToken(end - 1).substring(CONTENT_HASHES_PREFIX.length);
+                    end--;
+                }
+                List<String> fileNames = new ArrayList<>(end - 6);
+                for (int i = 6; i < end; i++) {
+                    fileNames.add(frame.stringToken(i));
+                }
+                return create(pool, MessageType.SEROK, SearchOk::new).set(frame.intToken(2), frame.stringToken(3),
+                        frame.intToken(4), frame.intToken(5) + 1, fileNames, contentHashes(hashes, fileNames.size()),
+                        answered);
             case LEAVE:
                 //expected ---> length LEAVE IP_address port_no
-                messageObject.setMsgType(LEAVE);
-                try {
-                    String ip = st.nextToken();
-                    int port = Integer.parseInt(st.nextToken());
-                    messageObject.setLeavingNode(new Neighbour(InetAddress.getByName(ip), port));
-
-                    if (!st.hasMoreElements()) {
-                        return messageObject;
-                    }
-                    //expected ---> length LEAVE IP_address port_no 2 IP_address port_no IP_address port_no
-                    String numberOfAddressesSt = st.nextToken();
-                    if ("1".equals(numberOfAddressesSt) || "2".equals(numberOfAddressesSt)) {
-                        int numberOfNodes = Integer.parseInt(numberOfAddressesSt);
-                        List<Neighbour> addresses = new ArrayList<>();
-                        for (int i = 0; i < numberOfNodes; i++) {
-                            try {
-                                addresses.add(new Neighbour(InetAddress.getByName(st.nextToken()), Integer.parseInt(st.nextToken())));
-                            } catch (UnknownHostException e) {
-                                continue;
-                            }
-                        }
-                        messageObject.setLeaversNeighbors(addresses);
-                    }
-                } catch (UnknownHostException e) {
-                    //ignore
+                List<Neighbour> leaversNeighbours = Collections.emptyList();
+                //expected ---> length LEAVE IP_address port_no 2 IP_address port_no IP_address port_no
+                int numberOfNodes = frame.intToken(4);
+                if (numberOfNodes == 1 || numberOfNodes == 2) {
+                    leaversNeighbours = neighbours(frame, 5, numberOfNodes);
                 }
-                break;
-
+                return create(pool, MessageType.LEAVE, Leave::new).set(endpoint(frame, 2), leaversNeighbours);
             case PNG:
-                messageObject.setMsgType(PNG);
-                try {
-                    String ip = st.nextToken();
-                    int udp_port = Integer.parseInt(st.nextToken());
+                //expected ---> length PNG IP_address port_no [b=routing_summary]
+                Endpoint pinging = endpoint(frame, 2);
+                if (pinging == null) {
+                    return other(pool, MessageType.UNKNOWN);
+                }
+                return create(pool, MessageType.PNG, Ping::new).set(pinging, summary(frame, 4));
+            case PNGOK:
+                //expected ---> length PNGOK no_neighbours IP_address port_no IP_1:port_1_IP_2:port_2_ [b=routing_summary]
+                Endpoint answering = endpoint(frame, 3);
+                if (answering == null) {
+                    return other(pool, MessageType.UNKNOWN);
+                }
+                return create(pool, MessageType.PNGOK, PingOk::new).set(answering,
+                        frame.intToken(2) > 0 ? routingList(frame, 5) : new ArrayList<>(), summary(frame, 5));
+            default:
+                return other(pool, frame.type());
+        }
+    }
 
-                    messageObject.setPingIP(ip);
-                    messageObject.setPingPort(udp_port);
-                } catch (Exception e) {
+    /**
+     * @return one hash per file, {@code null} where it is unknown or not a hash
+     */
+    private static List<String> contentHashes(String token, int files) {
+        List<String> hashes = new ArrayList<>(Collections.nCopies(files, (String) null));
+        if (token == null) {
+            return hashes;
+        }
+        String[] sent = token.split(",", -1);
+        if (sent.length != files) {
+            return hashes;
+        }
+        for (int i = 0; i < files; i++) {
+            if (!sent[i].isEmpty() && sent[i].length() <= 64 && sent[i].chars().allMatch(c -> Character.digit(c, 16) >= 0)) {
+                hashes.set(i, sent[i].toLowerCase());
+            }
+        }
+        return hashes;
+    }
 
-                }
-                break;
+    private static <T extends Message> T create(MessagePool pool, MessageType type, Supplier<T> factory) {
+        return pool == null ? factory.get() : pool.acquire(type, factory);
+    }
 
-            case PNGOK:
-                messageObject.setMsgType(PNGOK);
-                try {
-                    String noOfResults = st.nextToken();
-                    String ip = st.nextToken();
-                    int udp_port = Integer.parseInt(st.nextToken());
-
-                    messageObject.setPingOkIP(ip);
-                    messageObject.setPingOkPort(udp_port);
-                    messageObject.setNo_of_results(Integer.parseInt(noOfResults));
-                    List<Neighbour> neighboutList = new ArrayList<>();
-
-                    if (Integer.parseInt(noOfResults) == 0) {
-                        messageObject.setRoutingList(neighboutList);
-                        return messageObject;
-                    }
-                    String[] listOfNeighbours = st.nextToken().split("_");
-                    for (String str : listOfNeighbours) {
-                        String[] str2 = str.split(":");
-                        Neighbour n1 = new Neighbour(InetAddress.getByName(str2[0]), Integer.parseInt(str2[1]));
-                        neighboutList.add(n1);
+    private static Message other(MessagePool pool, MessageType type) {
+        return create(pool, type, OtherMessage::new).set(type);
+    }
+
+    /**
+     * Reads {@code count} {@code IP port} pairs starting at token {@code index}, skipping the
+     * ones that are not IPv4 literals
+     */
+    private static List<Neighbour> neighbours(MessageFrame frame, int index, int count) {
+        List<Neighbour> addresses = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            Endpoint endpoint = endpoint(frame, index + 2 * i);
+            if (endpoint != null) {
+                addresses.add(new Neighbour(endpoint));
+            }
+        }
+        return addresses;
+    }
+
+    /**
+     * Reads the {@code IP port} pair starting at token {@code index}. Host names are never
+     * looked up, every node writes its address as an IP literal.
+     *
+     * @return the endpoint, or {@code null} if the tokens are not an IPv4 literal and a port
+     */
+    private static Endpoint endpoint(MessageFrame frame, int index) {
+        int port = frame.intToken(index + 1);
+        if (!frame.isIpv4Token(index) || port == MessageFrame.INVALID || port > 0xffff) {
+            return null;
+        }
+        return EndpointRegistry.of(frame.ipv4Token(index), port);
+    }
+
+    /**
+     * @return the routing summary in the last token, if it is at {@code firstIndex} or after, otherwise {@code null}
+     */
+    private static BloomFilter[] summary(MessageFrame frame, int firstIndex) {
+        int last = frame.tokenCount() - 1;
+        if (last < firstIndex || !frame.tokenStartsWith(last, SUMMARY_PREFIX)) {
+            return null;
+        }
+        return RoutingSummary.decode(frame.substring(frame.tokenStart(last) + SUMMARY_PREFIX.length, frame.tokenEnd(last)));
+    }
+
+    /**
+     * Parses a routing token of the format {@code IP_1:port_1_IP_2:port_2_}
+     */
+    private static List<Neighbour> routingList(MessageFrame frame, int index) {
+        List<Neighbour> routingList = new ArrayList<>();
+        if (index >= frame.tokenCount()) {
+            return routingList;
+        }
+        int end = frame.tokenEnd(index);
+        int entryStart = frame.tokenStart(index);
+        int colon = -1;
+        for (int i = entryStart; i <= end; i++) {
+            byte b = i == end ? (byte) '_' : frame.byteAt(index, i - frame.tokenStart(index));
+            if (b == ':') {
+                colon = i;
+            } else if (b == '_') {
+                if (colon > entryStart) {
+                    long ip = frame.parseIpv4(entryStart, colon);
+                    int port = frame.parseInt(colon + 1, i);
+                    if (ip != MessageFrame.INVALID_IP && port != MessageFrame.INVALID && port <= 0xffff) {
+                        routingList.add(new Neighbour(EndpointRegistry.of((int) ip, port)));
                     }
-                    messageObject.setRoutingList(neighboutList);
-                } catch (Exception e) {
-                    //ignore
                 }
-                break;
+                entryStart = i + 1;
+                colon = -1;
+            }
         }
-        return messageObject;
+        return routingList;
     }
 }
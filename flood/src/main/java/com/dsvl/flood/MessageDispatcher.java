@@ -0,0 +1,153 @@
+package com.dsvl.flood;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs message handlers on bounded executors, one per {@link MessageClass}.
+ * <br>
+ * Each executor has a fixed number of threads and a bounded queue, so a burst of
+ * queries can neither exhaust native threads nor grow the heap without limit.
+ * When an executor is saturated its tasks are dropped and counted: a query simply reaches fewer
+ * nodes, and a JOIN or LEAVE that is not answered times out on the sender, which retries or
+ * reports it. A task is never run on the calling UDP handler thread instead: those threads
+ * deliver the responses a JOIN or LEAVE handler may be waiting for, see {@link Node#join(List)}.
+ */
+@Component
+public class MessageDispatcher {
+
+    private static final Logger logger = LoggerFactory.getLogger(MessageDispatcher.class);
+
+    public enum MessageClass {
+        /**
+         * SER
+         */
+        SEARCH,
+        /**
+         * PNG, PNGOK
+         */
+        PING,
+        /**
+         * JOIN, LEAVE
+         */
+        CONTROL
+    }
+
+    private final int searchThreads;
+    private final int searchQueueSize;
+    private final int pingThreads;
+    private final int pingQueueSize;
+    private final int controlThreads;
+    private final int controlQueueSize;
+
+    private final Map<MessageClass, ThreadPoolExecutor> executors = new EnumMap<>(MessageClass.class);
+    private final Map<MessageClass, AtomicLong> rejected = new EnumMap<>(MessageClass.class);
+
+    public MessageDispatcher(@Value("${dispatcher.search.threads:4}") int searchThreads,
+                             @Value("${dispatcher.search.queue-size:256}") int searchQueueSize,
+                             @Value("${dispatcher.ping.threads:1}") int pingThreads,
+                             @Value("${dispatcher.ping.queue-size:64}") int pingQueueSize,
+                             @Value("${dispatcher.control.threads:2}") int controlThreads,
+                             @Value("${dispatcher.control.queue-size:64}") int controlQueueSize) {
+        this.searchThreads = searchThreads;
+        this.searchQueueSize = searchQueueSize;
+        this.pingThreads = pingThreads;
+        this.pingQueueSize = pingQueueSize;
+        this.controlThreads = controlThreads;
+        this.controlQueueSize = controlQueueSize;
+    }
+
+    @PostConstruct
+    public void start() {
+        executors.put(MessageClass.SEARCH, newExecutor(MessageClass.SEARCH, searchThreads, searchQueueSize,
+                new DropAndCount(MessageClass.SEARCH)));
+        executors.put(MessageClass.PING, newExecutor(MessageClass.PING, pingThreads, pingQueueSize,
+                new DropAndCount(MessageClass.PING)));
+        executors.put(MessageClass.CONTROL, newExecutor(MessageClass.CONTROL, controlThreads, controlQueueSize,
+                new DropAndCount(MessageClass.CONTROL)));
+    }
+
+    private ThreadPoolExecutor newExecutor(MessageClass messageClass, int threads, int queueSize,
+                                           RejectedExecutionHandler rejectionPolicy) {
+        rejected.put(messageClass, new AtomicLong());
+        return new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueSize), new NamedThreadFactory(messageClass), rejectionPolicy);
+    }
+
+    public void dispatch(MessageClass messageClass, Runnable handler) {
+        executors.get(messageClass).execute(() -> {
+            try {
+                handler.run();
+            } catch (Exception e) {
+                logger.error("Unable to handle {} message", messageClass, e);
+            }
+        });
+    }
+
+    /**
+     * @return active, queued, completed and rejected task counts per message class
+     */
+    public Map<String, Map<String, Long>> getStats() {
+        Map<String, Map<String, Long>> stats = new LinkedHashMap<>();
+        executors.forEach((messageClass, executor) -> {
+            Map<String, Long> counts = new LinkedHashMap<>();
+            counts.put("active", (long) executor.getActiveCount());
+            counts.put("queued", (long) executor.getQueue().size());
+            counts.put("completed", executor.getCompletedTaskCount());
+            counts.put("rejected", rejected.get(messageClass).get());
+            stats.put(messageClass.name().toLowerCase(), counts);
+        });
+        return stats;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executors.values().forEach(ThreadPoolExecutor::shutdownNow);
+    }
+
+    private class DropAndCount implements RejectedExecutionHandler {
+        private final MessageClass messageClass;
+
+        private DropAndCount(MessageClass messageClass) {
+            this.messageClass = messageClass;
+        }
+
+        @Override
+        public void rejectedExecution(Runnable task, ThreadPoolExecutor executor) {
+            long count = rejected.get(messageClass).incrementAndGet();
+            logger.warn("{} executor saturated, dropped a message ({} dropped so far)", messageClass, count);
+        }
+    }
+
+    private static class NamedThreadFactory implements ThreadFactory {
+        private final String prefix;
+        private final AtomicInteger counter = new AtomicInteger();
+
+        private NamedThreadFactory(MessageClass messageClass) {
+            this.prefix = "dispatch-" + messageClass.name().toLowerCase() + "-";
+        }
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, prefix + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
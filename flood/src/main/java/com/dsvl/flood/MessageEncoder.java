@@ -0,0 +1,378 @@
+package com.dsvl.flood;
+
+import com.dsvl.flood.message.Search;
+
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Writes protocol messages straight into a {@code ByteBuffer}.
+ * <br>
+ * Every message starts with {@link #begin}, which leaves room for the four digit length,
+ * and ends with {@link #end}, which fills the length in once the rest is written. Numbers
+ * and IPv4 addresses are written digit by digit, so encoding a message needs neither a
+ * formatter nor intermediate {@code String}s.
+ * <br>
+ * The {@code encode...} methods write one message each, starting at the buffer's position
+ * and leaving the position right after the message.
+ *
+ * @see UdpSender#send(Writer, InetAddress, int)
+ */
+public final class MessageEncoder {
+
+    /**
+     * Writes a complete message into the buffer it is given
+     */
+    @FunctionalInterface
+    public interface Writer {
+        void writeTo(ByteBuffer buffer);
+    }
+
+    private static final int LENGTH_DIGITS = 4;
+    private static final int MAX_LENGTH = 9999;
+
+    private MessageEncoder() {
+    }
+
+    /**
+     * length SER IP port file_name hops
+     */
+    public static void encodeSearch(ByteBuffer buffer, String address, int port, String fileName, int hops) {
+        encodeSearch(buffer, address, port, fileName, hops, Search.NO_ID);
+    }
+
+    /**
+     * length SER IP port file_name hops q=query_id
+     * <br>
+     * The query id is left out if it is {@link Search#NO_ID}
+     */
+    public static void encodeSearch(ByteBuffer buffer, String address, int port, String fileName, int hops,
+                                    long queryId) {
+        encodeSearch(buffer, address, port, fileName, hops, queryId, Search.Forwarding.FLOOD);
+    }
+
+    /**
+     * length SER IP port file_name hops m=walk q=query_id
+     * <br>
+     * {@code m=walk} is only written for {@link Search.Forwarding#WALK}, flooding is the default
+     */
+    public static void encodeSearch(ByteBuffer buffer, String address, int port, String fileName, int hops,
+                                    long queryId, Search.Forwarding forwarding) {
+        encodeSearch(buffer, address, port, fileName, hops, queryId, forwarding, Search.NO_LIMIT);
+    }
+
+    /**
+     * length SER IP port file_name hops k=limit m=walk q=query_id
+     * <br>
+     * {@code k=limit} is left out for {@link Search#NO_LIMIT}
+     */
+    public static void encodeSearch(ByteBuffer buffer, String address, int port, String fileName, int hops,
+                                    long queryId, Search.Forwarding forwarding, int limit) {
+        int start = begin(buffer, MessageType.SER);
+        put(buffer.put((byte) ' '), address);
+        put(buffer.put((byte) ' '), port);
+        put(buffer.put((byte) ' '), fileName);
+        put(buffer.put((byte) ' '), hops);
+        if (limit != Search.NO_LIMIT) {
+            put(buffer.put((byte) ' ').put(MessageDecoder.LIMIT_PREFIX), limit);
+        }
+        if (forwarding == Search.Forwarding.WALK) {
+            buffer.put((byte) ' ').put(MessageDecoder.WALK_TOKEN);
+        }
+        if (queryId != Search.NO_ID) {
+            putHex(buffer.put((byte) ' ').put(MessageDecoder.QUERY_ID_PREFIX), queryId);
+        }
+        end(buffer, start);
+    }
+
+    /**
+     * length SEROK no_files IP port hops filename1 filename2 ...
+     * <br>
+     * Spaces in the file names are replaced with underscores so that every name stays one token
+     */
+    public static void encodeSearchOk(ByteBuffer buffer, int noOfFiles, String address, int tcpPort, int hops,
+                                      List<String> fileNames) {
+        encodeSearchOk(buffer, noOfFiles, address, tcpPort, hops, fileNames, Search.NO_ID);
+    }
+
+    /**
+     * length SEROK no_files IP port hops filename1 filename2 ... q=query_id
+     * <br>
+     * The query id is left out if it is {@link Search#NO_ID}
+     */
+    public static void encodeSearchOk(ByteBuffer buffer, int noOfFiles, String address, int tcpPort, int hops,
+                                      List<String> fileNames, long queryId) {
+        encodeSearchOk(buffer, noOfFiles, address, tcpPort, hops, fileNames, null, queryId);
+    }
+
+    /**
+     * length SEROK no_files IP port hops filename1 filename2 ... h=hash1,hash2,... q=query_id
+     * <br>
+     * The hashes are left out if they are {@code null} or all of them are unknown; an unknown one is
+     * sent as {@code -}
+     *
+     * @param contentHashes the shortened content hash of each file, {@code null} where it is unknown
+     */
+    public static void encodeSearchOk(ByteBuffer buffer, int noOfFiles, String address, int tcpPort, int hops,
+                                      List<String> fileNames, List<String> contentHashes, long queryId) {
+        int start = begin(buffer, MessageType.SEROK);
+        put(buffer.put((byte) ' '), noOfFiles);
+        put(buffer.put((byte) ' '), address);
+        put(buffer.put((byte) ' '), tcpPort);
+        put(buffer.put((byte) ' '), hops);
+        for (String fileName : fileNames) {
+            buffer.put((byte) ' ');
+            int nameStart = buffer.position();
+            put(buffer, fileName);
+            for (int i = nameStart; i < buffer.position(); i++) {
+                if (buffer.get(i) == ' ') {
+                    buffer.put(i, (byte) '_');
+                }
+            }
+        }
+        if (contentHashes != null && contentHashes.stream().anyMatch(Objects::nonNull)) {
+            buffer.put((byte) ' ').put(MessageDecoder.CONTENT_HASHES_PREFIX);
+            for (int i = 0; i < contentHashes.size(); i++) {
+                if (i > 0) {
+                    buffer.put((byte) ',');
+                }
+                String hash = contentHashes.get(i);
+                put(buffer, hash == null ? "-" : hash);
+            }
+        }
+        if (queryId != Search.NO_ID) {
+            putHex(buffer.put((byte) ' ').put(MessageDecoder.QUERY_ID_PREFIX), queryId);
+        }
+        end(buffer, start);
+    }
+
+    /**
+     * length REG IP_address port_no username
+     */
+    public static void encodeRegister(ByteBuffer buffer, String address, int port, String username) {
+        encodeAddressMessage(buffer, MessageType.REG, address, port, username);
+    }
+
+    /**
+     * length UNREG IP_address port_no username
+     */
+    public static void encodeUnregister(ByteBuffer buffer, String address, int port, String username) {
+        encodeAddressMessage(buffer, MessageType.UNREG, address, port, username);
+    }
+
+    /**
+     * length JOIN IP_address port_no
+     */
+    public static void encodeJoin(ByteBuffer buffer, String address, int port) {
+        encodeAddressMessage(buffer, MessageType.JOIN, address, port, null);
+    }
+
+    /**
+     * length PNG IP_address port_no
+     */
+    public static void encodePing(ByteBuffer buffer, String address, int port) {
+        encodePing(buffer, address, port, null);
+    }
+
+    /**
+     * length PNG IP_address port_no b=routing_summary
+     *
+     * @param summary {@link RoutingSummary#encode}, or {@code null} to send none
+     */
+    public static void encodePing(ByteBuffer buffer, String address, int port, String summary) {
+        int start = begin(buffer, MessageType.PNG);
+        put(buffer.put((byte) ' '), address);
+        put(buffer.put((byte) ' '), port);
+        putSummary(buffer, summary);
+        end(buffer, start);
+    }
+
+    /**
+     * length LEAVE IP_address port_no
+     * or
+     * length LEAVE IP_address port_no 2 IP_address port_no IP_address port_no
+     */
+    public static void encodeLeave(ByteBuffer buffer, String address, int port, List<Neighbour> neighbours) {
+        int start = begin(buffer, MessageType.LEAVE);
+        put(buffer.put((byte) ' '), address);
+        put(buffer.put((byte) ' '), port);
+        if (!neighbours.isEmpty()) {
+            put(buffer.put((byte) ' '), neighbours.size());
+            for (Neighbour neighbour : neighbours) {
+                put(buffer.put((byte) ' '), neighbour.getIpAddress());
+                put(buffer.put((byte) ' '), neighbour.getUdpPort());
+            }
+        }
+        end(buffer, start);
+    }
+
+    /**
+     * length PNGOK no_neighbours IP_address port_no IP_1:port_1_IP_2:port_2_
+     */
+    public static void encodePingOk(ByteBuffer buffer, String address, int port, List<Neighbour> routingTable) {
+        encodePingOk(buffer, address, port, routingTable, null);
+    }
+
+    /**
+     * length PNGOK no_neighbours IP_address port_no IP_1:port_1_IP_2:port_2_ b=routing_summary
+     *
+     * @param summary {@link RoutingSummary#encode}, or {@code null} to send none
+     */
+    public static void encodePingOk(ByteBuffer buffer, String address, int port, List<Neighbour> routingTable,
+                                    String summary) {
+        int start = begin(buffer, MessageType.PNGOK);
+        put(buffer.put((byte) ' '), routingTable.size());
+        put(buffer.put((byte) ' '), address);
+        put(buffer.put((byte) ' '), port);
+        buffer.put((byte) ' ');
+        for (Neighbour neighbour : routingTable) {
+            put(buffer, neighbour.getIpAddress());
+            put(buffer.put((byte) ':'), neighbour.getUdpPort());
+            buffer.put((byte) '_');
+        }
+        putSummary(buffer, summary);
+        end(buffer, start);
+    }
+
+    private static void putSummary(ByteBuffer buffer, String summary) {
+        if (summary != null) {
+            put(buffer.put((byte) ' '), RoutingSummary.TOKEN_PREFIX);
+            put(buffer, summary);
+        }
+    }
+
+    /**
+     * length WALK q=query_id
+     */
+    public static void encodeWalk(ByteBuffer buffer, long queryId) {
+        int start = begin(buffer, MessageType.WALK);
+        putHex(buffer.put((byte) ' ').put(MessageDecoder.QUERY_ID_PREFIX), queryId);
+        end(buffer, start);
+    }
+
+    /**
+     * length JOINOK value, length LEAVEOK value, length UNROK value, ...
+     */
+    public static void encodeValue(ByteBuffer buffer, MessageType type, int value) {
+        int start = begin(buffer, type);
+        put(buffer.put((byte) ' '), value);
+        end(buffer, start);
+    }
+
+    /**
+     * length ERROR
+     */
+    public static void encodeError(ByteBuffer buffer) {
+        end(buffer, begin(buffer, MessageType.ERROR));
+    }
+
+    private static void encodeAddressMessage(ByteBuffer buffer, MessageType type, String address, int port,
+                                             String username) {
+        int start = begin(buffer, type);
+        put(buffer.put((byte) ' '), address);
+        put(buffer.put((byte) ' '), port);
+        if (username != null) {
+            put(buffer.put((byte) ' '), username);
+        }
+        end(buffer, start);
+    }
+
+    /**
+     * Reserves the length and writes the command
+     *
+     * @return the position the message starts at, to be passed to {@link #end}
+     */
+    public static int begin(ByteBuffer buffer, MessageType type) {
+        int start = buffer.position();
+        buffer.position(start + LENGTH_DIGITS);
+        buffer.put((byte) ' ').put(type.commandBytes());
+        return start;
+    }
+
+    /**
+     * Writes the length of the message that started at {@code start} in front of it
+     */
+    public static void end(ByteBuffer buffer, int start) {
+        int length = buffer.position() - start;
+        if (length > MAX_LENGTH) {
+            throw new IllegalArgumentException("Message of " + length + " bytes does not fit the length field");
+        }
+        for (int i = start + LENGTH_DIGITS - 1; i >= start; i--) {
+            buffer.put(i, (byte) ('0' + length % 10));
+            length /= 10;
+        }
+    }
+
+    /**
+     * Writes the number in decimal
+     */
+    public static ByteBuffer put(ByteBuffer buffer, int value) {
+        if (value < 0) {
+            buffer.put((byte) '-');
+            if (value == Integer.MIN_VALUE) {
+                return put(buffer, String.valueOf(value).substring(1));
+            }
+            value = -value;
+        }
+        int divisor = 1;
+        while (divisor <= value / 10) {
+            divisor *= 10;
+        }
+        for (; divisor > 0; divisor /= 10) {
+            buffer.put((byte) ('0' + value / divisor % 10));
+        }
+        return buffer;
+    }
+
+    /**
+     * Writes the non negative number in lower case hexadecimal
+     */
+    public static ByteBuffer putHex(ByteBuffer buffer, long value) {
+        int shift = 60;
+        while (shift > 0 && (value >>> shift) == 0) {
+            shift -= 4;
+        }
+        for (; shift >= 0; shift -= 4) {
+            buffer.put((byte) Character.forDigit((int) (value >>> shift) & 0xf, 16));
+        }
+        return buffer;
+    }
+
+    /**
+     * Writes the text as is if it is plain ASCII, which every protocol token but a file name is,
+     * otherwise as UTF-8
+     */
+    public static ByteBuffer put(ByteBuffer buffer, String text) {
+        int start = buffer.position();
+        int length = text.length();
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+            if (c >= 0x80) {
+                buffer.position(start);
+                return buffer.put(text.getBytes(StandardCharsets.UTF_8));
+            }
+            buffer.put((byte) c);
+        }
+        return buffer;
+    }
+
+    /**
+     * Writes the address as an IP literal, never as a host name, so that no lookup is made
+     */
+    public static ByteBuffer put(ByteBuffer buffer, InetAddress address) {
+        byte[] octets = address.getAddress();
+        if (octets.length != 4) {
+            return put(buffer, address.getHostAddress());
+        }
+        for (int i = 0; i < octets.length; i++) {
+            if (i > 0) {
+                buffer.put((byte) '.');
+            }
+            put(buffer, octets[i] & 0xff);
+        }
+        return buffer;
+    }
+}
@@ -0,0 +1,241 @@
+package com.dsvl.flood;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reusable holder of a decoded message.
+ * <br>
+ * {@link MessageDecoder#decode(ByteBuffer, MessageFrame)} only records where each space separated
+ * token starts and ends in the source buffer, numbers and IPv4 addresses are parsed from the bytes
+ * on demand. Nothing is allocated unless a token is explicitly asked for as a {@code String}.
+ * <br>
+ * A frame reads from the source buffer, so it is valid only as long as that buffer is not reused.
+ * A frame is not thread safe; keep one per handler thread.
+ * <pre>
+ * token 0 - length
+ * token 1 - command, see {@link #type()}
+ * token 2... - arguments
+ * </pre>
+ */
+public final class MessageFrame {
+
+    /**
+     * Tokens beyond this are ignored; a full datagram of one character file names would still fit
+     */
+    public static final int MAX_TOKENS = 1024;
+
+    static final int INVALID = -1;
+    static final long INVALID_IP = -1L;
+
+    private final int[] tokenStart = new int[MAX_TOKENS];
+    private final int[] tokenEnd = new int[MAX_TOKENS];
+    private int tokenCount;
+    private ByteBuffer source;
+    private MessageType type = MessageType.NONE;
+
+    /**
+     * Cached wrapper so that decoding from the same array repeatedly does not allocate
+     */
+    private ByteBuffer wrapped;
+
+    void reset(ByteBuffer source) {
+        this.source = source;
+        this.tokenCount = 0;
+        this.type = MessageType.NONE;
+    }
+
+    ByteBuffer wrap(byte[] data, int length) {
+        if (wrapped == null || wrapped.array() != data) {
+            wrapped = ByteBuffer.wrap(data);
+        }
+        wrapped.limit(length).position(0);
+        return wrapped;
+    }
+
+    void addToken(int start, int end) {
+        if (tokenCount < MAX_TOKENS) {
+            tokenStart[tokenCount] = start;
+            tokenEnd[tokenCount] = end;
+            tokenCount++;
+        }
+    }
+
+    void setType(MessageType type) {
+        this.type = type;
+    }
+
+    public MessageType type() {
+        return type;
+    }
+
+    public int tokenCount() {
+        return tokenCount;
+    }
+
+    public int tokenLength(int index) {
+        return tokenEnd[index] - tokenStart[index];
+    }
+
+    public byte byteAt(int index, int offset) {
+        return source.get(tokenStart[index] + offset);
+    }
+
+    public boolean tokenEquals(int index, byte[] ascii) {
+        if (index >= tokenCount || tokenLength(index) != ascii.length) {
+            return false;
+        }
+        int start = tokenStart[index];
+        for (int i = 0; i < ascii.length; i++) {
+            if (source.get(start + i) != ascii[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the token as a non negative decimal number, or {@code -1} if it is missing or not a number
+     */
+    public int intToken(int index) {
+        return index < tokenCount ? parseInt(tokenStart[index], tokenEnd[index]) : INVALID;
+    }
+
+    /**
+     * @return the token, from {@code offset} on, as a non negative decimal number, or {@code -1}
+     */
+    public int intToken(int index, int offset) {
+        return index < tokenCount ? parseInt(tokenStart[index] + offset, tokenEnd[index]) : INVALID;
+    }
+
+    /**
+     * Parses a non negative decimal number in {@code [start, end)} of the source buffer
+     */
+    int parseInt(int start, int end) {
+        if (start >= end || end - start > 9) {
+            return INVALID;
+        }
+        int value = 0;
+        for (int i = start; i < end; i++) {
+            int digit = source.get(i) - '0';
+            if (digit < 0 || digit > 9) {
+                return INVALID;
+            }
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
+    /**
+     * @return whether the token is a dotted quad IPv4 literal
+     * @see #ipv4Token(int)
+     */
+    public boolean isIpv4Token(int index) {
+        return index < tokenCount && parseIpv4(tokenStart[index], tokenEnd[index]) != INVALID_IP;
+    }
+
+    /**
+     * Parses the token as a dotted quad IPv4 literal without any name resolution
+     *
+     * @return the address packed in an {@code int}, most significant byte first
+     */
+    public int ipv4Token(int index) {
+        return index < tokenCount ? (int) parseIpv4(tokenStart[index], tokenEnd[index]) : 0;
+    }
+
+    /**
+     * @return the packed address in the low 32 bits, or {@link #INVALID_IP}
+     */
+    long parseIpv4(int start, int end) {
+        long address = 0;
+        int octets = 0;
+        int octetStart = start;
+        for (int i = start; i <= end; i++) {
+            if (i == end || source.get(i) == '.') {
+                int octet = parseInt(octetStart, i);
+                if (octet == INVALID || octet > 255 || i - octetStart > 3) {
+                    return INVALID_IP;
+                }
+                address = (address << 8) | octet;
+                octets++;
+                octetStart = i + 1;
+            }
+        }
+        return octets == 4 ? address : INVALID_IP;
+    }
+
+    public boolean tokenStartsWith(int index, byte[] prefix) {
+        if (index >= tokenCount || tokenLength(index) < prefix.length) {
+            return false;
+        }
+        int start = tokenStart[index];
+        for (int i = 0; i < prefix.length; i++) {
+            if (source.get(start + i) != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Parses the token, from {@code offset} on, as a non negative hexadecimal number
+     *
+     * @return the number, or {@code -1} if it is missing, not hexadecimal or does not fit 63 bits
+     */
+    public long hexToken(int index, int offset) {
+        if (index >= tokenCount) {
+            return INVALID;
+        }
+        int start = tokenStart[index] + offset;
+        int end = tokenEnd[index];
+        if (start >= end || end - start > 16) {
+            return INVALID;
+        }
+        long value = 0;
+        for (int i = start; i < end; i++) {
+            int digit = Character.digit(source.get(i), 16);
+            if (digit < 0) {
+                return INVALID;
+            }
+            value = value << 4 | digit;
+        }
+        return value < 0 ? INVALID : value;
+    }
+
+    int tokenStart(int index) {
+        return tokenStart[index];
+    }
+
+    int tokenEnd(int index) {
+        return tokenEnd[index];
+    }
+
+    /**
+     * Allocates; meant for the parts of a message that have to outlive the frame, e.g. file names
+     */
+    public String stringToken(int index) {
+        if (index >= tokenCount) {
+            return null;
+        }
+        return substring(tokenStart[index], tokenEnd[index]);
+    }
+
+    String substring(int start, int end) {
+        byte[] bytes = new byte[end - start];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = source.get(start + i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Allocates; the whole message as received, e.g. for logging
+     */
+    @Override
+    public String toString() {
+        if (source == null) {
+            return "";
+        }
+        return substring(source.position(), source.limit());
+    }
+}
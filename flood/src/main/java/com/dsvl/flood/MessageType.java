@@ -0,0 +1,46 @@
+package com.dsvl.flood;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Commands of the protocol, as they appear in the second token of a message
+ */
+public enum MessageType {
+    REG, REGOK, UNREG, UNROK, JOIN, JOINOK, LEAVE, LEAVEOK, SER, SEROK, PNG, PNGOK, WALK, WALKOK, ERROR,
+    /**
+     * A well formed message with a command this node does not know
+     */
+    UNKNOWN,
+    /**
+     * Not a message at all, e.g. fewer than two tokens
+     */
+    NONE;
+
+    /**
+     * Cached because {@link #values()} copies the array on every call
+     */
+    private static final MessageType[] COMMANDS = {
+            REG, REGOK, UNREG, UNROK, JOIN, JOINOK, LEAVE, LEAVEOK, SER, SEROK, PNG, PNGOK, WALK, WALKOK, ERROR
+    };
+
+    private final byte[] command = name().getBytes(StandardCharsets.US_ASCII);
+
+    /**
+     * @return the ASCII bytes of the command, must not be modified
+     */
+    byte[] commandBytes() {
+        return command;
+    }
+
+    /**
+     * Looks up the command of {@code frame}'s token at {@code index} without allocating
+     */
+    static MessageType of(MessageFrame frame, int index) {
+        for (MessageType type : COMMANDS) {
+            if (frame.tokenEquals(index, type.command)) {
+                return type;
+            }
+        }
+        return UNKNOWN;
+    }
+}
@@ -5,12 +5,22 @@ import java.net.InetAddress;
 public class Neighbour {
 	private final InetAddress ipAddress;
 	private final int udpPort;
+	private final Endpoint endpoint;
     private int tTL;
 
 	public Neighbour(InetAddress ipAddress, int udpPort){
-		this.ipAddress = ipAddress;
-		this.udpPort = udpPort;
-	}	
+		this(EndpointRegistry.of(ipAddress, udpPort));
+	}
+
+	public Neighbour(Endpoint endpoint){
+		this.endpoint = endpoint;
+		this.ipAddress = endpoint.getAddress();
+		this.udpPort = endpoint.getPort();
+	}
+
+	public Endpoint getEndpoint(){
+		return this.endpoint;
+	}
 
 	public InetAddress getIpAddress(){
 		return this.ipAddress;
@@ -1,7 +1,7 @@
 package com.dsvl.flood;
 
 import com.dsvl.flood.Constants.Status;
-import com.dsvl.flood.model.Result;
+import com.dsvl.flood.message.Search;
 import com.dsvl.flood.service.JoinService;
 import com.dsvl.flood.service.LeaveService;
 import com.dsvl.flood.service.RegisterService;
@@ -12,13 +12,19 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
-import org.springframework.util.SocketUtils;
 
 import java.net.DatagramSocket;
 import java.net.InetAddress;
 import java.net.SocketException;
 import java.net.UnknownHostException;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static com.dsvl.flood.Constants.Status.JOINED;
 import static com.dsvl.flood.Constants.Status.NOT_REGISTERED;
@@ -43,6 +49,19 @@ public class Node {
 
     private static final Logger logger = LoggerFactory.getLogger(Node.class);
 
+    /**
+     * Upper bound for waiting on join responses, each join request times out on its own before this
+     */
+    private static final long JOIN_WAIT_MS = 5000;
+
+    /**
+     * Outcomes of a leave notification, see {@link #leaveNetwork()}
+     */
+    public static final String INFORMED = "informed";
+    public static final String NOT_ACKNOWLEDGED = "not acknowledged";
+    public static final String TIMED_OUT = "timed out";
+    private static final String BOOTSTRAP_SERVER = "bootstrap-server";
+
     private final int bootstrapServerPort;
     /**
      * Node's listening UDP port
@@ -51,6 +70,38 @@ public class Node {
     private final String name;
     private final int nodeTcpPort;
 
+    /**
+     * Number of neighbours this {@code Node} tries to have when joining the network
+     */
+    @Value("${node.target-degree:2}")
+    private int targetDegree;
+
+    /**
+     * Overall time to wait for neighbours to acknowledge a LEAVE
+     */
+    private long leaveDeadlineMs = 3000;
+
+    @Value("${search.walk.wanted-results:3}")
+    private int walkWantedResults;
+
+    /**
+     * Most files each node answers a query of this node with, {@code 0} for no limit
+     */
+    @Value("${search.result-limit:20}")
+    private int resultLimit;
+
+    /**
+     * Matches of recent queries in this node's own files, dropped whenever the files change.
+     * Keyed by the result limit of the query in place of the hops, the matches do not depend on the hops.
+     */
+    private SearchResultCache<List<File>> localResults = new SearchResultCache<>(256, 30000);
+
+    /**
+     * Recent searches of this node by query and hops, a repeated search is answered with the
+     * results of the earlier one instead of being flooded again
+     */
+    private SearchResultCache<SearchSession> networkResults = new SearchResultCache<>(256, 30000);
+
     /**
      * {@code Boolean} value indicating if this {@code Node} is registered
      * with the bootstrap server or not.
@@ -75,9 +126,9 @@ public class Node {
     private final InetAddress bootstrapServerAddress;
 
     /**
-     * List of files that this {@code Node} has
+     * Files that this {@code Node} has
      */
-    private List<File> files;
+    private final FileIndex fileIndex = new FileIndex();
 
     /**
      * List of neighbours that exists in the network but this {@code Node} has not directly connected to
@@ -88,8 +139,6 @@ public class Node {
      * List of neighbours that this {@code Node} has directly connected to
      */
     private static volatile List<Neighbour> neighbours;
-    private static Map<Integer, HashSet> map;
-    public static volatile ArrayList<Result> latestSearchResults;
 
     /**
      * Used to update UI
@@ -103,15 +152,21 @@ public class Node {
     @Autowired
     private JoinService joinService;
 
-    @Autowired
     private LeaveService leaveService;
 
     @Autowired
     private SearchService searchService;
 
     @Autowired
+    private SeenQueryCache seenQueries;
+
+    @Autowired
+    private SearchSessions searchSessions;
+
     private UnregisterService unregisterService;
 
+    private RoutingSummary routingSummary;
+
     @Autowired
     public Node(@Value("${bootstrap-server.address}") String bsIpValue,
                 @Value("${bootstrap-server.port}") int bsPort,
@@ -130,27 +185,24 @@ public class Node {
 
         this.nodeUdpPort = nodeUdpPort;
 
-        latestSearchResults = new ArrayList<>();
-        files = new ArrayList<>();
         initializeFiles();
-        update_table();
         existingNodes = new ArrayList<>();
-        neighbours = new ArrayList<>();
+        neighbours = new CopyOnWriteArrayList<>();
         status = NOT_REGISTERED;
 
     }
 
     private void initializeFiles() {
-        files.add(new File("Lord of the Rings"));
-        files.add(new File("Adventures of Tintin"));
-        files.add(new File("Hacking for Dummies"));
-        files.add(new File("Super Mario"));
-        files.add(new File("Super Mario 2"));
+        fileIndex.add(new File("Lord of the Rings"));
+        fileIndex.add(new File("Adventures of Tintin"));
+        fileIndex.add(new File("Hacking for Dummies"));
+        fileIndex.add(new File("Super Mario"));
+        fileIndex.add(new File("Super Mario 2"));
     }
 
     public boolean register() {
         isRegistered = registerService.register(bootstrapServerAddress, bootstrapServerPort, nodeAddress, nodeUdpPort,
-                name, existingNodes);
+                name, existingNodes).join();
         return isRegistered;
     }
 
@@ -161,26 +213,11 @@ public class Node {
             logger.info("I am the only node in the network");
             return true;
         }
-        List<Neighbour> peers = new ArrayList<>(existingNodes);
-
-        /*
-         * Tries to connect to a random peer, if successful removes from the local list
-         */
-        while (!peers.isEmpty()) {
-            int peerIndex = (int) (Math.random() * peers.size()); // 0 <= peerIndex < (neighbour list length)
-            Neighbour peer = peers.get(peerIndex);
-            boolean joinSuccessful = joinService.join(peer.getIpAddress(), peer.getUdpPort(), nodeAddress, nodeUdpPort);
-            if (joinSuccessful) {
-                neighbours.add(peer);
-                peer.settTL(5);
-                logger.info("New node added as neighbor, IP address: {}, port: {}", peer.getIpAddress(), peer.getUdpPort());
-            }
-            peers.remove(peerIndex);
-            if (neighbours.size() == 2){
-                status = JOINED;
-                logger.info("Successfully joined the network");
-                return true;
-            }
+        joinPeers(existingNodes, targetDegree);
+        if (neighbours.size() >= targetDegree) {
+            status = JOINED;
+            logger.info("Successfully joined the network");
+            return true;
         }
         if (neighbours.size() > 0) {
             status = JOINED;
@@ -192,43 +229,124 @@ public class Node {
 
     public void join(List<Neighbour> someNodes) {
         logger.info("Trying to join the network");
-        List<Neighbour> peers = new ArrayList<>(someNodes);
-
-        /*
-         * Tries to connect to a random peer, if successful removes from the local list
-         */
-        int tempUdpPort = SocketUtils.findAvailableUdpPort();
-        while (!peers.isEmpty() && neighbours.size() < 5) {
-            int peerIndex = (int) (Math.random() * peers.size()); // 0 <= peerIndex < (neighbour list length)
-            Neighbour peer = peers.get(peerIndex);
-            boolean joinSuccessful = joinService.join(peer.getIpAddress(), peer.getUdpPort(), nodeAddress, tempUdpPort);
-            if (joinSuccessful) {
-                neighbours.add(peer);
-                logger.info("New node added as neighbor, IP address: {}, port: {}", peer.getIpAddress(), peer.getUdpPort());
+        joinPeers(someNodes, 5);
+    }
+
+    /**
+     * Sends JOIN to every candidate peer at once and keeps the first peers that accept,
+     * until this node has {@code degree} neighbours, so joining takes one round trip instead
+     * of a sum of timeouts.
+     * <br>
+     * Joins still outstanding at that point are left to finish on their own. A peer that accepts
+     * once this node has enough neighbours is released again, by the endpoint its JOIN was sent
+     * to, see {@link #releaseSurplusPeer(Neighbour)}.
+     */
+    private void joinPeers(List<Neighbour> candidates, int degree) {
+        List<Neighbour> peers = new ArrayList<>();
+        for (Neighbour candidate : candidates) {
+            if (!isNeighbour(candidate.getIpAddress(), candidate.getUdpPort())) {
+                peers.add(candidate);
             }
         }
+        if (peers.isEmpty() || neighbours.size() >= degree) {
+            return;
+        }
+
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        AtomicInteger outstanding = new AtomicInteger(peers.size());
+        for (Neighbour peer : peers) {
+            CompletableFuture<Boolean> join = joinService.join(peer.getIpAddress(), peer.getUdpPort(), nodeAddress, nodeUdpPort);
+            join.thenAccept(joinSuccessful -> {
+                if (joinSuccessful) {
+                    acceptPeer(peer, degree, done);
+                }
+                if (outstanding.decrementAndGet() == 0) {
+                    done.complete(null);
+                }
+            });
+        }
+
+        try {
+            done.get(JOIN_WAIT_MS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | TimeoutException e) {
+            logger.warn("Gave up waiting for join responses", e);
+        }
+    }
+
+    private void acceptPeer(Neighbour peer, int degree, CompletableFuture<Void> done) {
+        synchronized (neighbours) {
+            if (neighbours.size() >= degree) {
+                releaseSurplusPeer(peer);
+                return;
+            }
+            peer.settTL(5);
+            neighbours.add(peer);
+            logger.info("New node added as neighbor, IP address: {}, port: {}", peer.getIpAddress(), peer.getUdpPort());
+            if (neighbours.size() >= degree) {
+                done.complete(null);
+            }
+        }
+    }
+
+    /**
+     * Adds the node that sent a JOIN as a neighbour, unless it already is one. Checked and added
+     * at once, so that JOINs of the same node handled on two threads add it only once.
+     *
+     * @return whether the node was added
+     */
+    public boolean acceptJoin(Endpoint peer) {
+        synchronized (neighbours) {
+            if (isNeighbour(peer.getAddress(), peer.getPort())) {
+                return false;
+            }
+            Neighbour neighbour = new Neighbour(peer);
+            neighbour.settTL(5);
+            neighbours.add(neighbour);
+            return true;
+        }
+    }
+
+    /**
+     * Tells a peer that accepted a join once this node already had enough neighbours to drop this
+     * node again, so that the peer does not keep a one sided neighbour.
+     */
+    private void releaseSurplusPeer(Neighbour peer) {
+        if (isNeighbour(peer.getIpAddress(), peer.getUdpPort())) {
+            return;
+        }
+        logger.info("Releasing surplus peer {}:{}", peer.getIpAddress().getHostAddress(), peer.getUdpPort());
+        leaveService.leave(peer.getIpAddress(), peer.getUdpPort(), nodeAddress, nodeUdpPort, Collections.emptyList());
+    }
+
+    private boolean isNeighbour(InetAddress address, int port) {
+        for (Neighbour neighbour : neighbours) {
+            if (neighbour.getEndpoint().is(address, port)) {
+                return true;
+            }
+        }
+        return false;
     }
 
 
     public void sendPingMessage() {
         while (true) {
             List<Neighbour> valuesToRemove = new ArrayList<>();
+            String myip = nodeAddress.getHostAddress();
             for (Neighbour n : neighbours) {
-                String key = "PNG";
-                String myip = nodeAddress.getHostAddress();
-                String myport = String.valueOf(nodeUdpPort);
                 int tTL = n.gettTL();
 
-                String query = key + " " + myip + " " + myport;
-                String length = String.format("%04d", query.length() + 4);
-                query = length + " " + query;
-
                 if (tTL == 0) {
                     valuesToRemove.add(n);
+                    routingSummary.remove(n.getEndpoint());
                     logger.info("Neighbor eliminated, IP address: {}, port: {}", n.getIpAddress(), n.getUdpPort());
                 } else {
                     n.settTL(tTL - 1);
-                    UdpHelper.sendMessage(query, n.getIpAddress(), n.getUdpPort());
+                    // each neighbour gets a summary of everything but itself
+                    String summary = routingSummary.encodeFor(n.getEndpoint(), neighbours);
+                    MessageEncoder.Writer ping = buffer -> MessageEncoder.encodePing(buffer, myip, nodeUdpPort, summary);
+                    UdpHelper.sendMessage(ping, n.getIpAddress(), n.getUdpPort());
                     logger.info("Sent ping message , IP address: {}, port: {}", n.getIpAddress(), n.getUdpPort());
                 }
             }
@@ -247,128 +365,248 @@ public class Node {
         }
     }
 
-    public List<File> search(MessageObject msgObject) {
-        List<File> results = searchInLocalStore(msgObject.getFile_name());
-        //TODO: get fixed hop count from property file
-        //if (nodeAddress.equals(msgObject.getSearch_ip()) && getNodeUdpPort() == msgObject.getSearch_udp_Port()) {
-        //    results.forEach(file -> {
-        //        Result result = new Result(file.getFileName(), getNodeAddress() + ":" + getTcpPort() + "/file/" + file.getFileName(), msgObject.getHops());
-        //
-        //        Node.latestSearchResults.add(result);
-        //    });
-        //}
+    /**
+     * Starts a new search of this node that floods the network with one query. The query id is
+     * remembered, so copies of the query that come back through the neighbours are dropped.
+     * <br>
+     * The same search repeated within {@code search.cache.ttl-ms} is not sent again, the session
+     * collecting the results of the earlier one is returned instead.
+     *
+     * @return the session the results are added to
+     */
+    public SearchSession startSearch(String fileName, int hops) {
+        return start(fileName, hops, Search.Forwarding.FLOOD);
+    }
 
-        msgObject.setHops(msgObject.getHops() - 1);
+    /**
+     * Starts a new search of this node that is passed on by random walkers instead of being flooded.
+     * The walkers check back every few hops, see {@link #walkShouldContinue(long)}.
+     *
+     * @return the session the results are added to
+     */
+    public SearchSession startWalk(String fileName, int hops) {
+        return start(fileName, hops, Search.Forwarding.WALK);
+    }
+
+    private SearchSession start(String fileName, int hops, Search.Forwarding forwarding) {
+        SearchSession session = recentSearch(fileName, hops);
+        if (session == null) {
+            session = newSearch(fileName, hops);
+            sendQuery(session, hops, forwarding);
+        }
+        return session;
+    }
 
-        if (msgObject.getHops() > 0) {
+    /**
+     * @return the session of a search for the same file with the same hops made within
+     * {@code search.cache.ttl-ms}, or {@code null} if there is none
+     */
+    public SearchSession recentSearch(String fileName, int hops) {
+        SearchSession session = networkResults.get(fileName, hops);
+        if (session == null || searchSessions.get(session.getId()) != session) {
+            return null;
+        }
+        logger.debug("Answering search for {} with the results of an earlier one", fileName);
+        return session;
+    }
+
+    /**
+     * Starts collecting the results of a new search of this node, no query is sent yet. The session
+     * is {@link #recentSearch remembered} for searches of the same file with the same hops, whichever
+     * way they are sent.
+     */
+    public SearchSession newSearch(String fileName, int hops) {
+        SearchSession session = searchSessions.create(fileName);
+        networkResults.put(fileName, hops, session);
+        return session;
+    }
+
+    /**
+     * Sends a query of the search with a new id, its results are added to the search's session
+     */
+    public List<File> sendQuery(SearchSession session, int hops, Search.Forwarding forwarding) {
+        Search query = new Search(getEndpoint(), session.getFileName(), hops, Search.newQueryId(), forwarding,
+                resultLimit);
+        seenQueries.firstSeen(query.getQueryId());
+        searchSessions.attach(query.getQueryId(), session);
+        return search(query);
+    }
+
+    /**
+     * @return whether the walkers of the query should go on, i.e. the query belongs to a search of
+     * this node that has not expired and has fewer than {@code search.walk.wanted-results} results
+     */
+    public boolean walkShouldContinue(long queryId) {
+        SearchSession session = searchSessions.forQuery(queryId);
+        return session != null && session.size() < walkWantedResults;
+    }
+
+    /**
+     * Searches the local store and passes the query on to the neighbours with one hop less.
+     * The query itself is not modified, it may still be in use by the handler replying to it.
+     */
+    public List<File> search(Search query) {
+        List<File> results = searchInLocalStore(query.getFileName(), query.getLimit());
+        forward(query);
+        return results;
+    }
+
+    /**
+     * Passes the query on to the neighbours with one hop less, without searching the local store
+     */
+    public void forward(Search query) {
+        if (query.getHops() - 1 > 0) {
             try {
-                searchService.search(msgObject, neighbours, nodeAddress, nodeTcpPort);
+                searchService.search(query.forwarded(), neighbours, nodeAddress, nodeTcpPort);
             } catch (Exception e) {
                 logger.error("Unable to propogate search to neighbour nodes", e);
             }
         }
-        return results;
     }
 
-    private List<File> searchInLocalStore(String fileName) {
-        ArrayList<Integer> file_indexes = getFileIndexes(fileName);
-        List<File> results = new ArrayList<>();
-        for (Integer file_index : file_indexes) {
-            results.add(files.get(file_index));
+    /**
+     * @return at most {@code limit} of the node's own files matching the query, best match first
+     */
+    private List<File> searchInLocalStore(String fileName, int limit) {
+        List<File> results = localResults.get(fileName, limit);
+        if (results == null) {
+            long generation = localResults.generation();
+            results = Collections.unmodifiableList(fileIndex.search(fileName, limit));
+            localResults.putIfCurrent(fileName, limit, results, generation);
         }
         return results;
+    }
 
+    /**
+     * Sets the size and lifetime of both search result caches
+     */
+    @Autowired
+    public void configureSearchCaches(@Value("${search.cache.capacity:256}") int capacity,
+                                      @Value("${search.cache.ttl-ms:30000}") long ttlMs) {
+        localResults = new SearchResultCache<>(capacity, ttlMs);
+        networkResults = new SearchResultCache<>(capacity, ttlMs);
     }
 
-    private ArrayList<Integer> getFileIndexes(String fileName) {
-        Set<String> myset = new HashSet<>();
-        String[] s = fileName.toLowerCase().split("_");
-        for (String s1 : s) {
-            myset.add(s1);
-        }
-        int highest = 0;
-        ArrayList<Integer> file_indexes = new ArrayList<Integer>();
-        for (int i = 0; i < files.size(); i++) {
-            Set<String> intersection = new HashSet<String>(myset);
-            intersection.retainAll(map.get(i));
-            if (intersection.size() > highest) {
-                file_indexes.add(i);
-            }
-        }
-        return file_indexes;
+    /**
+     * Sets how long to wait in all for the neighbours to acknowledge a LEAVE, see {@link #leaveNetwork()}
+     */
+    @Autowired
+    public void configureLeave(@Value("${node.leave-deadline-ms:3000}") long leaveDeadlineMs) {
+        this.leaveDeadlineMs = leaveDeadlineMs;
     }
 
-    private void update_table() {
+    @Autowired
+    public void setLeaveService(LeaveService leaveService) {
+        this.leaveService = leaveService;
+    }
 
-        ArrayList<File> uniquefiles = new ArrayList<File>();// unique
-        for (File file : files) {
-            if (!uniquefiles.contains(file)) {
-                uniquefiles.add(file);
-            }
-        }
-        this.files=uniquefiles;
-
-        map = new HashMap<Integer, HashSet>();
-        for (int i = 0; i < files.size(); i++) {
-            Set<String> myset = new HashSet<>();
-            String str = files.get(i).getFileName().toLowerCase();
-            String s[] = str.split(" ");
-            for (int j = 0; j < s.length; j++) {
-                myset.add(s[j]);
-            }
-            map.put(i, (HashSet) myset);
-        }
+    @Autowired
+    public void setUnregisterService(UnregisterService unregisterService) {
+        this.unregisterService = unregisterService;
+    }
+
+    @Autowired
+    public void setRoutingSummary(RoutingSummary routingSummary) {
+        this.routingSummary = routingSummary;
+        routingSummary.setLocalWords(fileIndex::getWords);
+    }
+
+    public Map<String, Object> getSearchCacheStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("local", localResults.getStats());
+        stats.put("network", networkResults.getStats());
+        return stats;
     }
 
-    public boolean leaveNetwork() {
+    /**
+     * Unregisters from the bootstrap server and informs all neighbours about leaving.
+     * <br>
+     * All LEAVE messages are sent at once and the node waits at most {@code node.leave-deadline-ms}
+     * for the acknowledgements, however many neighbours it has.
+     *
+     * @return outcome per neighbour ({@code ip:port}) and for the bootstrap server:
+     * {@value #INFORMED}, {@value #NOT_ACKNOWLEDGED} or {@value #TIMED_OUT}
+     */
+    public Map<String, String> leaveNetwork() {
         logger.info("Preparing to leave the network");
+        Map<String, String> report = new ConcurrentHashMap<>();
+        List<CompletableFuture<Boolean>> notifications = new ArrayList<>();
 
-        this.isLeaving = true; //to break the ever running server while loop
+        CompletableFuture<Boolean> unregistered = unregister();
+        track(unregistered, BOOTSTRAP_SERVER, report);
+        notifications.add(unregistered);
 
-        //releasing the ever running udp port
-        int tempUdpPort = SocketUtils.findAvailableUdpPort();
-        UdpHelper.sendMessage("", nodeAddress, nodeUdpPort, tempUdpPort);
+        List<Neighbour> leftNeighbours = new ArrayList<>(neighbours);
+        for (Neighbour neighbour : leftNeighbours) {
+            List<Neighbour> myNeighbours = new ArrayList<>(leftNeighbours);
+            myNeighbours.remove(neighbour); //so the receiver address will not be added to the leave msg
+            String key = neighbour.getIpAddress().getHostAddress() + ":" + neighbour.getUdpPort();
+            CompletableFuture<Boolean> leave = leaveService.leave(neighbour.getIpAddress(), neighbour.getUdpPort(),
+                    nodeAddress, nodeUdpPort, myNeighbours);
+            track(leave, key, report);
+            notifications.add(leave);
+            leave.thenAccept(leaveSuccessful -> {
+                if (leaveSuccessful) {
+                    logger.info("Informed neighbour {} about leaving", key);
+                } else {
+                    logger.info("Could not properly inform neighbour {} about leaving", key);
+                }
+            });
+        }
 
-        unregister();
+        try {
+            CompletableFuture.allOf(notifications.toArray(new CompletableFuture<?>[0]))
+                    .get(leaveDeadlineMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | TimeoutException e) {
+            logger.warn("Leave deadline of {} ms passed before every neighbour answered", leaveDeadlineMs);
+        }
+        notifications.forEach(notification -> notification.cancel(false));
 
-        if(neighbours.isEmpty()) {
+        neighbours.removeAll(leftNeighbours);
+        stopListening();
+        status = UNREGISTERED_AND_DISCONNECTED;
+        if (leftNeighbours.isEmpty()) {
             logger.info("I am the only node in the network. Leaving gracefully.");
-            status = UNREGISTERED_AND_DISCONNECTED;
-            return true;
+        } else {
+            logger.info("Finished informing the neighbours. Leaving gracefully.");
         }
-        List<Neighbour> myNeighbours = new ArrayList<>();
-        myNeighbours.addAll(neighbours);
+        return report;
+    }
 
-        for (Neighbour neighbour : neighbours) {
-            myNeighbours.remove(neighbour); //so the receiver address will not be added to the leave msg
-            boolean leaveSuccessful = leaveService.leave(neighbour.getIpAddress(), neighbour.getUdpPort(),
-                    nodeAddress, nodeUdpPort, myNeighbours);
-            myNeighbours.add(neighbour);
-            if (leaveSuccessful) {
-                logger.info("Informed neighbour {}:{} about leaving", neighbour.getIpAddress(), neighbour.getUdpPort());
+    /**
+     * Records the outcome of a leave notification in the report as soon as it is known,
+     * a notification that is still pending when it is cancelled is reported as timed out
+     */
+    private static void track(CompletableFuture<Boolean> notification, String key, Map<String, String> report) {
+        notification.whenComplete((acknowledged, e) -> {
+            if (e != null) {
+                report.put(key, TIMED_OUT);
             } else {
-                logger.info("Could not properly inform neighbour {}:{} about leaving", neighbour.getIpAddress(), neighbour.getUdpPort());
+                report.put(key, acknowledged ? INFORMED : NOT_ACKNOWLEDGED);
             }
-        }
-        neighbours.clear();
-        if (neighbours.size() == 0) {
-            logger.info("Finished informing the neighbours. Leaving gracefully.");
-            status = UNREGISTERED_AND_DISCONNECTED;
-            return true;
-        }
-        status = UNREGISTERED_AND_DISCONNECTED;
-        return false;
+        });
     }
 
-    private boolean unregister() {
-        boolean unregistered = unregisterService.unregister(bootstrapServerAddress, bootstrapServerPort,
-                nodeAddress, nodeUdpPort, name);
-        if(unregistered) {
-            logger.info("Successfully unregistered from the bootstrap server");
-            return true;
-        }
-        logger.info("Not able to unregister from bootstrap server. Skipping..");
-        return false;
+    /**
+     * Stops the ever running UDP receive loop. Must be called only after all responses
+     * to this node's requests have arrived, since they are received on the same port.
+     */
+    private void stopListening() {
+        this.isLeaving = true; //to break the ever running server while loop
+        UdpHelper.sendMessage("", nodeAddress, nodeUdpPort); // wakes up the receive loop
+    }
+
+    private CompletableFuture<Boolean> unregister() {
+        return unregisterService.unregister(bootstrapServerAddress, bootstrapServerPort,
+                nodeAddress, nodeUdpPort, name).whenComplete((unregistered, e) -> {
+            if (Boolean.TRUE.equals(unregistered)) {
+                logger.info("Successfully unregistered from the bootstrap server");
+            } else {
+                logger.info("Not able to unregister from bootstrap server. Skipping..");
+            }
+        });
     }
 
     public Boolean isRegistered() {
@@ -407,6 +645,13 @@ public class Node {
         return nodeAddress.getHostAddress();
     }
 
+    /**
+     * Returns the IP address and the listening UDP port of the current Node
+     */
+    public Endpoint getEndpoint() {
+        return EndpointRegistry.of(nodeAddress, nodeUdpPort);
+    }
+
     public String getBootstrapServerAddress() {
         return bootstrapServerAddress.getHostAddress() + bootstrapServerPort;
     }
@@ -416,16 +661,36 @@ public class Node {
     }
 
     public List<File> getFiles() {
-        return files;
+        return fileIndex.getFiles();
+    }
+
+    /**
+     * @see FileIndex#catalogName(String)
+     */
+    public String catalogName(String fileName) {
+        return fileIndex.catalogName(fileName);
     }
 
     public void addFile(File file) {
-        files.add(file);
-        update_table();
+        fileIndex.add(file);
+        localResults.invalidate();
+        routingSummary.localWordsChanged();
+    }
+
+    /**
+     * Adds all files at once; files already present are skipped
+     */
+    public void addFiles(Collection<File> files) {
+        fileIndex.addAll(files);
+        localResults.invalidate();
+        routingSummary.localWordsChanged();
     }
 
     public void deleteFile(File file) {
-        files.remove(file);
+        if (fileIndex.remove(file)) {
+            localResults.invalidate();
+            routingSummary.localWordsChanged();
+        }
     }
 
 }
@@ -0,0 +1,107 @@
+package com.dsvl.flood;
+
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.net.InetAddress;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Matches responses arriving on the node's listening port to outstanding requests.
+ * <br>
+ * A request registers the response it {@link #expect expects} (e.g. {@code JOINOK}) together with
+ * the endpoint it was sent to. When the receive loop gets a message it offers it to
+ * {@link #complete}; a matching request's future is completed with the raw message,
+ * otherwise the message is handled as usual.
+ * <br>
+ * Requests that are not answered in time are completed exceptionally with a {@link TimeoutException}.
+ */
+@Component
+public class RequestCorrelator {
+
+    /**
+     * Outstanding requests keyed by {@code responseType address:port}, oldest first
+     */
+    private final Map<String, Queue<CompletableFuture<String>>> pending = new ConcurrentHashMap<>();
+
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "request-timeout");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public CompletableFuture<String> expect(String responseType, InetAddress address, int port, long timeoutInMilliSecond) {
+        String key = key(responseType, address.getHostAddress(), port);
+        CompletableFuture<String> response = new CompletableFuture<>();
+        pending.compute(key, (k, waiting) -> {
+            Queue<CompletableFuture<String>> queue = waiting == null ? new ConcurrentLinkedQueue<>() : waiting;
+            queue.add(response);
+            return queue;
+        });
+
+        ScheduledFuture<?> timeout = timer.schedule(() -> response.completeExceptionally(
+                new TimeoutException("No " + responseType + " from " + address.getHostAddress() + ":" + port)),
+                timeoutInMilliSecond, TimeUnit.MILLISECONDS);
+        response.whenComplete((message, error) -> {
+            timeout.cancel(false);
+            // a queue is dropped once it is empty, so that pending only holds requests still waiting
+            pending.computeIfPresent(key, (k, waiting) -> {
+                waiting.remove(response);
+                return waiting.isEmpty() ? null : waiting;
+            });
+        });
+        return response;
+    }
+
+    /**
+     * Completes the oldest request waiting for this response from exactly this address and port.
+     * A response from any other endpoint is never taken for it, whatever port it comes from; so
+     * nodes answer requests from their listening port, see {@link UdpHelper#sendReply}.
+     *
+     * @return whether the message was a response to an outstanding request
+     */
+    public boolean complete(String responseType, InetAddress address, int port, String message) {
+        if (pending.isEmpty()) {
+            return false;
+        }
+        return completeOldest(pending.get(key(responseType, address.getHostAddress(), port)), message);
+    }
+
+    /**
+     * @return the number of endpoints and response types with requests waiting
+     */
+    int pendingKeys() {
+        return pending.size();
+    }
+
+    private static boolean completeOldest(Queue<CompletableFuture<String>> waiting, String message) {
+        if (waiting == null) {
+            return false;
+        }
+        CompletableFuture<String> response;
+        while ((response = waiting.poll()) != null) {
+            if (response.complete(message)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String key(String responseType, String address, int port) {
+        return responseType + " " + address + ":" + port;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        timer.shutdownNow();
+    }
+}
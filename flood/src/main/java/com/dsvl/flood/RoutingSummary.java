@@ -0,0 +1,220 @@
+package com.dsvl.flood;
+
+import com.dsvl.flood.util.BloomFilter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Attenuated Bloom filters of the file name words reachable through each neighbour.
+ * <br>
+ * Level 0 of a node's summary holds the words of its own files, level {@code i} the words of
+ * the files of the nodes {@code i} hops away from it, as merged from its neighbours' level
+ * {@code i - 1}. Neighbours exchange their summaries on every PNG and PNGOK, so a node knows,
+ * up to {@code search.routing.depth - 1} hops beyond each neighbour, whether a query could
+ * possibly match there. A query is then only passed on to the neighbours where it could.
+ * <br>
+ * Bloom filters have false positives but no false negatives, so a query is never held back from
+ * a neighbour whose summary holds its words. A neighbour is always sent the query when its summary
+ * is missing, older than {@code search.routing.max-age-ms} or not deep enough for the hops the
+ * query has left. A file added within the last ping period or two may not be found through the
+ * summaries yet.
+ */
+@Component
+public class RoutingSummary {
+
+    /**
+     * Starts the optional last token of PNG and PNGOK, followed by the levels separated by dots
+     */
+    public static final String TOKEN_PREFIX = "b=";
+
+    private static final class Summary {
+        final BloomFilter[] levels;
+        final long receivedAt;
+
+        Summary(BloomFilter[] levels, long receivedAt) {
+            this.levels = levels;
+            this.receivedAt = receivedAt;
+        }
+    }
+
+    private final boolean enabled;
+    private final int depth;
+    private final long maxAgeNanos;
+    private final Map<Endpoint, Summary> received = new ConcurrentHashMap<>();
+    private volatile Supplier<? extends Collection<String>> localWords;
+    private volatile BloomFilter local;
+    /**
+     * Whether the local words changed since {@link #local} was built
+     */
+    private final AtomicBoolean localChanged = new AtomicBoolean();
+    private final AtomicLong forwarded = new AtomicLong();
+    private final AtomicLong pruned = new AtomicLong();
+
+    public RoutingSummary(@Value("${search.routing.enabled:true}") boolean enabled,
+                          @Value("${search.routing.depth:4}") int depth,
+                          @Value("${search.routing.max-age-ms:90000}") long maxAgeMs) {
+        this.enabled = enabled;
+        this.depth = Math.max(1, depth);
+        this.maxAgeNanos = TimeUnit.MILLISECONDS.toNanos(maxAgeMs);
+    }
+
+    /**
+     * Sets where the words of this node's own files, level 0 of its summary, come from
+     */
+    public void setLocalWords(Supplier<? extends Collection<String>> words) {
+        localWords = words;
+        localChanged.set(true);
+    }
+
+    /**
+     * Marks the words of this node's own files as changed. Level 0 is only rebuilt, from all the
+     * words, when it is next sent, so a burst of catalog changes costs one rebuild per ping at most.
+     */
+    public void localWordsChanged() {
+        localChanged.set(true);
+    }
+
+    private BloomFilter local() {
+        Supplier<? extends Collection<String>> words = localWords;
+        // cleared before the words are read, so that a change while they are read is not lost
+        if (words != null && localChanged.compareAndSet(true, false)) {
+            local = BloomFilter.of(words.get());
+        }
+        return local;
+    }
+
+    /**
+     * Stores the summary a neighbour sent
+     */
+    public void update(Endpoint neighbour, BloomFilter[] levels) {
+        if (levels != null && levels.length > 0) {
+            received.put(neighbour, new Summary(levels, System.nanoTime()));
+        }
+    }
+
+    /**
+     * Drops the summary of a node that is no longer a neighbour
+     */
+    public void remove(Endpoint neighbour) {
+        received.remove(neighbour);
+    }
+
+    /**
+     * Builds the summary to send to a neighbour, from everything but what that neighbour sent itself
+     *
+     * @return the levels, or {@code null} if there is nothing to send
+     */
+    public BloomFilter[] summaryFor(Endpoint recipient, List<Neighbour> neighbours) {
+        if (!enabled) {
+            return null;
+        }
+        BloomFilter own = local();
+        if (own == null) {
+            return null;
+        }
+        long now = System.nanoTime();
+        BloomFilter[] levels = new BloomFilter[depth];
+        levels[0] = new BloomFilter().or(own);
+        for (int level = 1; level < depth; level++) {
+            levels[level] = new BloomFilter();
+            for (Neighbour neighbour : neighbours) {
+                if (neighbour.getEndpoint().equals(recipient)) {
+                    continue;
+                }
+                Summary summary = received.get(neighbour.getEndpoint());
+                if (summary == null || now - summary.receivedAt > maxAgeNanos
+                        || summary.levels.length < level) {
+                    // nothing is known beyond this neighbour, the recipient must not rule anything out
+                    return levels(levels, level);
+                }
+                levels[level].or(summary.levels[level - 1]);
+            }
+        }
+        return levels;
+    }
+
+    /**
+     * @return {@link #summaryFor} as one protocol token without {@link #TOKEN_PREFIX}, or {@code null}
+     */
+    public String encodeFor(Endpoint recipient, List<Neighbour> neighbours) {
+        BloomFilter[] levels = summaryFor(recipient, neighbours);
+        return levels == null ? null : encode(levels);
+    }
+
+    private static BloomFilter[] levels(BloomFilter[] levels, int count) {
+        BloomFilter[] known = new BloomFilter[count];
+        System.arraycopy(levels, 0, known, 0, count);
+        return known;
+    }
+
+    /**
+     * @param hops the hops the query will have when the neighbour receives it
+     * @return whether a query for all of the words could find a file through the neighbour
+     */
+    public boolean mayMatch(Endpoint neighbour, Collection<String> words, int hops) {
+        boolean mayMatch = mayMatch(received.get(neighbour), words, hops);
+        (mayMatch ? forwarded : pruned).incrementAndGet();
+        return mayMatch;
+    }
+
+    private boolean mayMatch(Summary summary, Collection<String> words, int hops) {
+        if (!enabled || summary == null || System.nanoTime() - summary.receivedAt > maxAgeNanos
+                || hops > summary.levels.length) {
+            return true;
+        }
+        // the neighbour searches its own files and passes the query on to hops - 1 more levels
+        for (int level = 0; level < hops; level++) {
+            if (summary.levels[level].mightContainAll(words)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the levels as one protocol token, without {@link #TOKEN_PREFIX}
+     */
+    public static String encode(BloomFilter[] levels) {
+        StringBuilder token = new StringBuilder();
+        for (BloomFilter level : levels) {
+            if (token.length() > 0) {
+                token.append('.');
+            }
+            token.append(level.encode());
+        }
+        return token.toString();
+    }
+
+    /**
+     * @return the levels, or {@code null} if the token is not a summary
+     */
+    public static BloomFilter[] decode(String token) {
+        String[] parts = token.split("\\.");
+        BloomFilter[] levels = new BloomFilter[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            levels[i] = BloomFilter.decode(parts[i]);
+            if (levels[i] == null) {
+                return null;
+            }
+        }
+        return levels;
+    }
+
+    public Map<String, Long> getStats() {
+        Map<String, Long> stats = new LinkedHashMap<>();
+        stats.put("summaries", (long) received.size());
+        stats.put("forwarded", forwarded.get());
+        stats.put("pruned", pruned.get());
+        return stats;
+    }
+}
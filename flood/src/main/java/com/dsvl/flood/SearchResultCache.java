@@ -0,0 +1,134 @@
+package com.dsvl.flood;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bounded cache of search results, keyed by the normalized query and the hops it was sent with.
+ * The results may be anything, e.g. the matching files or the session collecting the results.
+ * <br>
+ * A query is normalized to its distinct lower cased words in sorted order, the way
+ * {@link FileIndex} matches them, so "Super Mario", "mario_super" and "super mario mario"
+ * share one entry. Entries expire {@code ttlMs} after they are put and the least recently
+ * used entry is dropped once there are {@code capacity} of them.
+ * <br>
+ * Safe for concurrent use.
+ */
+public class SearchResultCache<V> {
+
+    /**
+     * Hops of the results that are the same whatever hops the query was sent with
+     */
+    public static final int ANY_HOPS = -1;
+
+    private final int capacity;
+    private final long ttlNanos;
+    private final LinkedHashMap<String, Cached<V>> entries;
+    private long hits;
+    private long misses;
+    private long generation;
+
+    private static final class Cached<V> {
+        final V results;
+        final long putAt;
+
+        Cached(V results, long putAt) {
+            this.results = results;
+            this.putAt = putAt;
+        }
+    }
+
+    public SearchResultCache(int capacity, long ttlMs) {
+        this.capacity = capacity;
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMs);
+        this.entries = new LinkedHashMap<String, Cached<V>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Cached<V>> eldest) {
+                return size() > SearchResultCache.this.capacity;
+            }
+        };
+    }
+
+    /**
+     * @return the cached results, or {@code null} if there are none or they have expired
+     */
+    public V get(String query, int hops) {
+        return get(query, hops, System.nanoTime());
+    }
+
+    synchronized V get(String query, int hops, long now) {
+        String key = key(query, hops);
+        Cached<V> entry = entries.get(key);
+        if (entry != null && now - entry.putAt > ttlNanos) {
+            entries.remove(key);
+            entry = null;
+        }
+        if (entry == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return entry.results;
+    }
+
+    public void put(String query, int hops, V results) {
+        put(query, hops, results, System.nanoTime());
+    }
+
+    synchronized void put(String query, int hops, V results, long now) {
+        if (capacity > 0) {
+            entries.put(key(query, hops), new Cached<>(results, now));
+        }
+    }
+
+    /**
+     * Puts the results only if the cache has not been invalidated since {@code generation},
+     * so that results computed before a change are not cached after it
+     *
+     * @param generation {@link #generation()} as it was before the results were computed
+     */
+    public synchronized void putIfCurrent(String query, int hops, V results, long generation) {
+        if (generation == this.generation) {
+            put(query, hops, results);
+        }
+    }
+
+    /**
+     * Drops every entry, e.g. when the results they hold may no longer be right
+     */
+    public synchronized void invalidate() {
+        entries.clear();
+        generation++;
+    }
+
+    /**
+     * @return the number of times the cache has been invalidated
+     */
+    public synchronized long generation() {
+        return generation;
+    }
+
+    public synchronized Map<String, Long> getStats() {
+        long now = System.nanoTime();
+        Iterator<Cached<V>> iterator = entries.values().iterator();
+        while (iterator.hasNext()) {
+            if (now - iterator.next().putAt > ttlNanos) {
+                iterator.remove();
+            }
+        }
+        Map<String, Long> stats = new LinkedHashMap<>();
+        stats.put("entries", (long) entries.size());
+        stats.put("hits", hits);
+        stats.put("misses", misses);
+        return stats;
+    }
+
+    static String key(String query, int hops) {
+        Set<String> words = new TreeSet<>(FileIndex.tokens(query));
+        return String.join("_", words) + '#' + hops;
+    }
+}
@@ -0,0 +1,140 @@
+package com.dsvl.flood;
+
+import com.dsvl.flood.model.FileCopies;
+import com.dsvl.flood.model.Result;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Results of one search of this node, collected from the SEROK messages of its queries.
+ * <br>
+ * A file of a node is listed once, however many queries of the search reached that node, and
+ * at most {@code maxResults} results are kept. Safe for concurrent use; results are added by
+ * the UDP handler threads while a controller reads them.
+ *
+ * @see SearchSessions
+ */
+public class SearchSession {
+
+    private final long id;
+    private final String fileName;
+    private final long createdAt;
+    private final int maxResults;
+    private final Set<String> urls = ConcurrentHashMap.newKeySet();
+    private final Queue<Result> results = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger size = new AtomicInteger();
+    private final List<Consumer<Result>> listeners = new CopyOnWriteArrayList<>();
+
+    SearchSession(long id, String fileName, long createdAt, int maxResults) {
+        this.id = id;
+        this.fileName = fileName;
+        this.createdAt = createdAt;
+        this.maxResults = maxResults;
+    }
+
+    /**
+     * @return whether the result was added; {@code false} if it is already listed or the session is full
+     */
+    public boolean add(Result result) {
+        if (size.get() >= maxResults || !urls.add(result.getUrl())) {
+            return false;
+        }
+        if (size.incrementAndGet() > maxResults) {
+            size.decrementAndGet();
+            urls.remove(result.getUrl());
+            return false;
+        }
+        results.add(result);
+        for (Consumer<Result> listener : listeners) {
+            listener.accept(result);
+        }
+        return true;
+    }
+
+    /**
+     * Registers a listener that is given every result added from now on, on the thread adding it.
+     * Listeners must not block, results are added by the UDP handler threads.
+     */
+    public void addListener(Consumer<Result> listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Consumer<Result> listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * @return a copy of the results, in the order they arrived
+     */
+    public List<Result> getResults() {
+        return new ArrayList<>(results);
+    }
+
+    /**
+     * @return the results with the copies of each file collapsed into one, by name and content
+     * hash, nearest copy first; in the order the first copy of each arrived
+     */
+    public List<FileCopies> getFiles() {
+        Map<String, FileCopies> files = new LinkedHashMap<>();
+        for (Result result : results) {
+            String key = result.getContentHash() == null ? result.getUrl()
+                    : result.getFileName() + '/' + result.getContentHash();
+            FileCopies copies = files.get(key);
+            if (copies == null) {
+                copies = new FileCopies();
+                copies.setFileName(result.getFileName());
+                copies.setContentHash(result.getContentHash());
+                copies.setHopCount(result.getHopCount());
+                files.put(key, copies);
+            }
+            if (result.getHopCount() < copies.getHopCount()) {
+                copies.setHopCount(result.getHopCount());
+                copies.getUrls().add(0, result.getUrl());
+            } else {
+                copies.getUrls().add(result.getUrl());
+            }
+        }
+        return new ArrayList<>(files.values());
+    }
+
+    public int size() {
+        return size.get();
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    /**
+     * @return the id as it appears in {@code /results/{queryId}}
+     */
+    public String getKey() {
+        return Long.toHexString(id);
+    }
+
+    public String getFileName() {
+        return fileName;
+    }
+
+    long getCreatedAt() {
+        return createdAt;
+    }
+
+    /**
+     * @return the milliseconds since the search was started
+     */
+    public long getAgeMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - createdAt);
+    }
+}
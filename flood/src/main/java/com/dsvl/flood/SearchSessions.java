@@ -0,0 +1,146 @@
+package com.dsvl.flood;
+
+import com.dsvl.flood.message.Search;
+import com.dsvl.flood.model.Result;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The searches of this node, each collecting the results of its own queries.
+ * <br>
+ * A search may send several queries, e.g. one per ring of an expanding ring search, so every
+ * query id is mapped to the search it belongs to. SEROK messages echo the query id and their
+ * results are added to that search only; a SEROK of a node that does not echo the id goes to
+ * the latest search.
+ * <br>
+ * At most {@code search.sessions.max} searches are kept, each for {@code search.sessions.ttl-ms};
+ * whichever limit is hit first drops the oldest search.
+ */
+@Component
+public class SearchSessions {
+
+    private final int maxSessions;
+    private final long ttlNanos;
+    private final int maxResults;
+
+    /**
+     * Searches by session id, oldest first
+     */
+    private final LinkedHashMap<Long, SearchSession> sessions = new LinkedHashMap<>();
+    private final Map<Long, SearchSession> byQueryId = new ConcurrentHashMap<>();
+    private volatile SearchSession latest;
+
+    public SearchSessions(@Value("${search.sessions.max:64}") int maxSessions,
+                          @Value("${search.sessions.ttl-ms:300000}") long ttlMs,
+                          @Value("${search.sessions.max-results:200}") int maxResults) {
+        this.maxSessions = Math.max(1, maxSessions);
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMs);
+        this.maxResults = maxResults;
+    }
+
+    /**
+     * Starts a new search, which becomes the latest one
+     */
+    public SearchSession create(String fileName) {
+        return create(fileName, System.nanoTime());
+    }
+
+    synchronized SearchSession create(String fileName, long now) {
+        evict(now);
+        SearchSession session;
+        do {
+            session = new SearchSession(Search.newQueryId(), fileName, now, maxResults);
+        } while (sessions.containsKey(session.getId()));
+        sessions.put(session.getId(), session);
+        latest = session;
+        return session;
+    }
+
+    /**
+     * Adds a query sent for the session, its results will be added to the session
+     */
+    public synchronized void attach(long queryId, SearchSession session) {
+        if (sessions.get(session.getId()) == session) {
+            byQueryId.put(queryId, session);
+        }
+    }
+
+    /**
+     * @return the search of the query, or {@code null} if there is none or it has expired
+     */
+    public SearchSession forQuery(long queryId) {
+        return queryId == Search.NO_ID ? null : byQueryId.get(queryId);
+    }
+
+    /**
+     * @return the search, or {@code null} if there is none or it has expired
+     */
+    public synchronized SearchSession get(long sessionId) {
+        evict(System.nanoTime());
+        return sessions.get(sessionId);
+    }
+
+    /**
+     * @param key the id of the search as {@link SearchSession#getKey()} gives it, e.g. from a request path
+     * @return the search, or {@code null} if the key is not an id, there is no such search or it has expired
+     */
+    public SearchSession get(String key) {
+        try {
+            return get(Long.parseLong(key, 16));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return the latest search, or {@code null} if it has expired or there has been none
+     */
+    public synchronized SearchSession latest() {
+        evict(System.nanoTime());
+        return latest;
+    }
+
+    /**
+     * Adds a result of the query to its search, or to the latest search if the id is not known
+     *
+     * @return whether the result was added
+     */
+    public boolean addResult(long queryId, Result result) {
+        SearchSession session = forQuery(queryId);
+        if (session == null && queryId == Search.NO_ID) {
+            session = latest();
+        }
+        return session != null && session.add(result);
+    }
+
+    /**
+     * Drops the searches that have expired or are too many, and the query ids of them
+     */
+    private void evict(long now) {
+        Iterator<SearchSession> iterator = sessions.values().iterator();
+        while (iterator.hasNext()) {
+            SearchSession oldest = iterator.next();
+            if (sessions.size() < maxSessions && now - oldest.getCreatedAt() <= ttlNanos) {
+                break;
+            }
+            iterator.remove();
+            byQueryId.values().removeIf(session -> session == oldest);
+            if (latest == oldest) {
+                latest = null;
+            }
+        }
+    }
+
+    public synchronized Map<String, Long> getStats() {
+        Map<String, Long> stats = new LinkedHashMap<>();
+        stats.put("sessions", (long) sessions.size());
+        stats.put("queries", (long) byQueryId.size());
+        return stats;
+    }
+}
@@ -0,0 +1,80 @@
+package com.dsvl.flood;
+
+import com.dsvl.flood.message.Search;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Remembers the ids of the queries this node has already handled, so that a copy of a query
+ * arriving through another path of the overlay is neither searched nor forwarded again.
+ * <br>
+ * Holds at most {@code search.seen-queries.capacity} ids, each for at most
+ * {@code search.seen-queries.ttl-ms}; whichever limit is hit first drops the oldest ids.
+ * A query lives for a few hops only, so an id does not need to be remembered for long.
+ */
+@Component
+public class SeenQueryCache {
+
+    private final int capacity;
+    private final long ttlNanos;
+
+    /**
+     * Query ids and the time they were first seen, oldest first
+     */
+    private final LinkedHashMap<Long, Long> seen;
+    private long duplicates;
+
+    public SeenQueryCache(@Value("${search.seen-queries.capacity:4096}") int capacity,
+                          @Value("${search.seen-queries.ttl-ms:30000}") long ttlMs) {
+        this.capacity = capacity;
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMs);
+        this.seen = new LinkedHashMap<Long, Long>(16, 0.75f, false) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Long> eldest) {
+                return size() > SeenQueryCache.this.capacity;
+            }
+        };
+    }
+
+    /**
+     * Records the query id
+     *
+     * @return whether this is the first time the id is seen; always {@code true} for
+     * {@link Search#NO_ID}, untagged queries cannot be told apart
+     */
+    public boolean firstSeen(long queryId) {
+        return firstSeen(queryId, System.nanoTime());
+    }
+
+    synchronized boolean firstSeen(long queryId, long now) {
+        if (queryId == Search.NO_ID) {
+            return true;
+        }
+        evictExpired(now);
+        if (seen.containsKey(queryId)) {
+            duplicates++;
+            return false;
+        }
+        seen.put(queryId, now);
+        return true;
+    }
+
+    private void evictExpired(long now) {
+        Iterator<Long> times = seen.values().iterator();
+        while (times.hasNext() && now - times.next() > ttlNanos) {
+            times.remove();
+        }
+    }
+
+    public synchronized Map<String, Long> getStats() {
+        Map<String, Long> stats = new LinkedHashMap<>();
+        stats.put("remembered", (long) seen.size());
+        stats.put("duplicatesDropped", duplicates);
+        return stats;
+    }
+}
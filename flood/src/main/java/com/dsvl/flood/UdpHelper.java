@@ -10,12 +10,15 @@ import org.springframework.stereotype.Component;
 import javax.validation.constraints.NotNull;
 import java.io.IOException;
 import java.net.*;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Helper class for UDP related actions
  *
- * @see #sendMessage(String, InetAddress, int, Integer)
- * @see #receiveMessage(int)
+ * @see #sendMessage(String, InetAddress, int)
+ * @see #sendMessage(MessageEncoder.Writer, InetAddress, int)
+ * @see #sendRequest(String, InetAddress, int, String, long)
+ * @see #sendReply(String, InetAddress, int)
  */
 @SuppressWarnings("ALL")
 @Component
@@ -23,15 +26,19 @@ public class UdpHelper {
 
     private static final Logger logger = LoggerFactory.getLogger(UdpHelper.class);
     private static LogRepository logRepository;
+    private static UdpSender udpSender;
+    private static RequestCorrelator correlator;
 
     @Autowired
-    public UdpHelper(LogRepository logRepository) {
+    public UdpHelper(LogRepository logRepository, UdpSender udpSender, RequestCorrelator correlator) {
         UdpHelper.logRepository = logRepository;
+        UdpHelper.udpSender = udpSender;
+        UdpHelper.correlator = correlator;
     }
 
     /**
-     * Send UDP message with a random port for UDP socket
-     * @see #sendMessage(String, InetAddress, int, Integer)
+     * Send UDP message through one of the node's long-lived sending channels
+     * @see UdpSender
      *
      * @param message
      * @param destinationAddress
@@ -39,144 +46,104 @@ public class UdpHelper {
      * @return whether the sending is succeeded or not
      */
     public static Boolean sendMessage(@NotNull String message, @NotNull InetAddress destinationAddress, @NotNull int destinationPort) {
-        byte[] buf = message.getBytes();
-        DatagramPacket packet = new DatagramPacket(buf, buf.length, destinationAddress, destinationPort);
-        try (DatagramSocket socket = new DatagramSocket()) {
-            socket.send(packet);
-            Log log = new Log(
-                    "this",
-                    destinationAddress.getHostAddress() + ":" + destinationPort, "UDP", message
-            );
-            logRepository.save(log);
-            logger.info("Sent UDP message to {}:{} {}", packet.getAddress().getHostAddress(), packet.getPort(), message);
-        } catch (IOException e) {
-            logger.error("unable to send the message", e);
+        if (!udpSender.send(message, destinationAddress, destinationPort)) {
             return false;
         }
+        log(message, destinationAddress, destinationPort);
         return true;
     }
 
     /**
-     * Helper method to send a UDP message
+     * Send UDP message encoded straight into the sending channel's buffer
+     * @see MessageEncoder
      *
-     * @param message
+     * @param message            e.g. {@code buffer -> MessageEncoder.encodePing(buffer, ip, port)}
      * @param destinationAddress
      * @param destinationPort
-     * @param nodePort
-     * @return whether the action was succeeded or not
+     * @return whether the sending is succeeded or not
      */
-    public static Boolean sendMessage(@NotNull String message, @NotNull InetAddress destinationAddress, @NotNull int destinationPort, @NotNull Integer nodePort) {
-        byte[] buf = message.getBytes();
-        DatagramPacket packet = new DatagramPacket(buf, buf.length, destinationAddress, destinationPort);
-        try (DatagramSocket socket = new DatagramSocket(nodePort)) {
-            Log log = new Log(
-                    "this",
-                    destinationAddress.getHostAddress() + ":" + destinationPort, "UDP", message
-            );
-            logRepository.save(log);
-            socket.send(packet);
-            logger.info("Sent UDP message to {}:{} {}", packet.getAddress().getHostAddress(), packet.getPort(), message);
-        } catch (IOException e) {
-            logger.error("unable to send the message", e);
+    public static Boolean sendMessage(@NotNull MessageEncoder.Writer message, @NotNull InetAddress destinationAddress,
+                                      @NotNull int destinationPort) {
+        String sent = udpSender.send(message, destinationAddress, destinationPort);
+        if (sent == null) {
             return false;
         }
+        log(sent, destinationAddress, destinationPort);
         return true;
     }
 
     /**
-     * To keep the bootstrap server and this node synced, had to include both send and receive in the same method
+     * Sends the response to another node's request from the node's listening port, the one the
+     * request was sent to; the other node takes nothing from any other port for the response
+     * @see UdpSender#sendFromNodePort(String, InetAddress, int)
      *
-     * @param message
+     * @param message            e.g. {@code 0013 JOINOK 0}
      * @param destinationAddress
-     * @param destinationPort
-     * @param nodePort
-     * @return the response DatagramPacket
+     * @param destinationPort    the port the request came from
+     * @return whether the sending is succeeded or not
      */
-    public static DatagramPacket sendAndReceiveMessage(@NotNull String message,
-                                                       @NotNull InetAddress destinationAddress, @NotNull int destinationPort,
-                                                       @NotNull Integer nodePort, @NotNull int timeOutInMilliSecond) {
-        byte[] buf = message.getBytes();
-        byte[] response = new byte[65536];
-        DatagramPacket requestPacket = new DatagramPacket(buf, buf.length, destinationAddress, destinationPort);
-        DatagramPacket responsePacket = new DatagramPacket(response, response.length);
-        try (DatagramSocket socket = new DatagramSocket(nodePort)) {
-            //send
-            Log log = new Log(
-                    "this",
-                    destinationAddress.getHostAddress() + ":" + destinationPort, "UDP", message
-            );
-            logRepository.save(log);
-            socket.send(requestPacket);
-            logger.info("Sent UDP message to {}:{} {}", requestPacket.getAddress().getHostAddress(), requestPacket.getPort(), message);
-
-            //receive
-            socket.setSoTimeout(timeOutInMilliSecond);
-            socket.receive(responsePacket);
-            String receivedData = new String(responsePacket.getData(), 0, responsePacket.getLength());
-            log = new Log(
-                    destinationAddress.getHostAddress() + ":" + destinationPort,
-                    "this", "UDP", receivedData
-            );
-            logRepository.save(log);
-            logger.info("Received UDP message from {}:{} {}", responsePacket.getAddress().getHostAddress(), responsePacket.getPort(), receivedData);
-        }catch (SocketTimeoutException e) {
-            logger.info("Timeout while waiting to receive UDP message");
-        } catch (SocketException e) {
-            logger.error("Error while sending or receiving packet", e);
-        } catch (IOException e) {
-            logger.error("unable to send the message", e);
+    public static Boolean sendReply(@NotNull String message, @NotNull InetAddress destinationAddress,
+                                    @NotNull int destinationPort) {
+        if (!udpSender.sendFromNodePort(message, destinationAddress, destinationPort)) {
+            return false;
         }
-        return responsePacket;
+        log(message, destinationAddress, destinationPort);
+        return true;
     }
 
     /**
-     * Helper method to receive a UDP message
-     * Note that call to this method will block the executing thread until the message is received
+     * Sends the response to another node's request from the node's listening port, encoded
+     * straight into the channel's buffer
+     * @see #sendReply(String, InetAddress, int)
      *
-     * @return the received DatagramPacket
+     * @param message            e.g. {@code buffer -> MessageEncoder.encodeValue(buffer, MessageType.WALKOK, 0)}
+     * @param destinationAddress
+     * @param destinationPort    the port the request came from
+     * @return whether the sending is succeeded or not
      */
-    public static DatagramPacket receiveMessage(@NotNull int nodePort) {
-        byte[] response = new byte[65536];
-
-        DatagramPacket packet = new DatagramPacket(response, response.length);
-
-        try (DatagramSocket socket = new DatagramSocket(nodePort)) {
-            socket.receive(packet);
-            String receivedData = new String(packet.getData(), 0, packet.getLength());
-            logger.info("Received UDP message from {}:{} {}", packet.getAddress().getHostAddress(), packet.getPort(), receivedData);
-        } catch (IOException e) {
-            logger.error("Unable to receive response from bootstrap server", e);
-            return null;
+    public static Boolean sendReply(@NotNull MessageEncoder.Writer message, @NotNull InetAddress destinationAddress,
+                                    @NotNull int destinationPort) {
+        String sent = udpSender.sendFromNodePort(message, destinationAddress, destinationPort);
+        if (sent == null) {
+            return false;
         }
-        return packet;
+        log(sent, destinationAddress, destinationPort);
+        return true;
     }
 
     /**
-     * Helper method to receive a UDP message
-     * Note that call to this method will block the executing thread until the message is received
+     * Sends a request from the node's listening port without blocking.
+     * <br>
+     * The response is received by the ever running {@link UdpServer} loop and matched to
+     * this request by {@link RequestCorrelator}, so no other socket is bound to the node's port.
      *
-     * @return the received DatagramPacket
+     * @param message
+     * @param destinationAddress
+     * @param destinationPort
+     * @param responseType         command of the expected response, e.g. {@code JOINOK}
+     * @param timeOutInMilliSecond
+     * @return a future completed with the raw response, or exceptionally with a
+     * {@link java.util.concurrent.TimeoutException} if no response arrives in time
      */
-    public static DatagramPacket receiveMessage(@NotNull int nodePort, @NotNull int timeOutInMilliSecond) {
-        byte[] response = new byte[65536];
-
-        DatagramPacket packet = new DatagramPacket(response, response.length);
-
-        try (DatagramSocket socket = new DatagramSocket(nodePort)) {
-            socket.setSoTimeout(timeOutInMilliSecond);
-            socket.receive(packet);
-            String receivedData = new String(packet.getData(), 0, packet.getLength());
-            logger.info("Received UDP message from {}:{} {}", packet.getAddress().getHostAddress(), packet.getPort(), receivedData);
-        } catch (SocketTimeoutException e) {
-            logger.info("Timeout while waiting to receive UDP message");
-            return null;
-        } catch (SocketException e) {
-            logger.error("Unable to create a UDP receiving socket", e);
-            return null;
-        } catch (IOException e) {
-            logger.error("Unable to receive UDP message", e);
-            return null;
+    public static CompletableFuture<String> sendRequest(@NotNull String message,
+                                                        @NotNull InetAddress destinationAddress, @NotNull int destinationPort,
+                                                        @NotNull String responseType, long timeOutInMilliSecond) {
+        CompletableFuture<String> response = correlator.expect(responseType, destinationAddress, destinationPort,
+                timeOutInMilliSecond);
+        if (!udpSender.sendFromNodePort(message, destinationAddress, destinationPort)) {
+            response.completeExceptionally(new IOException("unable to send the message"));
+            return response;
         }
-        return packet;
+        log(message, destinationAddress, destinationPort);
+        return response;
+    }
+
+    private static void log(String message, InetAddress destinationAddress, int destinationPort) {
+        Log log = new Log(
+                "this",
+                destinationAddress.getHostAddress() + ":" + destinationPort, "UDP", message
+        );
+        logRepository.save(log);
+        logger.info("Sent UDP message to {}:{} {}", destinationAddress.getHostAddress(), destinationPort, message);
     }
 }
@@ -1,37 +1,23 @@
 package com.dsvl.flood;
 
-import java.text.MessageFormat;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Random;
 
+/**
+ * Builds protocol messages as {@code String}s through {@link MessageEncoder}.
+ * <br>
+ * Messages sent over UDP are better encoded straight into the sending buffer with
+ * {@link UdpHelper#sendMessage(MessageEncoder.Writer, java.net.InetAddress, int)}.
+ */
 public class UdpMsgBuilder {
 
-    /**
-     * length SER IP port file_name hops
-     */
-    private static final String SEARCH_MSG_TEMPLATE = "{0} SER {1} {2,number,#} {3} {4}";
-
-    /**
-     * length REG IP_address port_no username
-     */
-    private static final String REGISTER_MSG_TEMPLATE = "{0} REG {1} {2,number,#} {3}";
-
-    /**
-     * length JOIN IP_address port_no
-     */
-    private static final String JOIN_MSG_TEMPLATE = "{0} JOIN {1} {2,number,#}";
-
-    /**
-     * length LEAVE IP_address port_no
-     * or
-     * length LEAVE IP_address port_no 2 IP_address port_no IP_address port_no
-     */
-    private static final String LEAVE_MSG_TEMPLATE = "{0} LEAVE {1} {2,number,#}{3}";
+    private static final int MAX_MESSAGE_SIZE = 9999;
 
-    /**
-     * length UNREG IP_address port_no username
-     */
-    private static final String UNREGISTER_MSG_TEMPLATE = "{0} UNREG {1} {2,number,#} {3}";
+    private static final ThreadLocal<ByteBuffer> BUFFER =
+            ThreadLocal.withInitial(() -> ByteBuffer.allocate(MAX_MESSAGE_SIZE));
 
     /**
      * Returns a {@code String} of the format {@code length SER IP port file_name hops}
@@ -43,17 +29,17 @@ public class UdpMsgBuilder {
      * @return the search message
      */
     public static String buildSearchMsg(String nodeAddress, Integer nodeUdpPort, String fileName, Integer hops) {
-//        length SER IP port file_name hops
-        /*
-         * 4 - length
-         * 5 - spaces
-         * 3 - SER
-         * __
-         * 12
-         * */
-        int length = 12 + nodeAddress.length() + nodeUdpPort.toString().length() + fileName.length() + hops.toString().length();
+        return build(buffer -> MessageEncoder.encodeSearch(buffer, nodeAddress, nodeUdpPort, fileName, hops));
+    }
 
-        return MessageFormat.format(SEARCH_MSG_TEMPLATE, String.format("%04d", length), nodeAddress, nodeUdpPort, fileName, hops);
+    /**
+     * Returns a {@code String} of the format {@code length WALK q=query_id}
+     *
+     * @param queryId
+     * @return the walk check message
+     */
+    public static String buildWalkMsg(long queryId) {
+        return build(buffer -> MessageEncoder.encodeWalk(buffer, queryId));
     }
 
     /**
@@ -64,16 +50,7 @@ public class UdpMsgBuilder {
      * @return the register message
      */
     public static String buildRegisterMsg(String nodeAddress, Integer nodeUdpPort, String username) {
-        /*
-         * 4 - length
-         * 4 - spaces
-         * 3 - REG
-         * __
-         * 11
-         * */
-        int length = 11 + nodeAddress.length() + nodeUdpPort.toString().length() + username.length();
-
-        return MessageFormat.format(REGISTER_MSG_TEMPLATE, String.format("%04d", length), nodeAddress, nodeUdpPort, username);
+        return build(buffer -> MessageEncoder.encodeRegister(buffer, nodeAddress, nodeUdpPort, username));
     }
 
     /**
@@ -83,16 +60,7 @@ public class UdpMsgBuilder {
      * @return the join message
      */
     public static String buildJoinMsg(String nodeAddress, Integer nodeUdpPort) {
-        /*
-         * 4 - length
-         * 3 - spaces
-         * 4 - JOIN
-         * __
-         * 11
-         * */
-        int length = 11 + nodeAddress.length() + nodeUdpPort.toString().length();
-
-        return MessageFormat.format(JOIN_MSG_TEMPLATE, String.format("%04d", length), nodeAddress, nodeUdpPort);
+        return build(buffer -> MessageEncoder.encodeJoin(buffer, nodeAddress, nodeUdpPort));
     }
 
     /**
@@ -102,23 +70,9 @@ public class UdpMsgBuilder {
      * @return the leave message
      */
     public static String buildLeaveMsg(String nodeAddress, Integer nodeUdpPort, List<Neighbour> myNeighbours) {
-        /*
-         * 4 - length
-         * 3 - spaces
-         * 5 - LEAVE
-         * __
-         * 12
-         * */
-        int length = 12 + nodeAddress.length() + nodeUdpPort.toString().length();
-        String messageLatterPart = "";
-        if(myNeighbours.isEmpty()){
-            //do nothing
-        }
-        else if (myNeighbours.size() == 1) {
-            messageLatterPart += " 1 " + myNeighbours.get(0).getIpAddress().getHostName() + " " + myNeighbours.get(0).getUdpPort();
-        } else if (myNeighbours.size() == 2) {
-            messageLatterPart += " 2 " + myNeighbours.get(0).getIpAddress().getHostName() + " " + myNeighbours.get(0).getUdpPort()
-                    + " " + myNeighbours.get(1).getIpAddress().getHostName() + " " + myNeighbours.get(1).getUdpPort();
+        List<Neighbour> informed = new ArrayList<>(2);
+        if (myNeighbours.size() <= 2) {
+            informed.addAll(myNeighbours);
         } else {
             Random r = new Random();
             int Low = 0;
@@ -128,11 +82,10 @@ public class UdpMsgBuilder {
             while (random_1 == random_2) {
                 random_2 = r.nextInt(High-Low) + Low;
             }
-            messageLatterPart += " 2 " + myNeighbours.get(random_1).getIpAddress().getHostName() + " " + myNeighbours.get(random_1).getUdpPort()
-                    + " " + myNeighbours.get(random_2).getIpAddress().getHostName() + " " + myNeighbours.get(random_2).getUdpPort();
+            informed.add(myNeighbours.get(random_1));
+            informed.add(myNeighbours.get(random_2));
         }
-        length += messageLatterPart.length();
-        return MessageFormat.format(LEAVE_MSG_TEMPLATE, String.format("%04d", length), nodeAddress, nodeUdpPort, messageLatterPart);
+        return build(buffer -> MessageEncoder.encodeLeave(buffer, nodeAddress, nodeUdpPort, informed));
     }
 
     /**
@@ -143,16 +96,13 @@ public class UdpMsgBuilder {
      * @return the register message
      */
     public static String buildUnregisterMsg(String nodeAddress, Integer nodeUdpPort, String username) {
-        /*
-         * 4 - length
-         * 4 - spaces
-         * 5 - UNREG
-         * __
-         * 13
-         * */
-        int length = 13 + nodeAddress.length() + nodeUdpPort.toString().length() + username.length();
-
-        return MessageFormat.format(UNREGISTER_MSG_TEMPLATE, String.format("%04d", length), nodeAddress, nodeUdpPort, username);
+        return build(buffer -> MessageEncoder.encodeUnregister(buffer, nodeAddress, nodeUdpPort, username));
     }
 
+    private static String build(MessageEncoder.Writer message) {
+        ByteBuffer buffer = BUFFER.get();
+        buffer.clear();
+        message.writeTo(buffer);
+        return new String(buffer.array(), 0, buffer.position(), StandardCharsets.UTF_8);
+    }
 }
@@ -0,0 +1,210 @@
+package com.dsvl.flood;
+
+import com.dsvl.flood.util.BufferPool;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+
+/**
+ * Receive engine for the node's listening UDP port.
+ * <br>
+ * A single selector thread drains the non-blocking {@link DatagramChannel} into
+ * pooled direct buffers and hands them to a bounded inbox. Handler threads
+ * {@link #take(long, TimeUnit) take} packets from the inbox and must
+ * {@link Packet#release() release} them once done.
+ * <br>
+ * The selector thread never decodes, logs to the database or responds, so a slow
+ * handler only fills the inbox; once the inbox or the pool is exhausted new
+ * datagrams are dropped and counted.
+ */
+public class UdpReceiver implements Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(UdpReceiver.class);
+
+    /**
+     * How often the selector wakes up to re-check the stop condition
+     */
+    private static final long SELECT_TIMEOUT_MS = 1000;
+
+    private final DatagramChannel channel;
+    private final Selector selector;
+    private final BufferPool bufferPool;
+    private final BlockingQueue<Packet> inbox;
+
+    /**
+     * Scratch buffer used to discard datagrams when the pool is exhausted
+     */
+    private final ByteBuffer overflow;
+
+    private final AtomicLong received = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+
+    private volatile boolean running = true;
+
+    public UdpReceiver(int port, BufferPool bufferPool, int inboxCapacity) throws IOException {
+        this.bufferPool = bufferPool;
+        this.inbox = new ArrayBlockingQueue<>(inboxCapacity);
+        this.overflow = ByteBuffer.allocateDirect(bufferPool.getBufferSize());
+        this.channel = DatagramChannel.open();
+        this.channel.bind(new InetSocketAddress(port));
+        this.channel.configureBlocking(false);
+        this.selector = Selector.open();
+        this.channel.register(selector, SelectionKey.OP_READ);
+    }
+
+    /**
+     * Runs the receive loop on the calling thread until {@link #stop()} is called
+     * or {@code stopCondition} becomes true.
+     */
+    public void receiveLoop(BooleanSupplier stopCondition) throws IOException {
+        while (running && !stopCondition.getAsBoolean()) {
+            if (selector.select(SELECT_TIMEOUT_MS) == 0) {
+                continue;
+            }
+            selector.selectedKeys().clear();
+            drain();
+        }
+        running = false;
+    }
+
+    private void drain() throws IOException {
+        while (true) {
+            ByteBuffer buffer = bufferPool.acquire();
+            if (buffer == null) { // every buffer is held by a handler
+                overflow.clear();
+                if (channel.receive(overflow) == null) {
+                    return;
+                }
+                dropped.incrementAndGet();
+                logger.warn("Receive buffers exhausted, dropped a datagram");
+                continue;
+            }
+            SocketAddress sender = channel.receive(buffer);
+            if (sender == null) {
+                bufferPool.release(buffer);
+                return;
+            }
+            buffer.flip();
+            received.incrementAndGet();
+            if (!inbox.offer(new Packet(buffer, (InetSocketAddress) sender))) {
+                bufferPool.release(buffer);
+                dropped.incrementAndGet();
+                logger.warn("Inbox full, dropped a datagram from {}", sender);
+            }
+        }
+    }
+
+    /**
+     * Runs a handler loop on the calling thread until the receiver stops. Empty packets, used to
+     * wake the receiver up, are skipped. Every packet is released once handled, and a handler
+     * that throws only loses its packet, not the thread.
+     */
+    public void handleLoop(Consumer<Packet> handler) {
+        while (running) {
+            Packet packet;
+            try {
+                packet = take(1, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                return;
+            }
+            if (packet == null) {
+                continue;
+            }
+            try {
+                if (packet.getData().hasRemaining()) {
+                    handler.accept(packet);
+                }
+            } catch (RuntimeException e) {
+                // a malformed packet must not take the handler thread down with it
+                logger.warn("Dropping a packet from {} that could not be handled", packet.getSender(), e);
+            } finally {
+                packet.release();
+            }
+        }
+    }
+
+    /**
+     * @return the next packet, or {@code null} if none arrived within the timeout
+     */
+    public Packet take(long timeout, TimeUnit unit) throws InterruptedException {
+        return inbox.poll(timeout, unit);
+    }
+
+    /**
+     * The channel bound to the node's port. Sending through it is thread safe and
+     * makes peers answer to the node's port.
+     */
+    public DatagramChannel getChannel() {
+        return channel;
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    public void stop() {
+        running = false;
+        selector.wakeup();
+    }
+
+    public long getReceivedCount() {
+        return received.get();
+    }
+
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    @Override
+    public void close() throws IOException {
+        stop();
+        selector.close();
+        channel.close();
+        Packet packet;
+        while ((packet = inbox.poll()) != null) {
+            packet.release();
+        }
+    }
+
+    /**
+     * A received datagram backed by a pooled buffer
+     */
+    public final class Packet {
+        private final ByteBuffer data;
+        private final InetSocketAddress sender;
+
+        private Packet(ByteBuffer data, InetSocketAddress sender) {
+            this.data = data;
+            this.sender = sender;
+        }
+
+        /**
+         * Handlers must not keep a reference to the buffer after {@link #release()}
+         */
+        public ByteBuffer getData() {
+            return data;
+        }
+
+        public InetSocketAddress getSender() {
+            return sender;
+        }
+
+        public void release() {
+            bufferPool.release(data);
+        }
+    }
+}
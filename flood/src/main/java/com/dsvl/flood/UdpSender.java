@@ -0,0 +1,174 @@
+package com.dsvl.flood;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Long-lived transport for outgoing UDP datagrams.
+ * <br>
+ * Keeps a small, fixed set of {@link DatagramChannel}s bound to ephemeral ports for the
+ * lifetime of the node. Each channel owns a reusable direct buffer, and senders are spread
+ * across the channels round robin, so sending a message never opens or closes a socket.
+ * <br>
+ * A message sent through one of these lanes comes from an ephemeral port, not from the node's
+ * listening port, and nothing reads what is sent back to that port. They are only for messages
+ * whose answer, if any, is addressed from the message's content (SER, SEROK, PNG, PNGOK).
+ * Requests that expect a response and the responses to other nodes' requests (JOINOK, LEAVEOK,
+ * WALKOK) must go through {@link #sendFromNodePort}: a node matches a response to its request by
+ * the exact address and port the request was sent to, see {@link RequestCorrelator}.
+ */
+@Component
+public class UdpSender implements Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(UdpSender.class);
+
+    private static final int MAX_DATAGRAM_SIZE = 65536;
+
+    private final Lane[] lanes;
+    private final AtomicInteger next = new AtomicInteger();
+
+    /**
+     * The channel bound to the node's listening port, used for requests whose
+     * responses must come back to the receive loop
+     */
+    private volatile Lane nodeLane;
+
+    @Autowired
+    public UdpSender(@Value("${udp.send.channels:2}") int channelCount) throws IOException {
+        lanes = new Lane[Math.max(1, channelCount)];
+        for (int i = 0; i < lanes.length; i++) {
+            DatagramChannel channel = DatagramChannel.open();
+            channel.bind(null);
+            lanes[i] = new Lane(channel);
+        }
+        logger.debug("Opened {} UDP sending channels", lanes.length);
+    }
+
+    /**
+     * Sends the message as a single datagram
+     *
+     * @return whether the sending is succeeded or not
+     */
+    public boolean send(String message, InetAddress destinationAddress, int destinationPort) {
+        return send(nextLane(), buffer -> MessageEncoder.put(buffer, message),
+                destinationAddress, destinationPort, false) != null;
+    }
+
+    /**
+     * Encodes the message straight into a channel's buffer and sends it as a single datagram
+     *
+     * @return the message as sent, e.g. for logging, or {@code null} if the sending failed
+     */
+    public String send(MessageEncoder.Writer message, InetAddress destinationAddress, int destinationPort) {
+        return send(nextLane(), message, destinationAddress, destinationPort, true);
+    }
+
+    /**
+     * Sends the message from the node's listening port, so that the peer answers to it, or takes
+     * it for the answer to a request it sent there
+     *
+     * @return whether the sending is succeeded or not
+     * @see #attachNodeChannel(DatagramChannel)
+     */
+    public boolean sendFromNodePort(String message, InetAddress destinationAddress, int destinationPort) {
+        return sendFromNodePort(buffer -> MessageEncoder.put(buffer, message), destinationAddress, destinationPort,
+                false) != null;
+    }
+
+    /**
+     * Encodes the message straight into the buffer of the node's listening channel and sends it
+     * from the node's listening port
+     *
+     * @return the message as sent, e.g. for logging, or {@code null} if the sending failed
+     * @see #sendFromNodePort(String, InetAddress, int)
+     */
+    public String sendFromNodePort(MessageEncoder.Writer message, InetAddress destinationAddress, int destinationPort) {
+        return sendFromNodePort(message, destinationAddress, destinationPort, true);
+    }
+
+    private String sendFromNodePort(MessageEncoder.Writer message, InetAddress destinationAddress, int destinationPort,
+                                    boolean copyText) {
+        Lane lane = nodeLane;
+        if (lane == null) {
+            logger.error("Node's UDP channel is not open yet, unable to send the message");
+            return null;
+        }
+        return send(lane, message, destinationAddress, destinationPort, copyText);
+    }
+
+    public void attachNodeChannel(DatagramChannel channel) {
+        nodeLane = new Lane(channel);
+    }
+
+    /**
+     * @param copyText whether to return the sent bytes as text, otherwise an empty {@code String} is returned
+     * @return {@code null} if the sending failed
+     */
+    private String send(Lane lane, MessageEncoder.Writer message, InetAddress destinationAddress, int destinationPort,
+                        boolean copyText) {
+        synchronized (lane) {
+            ByteBuffer buffer = lane.buffer;
+            buffer.clear();
+            try {
+                message.writeTo(buffer);
+            } catch (BufferOverflowException | IllegalArgumentException e) {
+                logger.error("Unable to encode the message to {}:{}", destinationAddress.getHostAddress(),
+                        destinationPort, e);
+                return null;
+            }
+            buffer.flip();
+            String text = copyText ? StandardCharsets.UTF_8.decode(buffer.duplicate()).toString() : "";
+            return lane.send(new InetSocketAddress(destinationAddress, destinationPort)) ? text : null;
+        }
+    }
+
+    private Lane nextLane() {
+        return lanes[(next.getAndIncrement() & Integer.MAX_VALUE) % lanes.length];
+    }
+
+    @PreDestroy
+    @Override
+    public void close() {
+        for (Lane lane : lanes) {
+            try {
+                lane.channel.close();
+            } catch (IOException e) {
+                logger.warn("Unable to close UDP sending channel", e);
+            }
+        }
+    }
+
+    private static final class Lane {
+        private final DatagramChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(MAX_DATAGRAM_SIZE);
+
+        private Lane(DatagramChannel channel) {
+            this.channel = channel;
+        }
+
+        private boolean send(InetSocketAddress destination) {
+            try {
+                int length = buffer.remaining();
+                // a non-blocking channel sends nothing if the socket buffer is full
+                return channel.send(buffer, destination) == length;
+            } catch (IOException e) {
+                logger.error("unable to send the message", e);
+                return false;
+            }
+        }
+    }
+}
@@ -1,46 +1,133 @@
 package com.dsvl.flood;
 
 import com.dsvl.flood.exceptions.ErroneousResponseException;
+import com.dsvl.flood.message.Join;
+import com.dsvl.flood.message.Leave;
+import com.dsvl.flood.message.Message;
+import com.dsvl.flood.message.MessagePool;
+import com.dsvl.flood.message.Ping;
+import com.dsvl.flood.message.PingOk;
+import com.dsvl.flood.message.Search;
+import com.dsvl.flood.message.SearchOk;
+import com.dsvl.flood.message.WalkCheck;
 import com.dsvl.flood.model.Log;
+import com.dsvl.flood.model.Result;
+import com.dsvl.flood.service.ContentService;
 import com.dsvl.flood.service.LogRepository;
+import com.dsvl.flood.util.BufferPool;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.CommandLineRunner;
 import org.springframework.stereotype.Component;
 
 import java.io.IOException;
 import java.net.*;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 import static com.dsvl.flood.Constants.Status.REGISTERED;
+import static com.dsvl.flood.MessageDispatcher.MessageClass.CONTROL;
+import static com.dsvl.flood.MessageDispatcher.MessageClass.PING;
+import static com.dsvl.flood.MessageDispatcher.MessageClass.SEARCH;
 
 /**
- * This {@code Component} starts with the application and attempts
- * to register with the bootstrap server.
+ * This {@code Component} starts with the application, starts listening to incoming
+ * UDP messages and then attempts to register with the bootstrap server.
  * <br>
  * If register attempt is failed for some reason
  * this will reattempt to register after waiting for five seconds.
  * <br>
- * Once registration is successful, it then starts listening to incoming
- * UDP messages forever.
- * This {@code CommandLineRunner} exists with the main application
+ * The node listens to incoming UDP messages until it leaves the network.
+ * Received datagrams are handed off by {@link UdpReceiver} to a small pool of
+ * handler threads, so the receiving thread never waits for a response to be sent.
+ * Responses to this node's own requests (REGOK, JOINOK, ...) arrive on the same port
+ * and are handed to {@link RequestCorrelator}.
  */
 @Component
 public class UdpServer implements CommandLineRunner {
 
     private static final Logger logger = LoggerFactory.getLogger(UdpServer.class);
 
+    private static final int MAX_DATAGRAM_SIZE = 65536;
+
     @Autowired
     private Node node;
 
     @Autowired
     private LogRepository logRepository;
 
+    @Autowired
+    private MessageDispatcher dispatcher;
+
+    @Autowired
+    private UdpSender udpSender;
+
+    @Autowired
+    private RequestCorrelator correlator;
+
+    @Autowired
+    private MessagePool messagePool;
+
+    @Autowired
+    private SeenQueryCache seenQueries;
+
+    @Autowired
+    private SearchSessions searchSessions;
+
+    @Autowired
+    private RoutingSummary routingSummary;
+
+    @Autowired
+    private ContentService contentService;
+
+    /**
+     * Number of pooled receive buffers, each large enough for the biggest UDP datagram
+     */
+    @Value("${udp.receive.buffers:64}")
+    private int receiveBufferCount;
+
+    /**
+     * Maximum number of received datagrams waiting for a handler thread
+     */
+    @Value("${udp.receive.queue-size:1024}")
+    private int receiveQueueSize;
+
+    @Value("${udp.receive.handler-threads:2}")
+    private int handlerThreads;
+
     @Override
     public void run(String... args) {
 
+        // Create an ever running UDP receiving channel, responses to register and join requests arrive on it too
+        UdpReceiver receiver;
+        try {
+            receiver = new UdpReceiver(node.getNodeUdpPort(),
+                    new BufferPool(receiveBufferCount, MAX_DATAGRAM_SIZE), receiveQueueSize);
+        } catch (IOException e) {
+            logger.error("Unable to open UDP channel for receiving", e);
+            return;
+        }
+        udpSender.attachNodeChannel(receiver.getChannel());
+
+        for (int i = 0; i < handlerThreads; i++) {
+            Thread handler = new Thread(() -> handlePackets(receiver), "udp-handler-" + i);
+            handler.setDaemon(true);
+            handler.start();
+        }
+
+        new Thread(() -> {
+            try (UdpReceiver r = receiver) {
+                r.receiveLoop(() -> node.isLeaving);
+                logger.debug("Stopping ever running UDP server port at {}", node.getNodeUdpPort());
+            } catch (IOException e) {
+                logger.error("Unable to receive UDP message", e);
+            }
+        }, "udp-receiver").start();
+        logger.debug("UDP server started for incoming messages at port {}", node.getNodeUdpPort());
+
         while (!node.isRegistered()) {
             logger.info("Attempting to register with the bootstrap server");
 
@@ -77,52 +164,50 @@ public class UdpServer implements CommandLineRunner {
             }
         }
 
-        // Create an ever running UDP receiving socket
-        try (DatagramSocket socket = new DatagramSocket(node.getNodeUdpPort())) {
-            logger.debug("UDP server started for incoming messages at port {}", node.getNodeUdpPort());
-            byte[] buffer;
+        new Thread(() -> { // ping is done within a seperete thread
+            node.sendPingMessage();
+        }).start();
+    }
 
-            new Thread(() -> { // ping is done within a seperete thread
-                node.sendPingMessage();
-            }).start();
+    /**
+     * Takes packets off the receiver's inbox until the receiver stops.
+     * Each thread decodes straight from the pooled buffer into its own {@link MessageFrame};
+     * the buffer is released once the parts of the message the handlers need have been copied out.
+     */
+    private void handlePackets(UdpReceiver receiver) {
+        MessageFrame frame = new MessageFrame();
+        receiver.handleLoop(packet -> {
+            InetSocketAddress sender = packet.getSender();
+            handle(MessageDecoder.decode(packet.getData(), frame), sender.getAddress(), sender.getPort());
+        });
+    }
 
-            while (true) {
-                if (node.isLeaving) {
-                    logger.debug("Stopping ever running UDP server port at {}", node.getNodeUdpPort());
-                    break;
-                }
-                buffer = new byte[65536];
-                DatagramPacket incomingPacket = new DatagramPacket(buffer, buffer.length);
-                socket.receive(incomingPacket);
-                if (incomingPacket.getData().length != 0) {
-                    String receivedData = new String(incomingPacket.getData(), 0, incomingPacket.getLength());
-                    Log log = new Log(
-                            incomingPacket.getAddress().getHostAddress() + ":" + incomingPacket.getPort(),
-                            "this",
-                            "UDP",
-                            receivedData
-                    );
-                    logRepository.save(log);
-                    logger.info("Received UDP message from {}:{} {}", incomingPacket.getAddress().getHostAddress(), incomingPacket.getPort(), receivedData);
-                    try {
-                        MessageObject msgObject = MessageDecoder.decode(incomingPacket.getData(), incomingPacket.getLength());
-                        msgObject.setSenderIP(incomingPacket.getAddress().getHostAddress());
-                        msgObject.setSenderPort(incomingPacket.getPort());
-                        respond(msgObject, incomingPacket.getAddress(), incomingPacket.getPort());
-                    } catch (ErroneousResponseException e) {
-                        logger.info("Erroneous response received: {}", e.getMessage());
-                    }
-                }
-            }
-        } catch (SocketException e) {
-            logger.error("Unable to open UDP socket for receiving", e);
-        } catch (IOException e) {
-            logger.error("Unable to receive UDP message", e);
+    private void handle(MessageFrame frame, InetAddress senderAddress, int senderPort) {
+        String receivedData = frame.toString();
+        Log log = new Log(
+                senderAddress.getHostAddress() + ":" + senderPort,
+                "this",
+                "UDP",
+                receivedData
+        );
+        logRepository.save(log);
+        logger.info("Received UDP message from {}:{} {}", senderAddress.getHostAddress(), senderPort, receivedData);
+        if (correlator.complete(frame.type().name(), senderAddress, senderPort, receivedData)) {
+            return; // response to a request sent by this node
+        }
+        try {
+            Message message = MessageDecoder.toMessage(frame, messagePool);
+            message.setSender(senderAddress, senderPort);
+            respond(message, senderAddress, senderPort);
+        } catch (ErroneousResponseException e) {
+            logger.info("Erroneous response received: {}", e.getMessage());
         }
-
     }
 
-    private void respond(MessageObject msgObject, InetAddress senderIP, int senderPort) {
+    /**
+     * Hands the message to its handler, which owns it until the message is released
+     */
+    private void respond(Message message, InetAddress senderIP, int senderPort) {
         /*
          * Messages That Will Not Be Handled Here
          *
@@ -130,169 +215,200 @@ public class UdpServer implements CommandLineRunner {
          * JOINOK - handled at JoinServiceImpl because we have nothing else to do until we join the network
          *
          * */
-        switch (msgObject.getMsgType()) {
+        switch (message.getType()) {
             // TODO: UNREG, UNROK
-            case "JOIN":
-                Neighbour newNeighbour = msgObject.getJoinRequester();
-                if (newNeighbour != null) {
-                    newNeighbour.settTL(5);
-                    List<Neighbour> neighbours = node.getNeighbours();
-                    for(Neighbour neighbour: neighbours){
-                        if(neighbour.getIpAddress() == newNeighbour.getIpAddress() && neighbour.getUdpPort() == newNeighbour.getUdpPort()){
-                            UdpHelper.sendMessage("0016 JOINOK 9999", senderIP, senderPort);
-                            return;
-                        }
-                    }
-                    node.getNeighbours().add(newNeighbour);
-                    logger.info("New node added as neighbor, IP address: {}, port: {}",
-                            newNeighbour.getIpAddress(), newNeighbour.getUdpPort());
-                    UdpHelper.sendMessage("0013 JOINOK 0", senderIP, senderPort);
+            case JOIN:
+                dispatch(CONTROL, message, () -> handleJoin((Join) message, senderIP, senderPort));
+                return;
+            case SER:
+                Search search = (Search) message;
+                boolean firstSeen = seenQueries.firstSeen(search.getQueryId());
+                if (!firstSeen && search.getForwarding() == Search.Forwarding.FLOOD) {
+                    logger.debug("Dropping query {} for {}, it has already reached this node",
+                            Long.toHexString(search.getQueryId()), search.getFileName());
+                    break;
+                }
+                logger.info("Search query has found, file name: {}, hops {}, IP address: {}, port: {}",
+                        search.getFileName(), search.getHops(), search.getOrigin().getHostAddress(), search.getOrigin().getPort());
+                if (firstSeen) {
+                    dispatch(SEARCH, message, () -> handleSearch(search));
                 } else {
-                    UdpHelper.sendMessage("0016 JOINOK 9999", senderIP, senderPort);
+                    // a walker that has been here before walks on, the results were already sent
+                    dispatch(SEARCH, message, () -> node.forward(search));
                 }
+                return;
+            case WALK:
+                long walkId = ((WalkCheck) message).getQueryId();
+                int walkState = node.walkShouldContinue(walkId) ? WalkCheck.CONTINUE : WalkCheck.STOP;
+                // from the port the WALK was sent to, the walker takes nothing from any other port for the answer
+                UdpHelper.sendReply(buffer -> MessageEncoder.encodeValue(buffer, MessageType.WALKOK, walkState),
+                        senderIP, senderPort);
                 break;
-            case "SER":
-                logger.info("Search query has found, file name: {}, hops {}, IP address: {}, port: {}",
-                        msgObject.getFile_name(), msgObject.getHops(), msgObject.getSearch_ip(), msgObject.getSearch_udp_Port());
-                new Thread(() -> { // search is done within a seperete thread
-                    try {
-
-                        List<File> search_results = node.search(msgObject);
-                        String file_name_string = "";
-                        String query = "SEROK" + " " + search_results.size() + " " + node.getNodeAddress() + " " + node.getTcpPort() + " " + msgObject.getHops() + " ";
-                        for (int i = 0; i < search_results.size(); i++) {
-                            String fn = search_results.get(i).getFileName();
-                            fn = fn.replaceAll(" ", "_");
-                            file_name_string += fn + " ";
-                        }
-                        query += file_name_string;
-                        String length = String.format("%04d", query.length() + 4);
-                        query = length + " " + query;
-//                    System.out.println(query);
-//                    System.out.println(senderIP);
-                        InetAddress inetAddress = InetAddress.getByName(msgObject.getSearch_ip());
-                        UdpHelper.sendMessage(query, inetAddress, msgObject.getSearch_udp_Port());
-                    } catch (Exception e) {
-
-                        String query = "SEROK" + " " + "9998 " + String.valueOf(node.getNodeAddress()) + " " + String.valueOf(node.getTcpPort()) + " " + String.valueOf(msgObject.getHops());
-                        String length = String.format("%04d", query.length() + 4);
-                        query = length + " " + query;
-
-                        InetAddress inetAddress = null;
-                        try {
-                            inetAddress = InetAddress.getByName(msgObject.getSearch_ip());
-                        } catch (UnknownHostException e1) {
-                            e1.printStackTrace();
-                        }
-                        UdpHelper.sendMessage(query, inetAddress, msgObject.getSearch_udp_Port());
-                    }
-                }).start();
+            case SEROK:
+                handleSearchOk((SearchOk) message);
+                break;
+            case PNG:
+                dispatch(PING, message, () -> handlePing((Ping) message));
+                return;
+            case PNGOK:
+                dispatch(PING, message, () -> handlePingOk((PingOk) message));
+                return;
+            case LEAVE:
+                dispatch(CONTROL, message, () -> handleLeave((Leave) message, senderIP, senderPort));
+                return;
+            case JOINOK: // a join that is still waiting releases a surplus peer itself, see Node#joinPeers
+            case REGOK:
+            case UNROK:
+            case LEAVEOK:
+            case WALKOK:
+                logger.debug("Ignoring {} that arrived after its request timed out", message.getType());
+                break;
+            case NONE:
+                //ignore
+                break;
+            default:
+                // never answered, an ERROR sent back for an ERROR would bounce between two nodes forever
+                logger.info("Dropping {} from {}:{}, it is not a request this node handles",
+                        message.getType(), senderIP.getHostAddress(), senderPort);
+                break;
+        }
+        message.release();
+    }
 
-            case "SEROK":
+    /**
+     * Releases the message once the handler is done with it. A message whose handler is
+     * dropped by a saturated executor is not released, it is garbage collected instead.
+     */
+    private void dispatch(MessageDispatcher.MessageClass messageClass, Message message, Runnable handler) {
+        dispatcher.dispatch(messageClass, () -> {
+            try {
+                handler.run();
+            } finally {
+                message.release();
+            }
+        });
+    }
 
+    private void handleSearchOk(SearchOk searchOk) {
+        if (searchOk.getNoOfFiles() == 9999) {
+            logger.info("Search response has recieved:  failure due to node unreachable");
+        } else if (searchOk.getNoOfFiles() == 9998) {
+            logger.info("Search response has recieved:  some other error");
+        } else {
+            logger.info("Search response has received  Number of results: {}, hops {}, IP address: {}, TCPport: {}",
+                    searchOk.getNoOfFiles(), searchOk.getHops(), searchOk.getAddress(), searchOk.getTcpPort());
+            List<String> fileNames = searchOk.getFileNames();
+            List<String> contentHashes = searchOk.getContentHashes();
+            for (int i = 0; i < fileNames.size(); i++) {
+                String fileName = fileNames.get(i);
+                String uri = "http://" + searchOk.getAddress() + ":" + searchOk.getTcpPort() + "/file/" + fileName;
+                searchSessions.addResult(searchOk.getQueryId(), new Result(fileName, uri, searchOk.getHops(),
+                        i < contentHashes.size() ? contentHashes.get(i) : null));
+            }
+        }
+    }
 
-                if (msgObject.getNo_of_results() == 9999) {
-                    logger.info("Search response has recieved:  failure due to node unreachable");
-                } else if (msgObject.getNo_of_results() == 9998) {
-                    logger.info("Search response has recieved:  some other error");
-                } else {
-                    logger.info("Search response has received  Number of results: {}, hops {}, IP address: {}, TCPport: {}",
-                            msgObject.getNo_of_results(), msgObject.getHops(), msgObject.getSearch_result_ip(), msgObject.getSearch_result_tcp_Port());
-                    // creating the tcp connection and file transfering
-                }
+    private void handleJoin(Join join, InetAddress senderIP, int senderPort) {
+        if (join.getEndpoint() != null && node.acceptJoin(join.getEndpoint())) {
+            logger.info("New node added as neighbor, IP address: {}, port: {}",
+                    join.getEndpoint().getHostAddress(), join.getEndpoint().getPort());
+            UdpHelper.sendReply("0013 JOINOK 0", senderIP, senderPort);
+        } else {
+            UdpHelper.sendReply("0016 JOINOK 9999", senderIP, senderPort);
+        }
+    }
 
-            case "PNG":
-                new Thread(() -> { // ping is done within a seperete thread
-                    logger.info("PNG message recieved: SenderIP: {}, Port: {}",
-                            msgObject.getPingIP(), msgObject.getPingPort());
-                    List<Neighbour> routingTable = node.getNeighbours();
-                    List<Neighbour> returnRoutingTable = new ArrayList<>();
+    private void handleSearch(Search search) {
+        InetAddress inetAddress = search.getOrigin().getAddress();
+        int originPort = search.getOrigin().getPort();
+        String nodeAddress = node.getNodeAddress();
+        int tcpPort = node.getTcpPort();
+        int hops = search.getHops() - 1; // the hops left after this node, as it always replied
+        long queryId = search.getQueryId();
+        try {
+            List<File> search_results = node.search(search);
+            List<String> fileNames = new ArrayList<>(search_results.size());
+            List<String> contentHashes = new ArrayList<>(search_results.size());
+            for (File file : search_results) {
+                fileNames.add(file.getFileName());
+                ContentDigest digest = contentService.knownDigest(file.getFileName());
+                contentHashes.add(digest == null ? null : digest.getShortHash());
+            }
+            UdpHelper.sendMessage(buffer -> MessageEncoder.encodeSearchOk(buffer, fileNames.size(),
+                    nodeAddress, tcpPort, hops, fileNames, contentHashes, queryId), inetAddress, originPort);
+        } catch (Exception e) {
+            UdpHelper.sendMessage(buffer -> MessageEncoder.encodeSearchOk(buffer, 9998,
+                    nodeAddress, tcpPort, hops, Collections.emptyList(), queryId), inetAddress, originPort);
+        }
+    }
 
-                for (Neighbour n: routingTable ) {
-                    if (!n.getIpAddress().getHostName().equals(msgObject.getSenderIP())) {
-                        returnRoutingTable.add(n); // add all except message querried node
-                    }
-                }
+    private void handlePing(Ping ping) {
+        Endpoint origin = ping.getOrigin();
+        logger.info("PNG message recieved: SenderIP: {}, Port: {}",
+                origin.getHostAddress(), origin.getPort());
+        List<Neighbour> routingTable = node.getNeighbours();
+        List<Neighbour> returnRoutingTable = new ArrayList<>();
+
+        for (Neighbour n: routingTable ) {
+            if (!n.getEndpoint().equals(origin)) {
+                returnRoutingTable.add(n); // add all except message querried node
+            } else {
+                routingSummary.update(origin, ping.getSummary());
+            }
+        }
+
+        String ip = node.getNodeAddress();
+        int port = node.getNodeUdpPort();
+        String summary = routingSummary.encodeFor(origin, routingTable);
+        UdpHelper.sendMessage(buffer -> MessageEncoder.encodePingOk(buffer, ip, port, returnRoutingTable, summary),
+                origin.getAddress(), origin.getPort());
+        logger.info("PNGOK message sent to: SenderIP: {}, Port: {}",
+                origin.getHostAddress(), origin.getPort());
+    }
 
-                String routingString="";
-                for (Neighbour x:returnRoutingTable ) { // creating the query
-                    routingString+=x.getIpAddress().getHostName()+":"+String.valueOf(x.getUdpPort())+"_";
+    private void handlePingOk(PingOk pingOk) {
+        logger.info("PNGOK message recieved from {}", pingOk.getOrigin());
+        for (Neighbour j:node.getNeighbours()) {
+            if(j.getEndpoint().equals(pingOk.getOrigin())){
+                j.settTL(j.gettTL()+1);
+                routingSummary.update(pingOk.getOrigin(), pingOk.getSummary());
+            }
+        }
+        List<Neighbour> newNeighbours=new ArrayList<>();
+        //
+        for (Neighbour i:pingOk.getRoutingList()) {
+            int count=0;
+            for (Neighbour j:node.getNeighbours()) {
+                if(!i.getEndpoint().equals(j.getEndpoint())){
+                    count+=1;
                 }
-                String command="PNGOK";
-                String noOfResults=String.valueOf(returnRoutingTable.size());
-                String ip=node.getNodeAddress();
-                String port= String.valueOf(node.getNodeUdpPort());
-
-                    String query = command + " " + noOfResults + " " + ip + " " + port + " " + routingString;
-                    String length = String.format("%04d", query.length() + 4);
-                    query = length + " " + query;
-                    InetAddress inetAddress = null;
-                    try {
-                        inetAddress = InetAddress.getByName(msgObject.getPingIP());
-                    } catch (UnknownHostException e) {
-                        e.printStackTrace();
-                    }
-                    UdpHelper.sendMessage(query, inetAddress, msgObject.getPingPort());
-                    logger.info("PNGOK message sent to: SenderIP: {}, Port: {}",
-                            msgObject.getPingIP(), msgObject.getPingPort());
-                }).start();
-
-            case "PNGOK":
-                new Thread(() -> { // pingok is processed within a separate thread
-                    logger.info("PNGOK message recieved from {}:{}",
-                            msgObject.getPingOkIP(), msgObject.getPingOkPort());
-                        for (Neighbour j:node.getNeighbours()) {
-                            if(j.getIpAddress().getHostName().equals(msgObject.getPingOkIP())){
-                                j.settTL(j.gettTL()+1);
-                            }
-                        }
-                    //}
-                    List<Neighbour> newNeighbours=new ArrayList<>();
-                    //
-                    for (Neighbour i:msgObject.getRoutingList()) {
-                        int count=0;
-                        for (Neighbour j:node.getNeighbours()) {
-                            if(!i.getIpAddress().getHostName().equals(j.getIpAddress().getHostName())){
-                                count+=1;
-                            }
-                        }
-                        if(count==node.getNeighbours().size()){
-                            newNeighbours.add(i);
-                            // todo potential neighbours list
-                        }
+            }
+            if(count==node.getNeighbours().size()){
+                newNeighbours.add(i);
+                // todo potential neighbours list
+            }
 
-                    }
-//                    newNeighbours; TODO subhashini this is the unique neighbours list you can call your function here and input this list as a paremeter
+        }
+//        newNeighbours; TODO subhashini this is the unique neighbours list you can call your function here and input this list as a paremeter
+    }
 
-                }).start();
-                break;
-            case "LEAVE":
-                Neighbour leavingNeighbour = msgObject.getLeavingNode();
-                if (leavingNeighbour != null) {
-                    for (Neighbour neighbour : node.getNeighbours()) {
-                        if (leavingNeighbour.getIpAddress().equals(neighbour.getIpAddress()) &&
-                                leavingNeighbour.getUdpPort() == neighbour.getUdpPort()) {
-                            node.getNeighbours().remove(neighbour);
-                            logger.info("Neighbour {}:{} gracefully left the network",
-                                    neighbour.getIpAddress().getHostName(), neighbour.getUdpPort());
-                            UdpHelper.sendMessage("0014 LEAVEOK 0", senderIP, senderPort);
-                            List<Neighbour> leaversNeighbours = msgObject.getLeaversNeighbors();
-                            if (leaversNeighbours != null && leaversNeighbours.isEmpty() && node.getNeighbours().size() < 4) {
-                                logger.info("Trying to add neighbours sent by the node just left");
-                                node.join(leaversNeighbours);
-                            }
-                            return;
-                        }
+    private void handleLeave(Leave leave, InetAddress senderIP, int senderPort) {
+        if (leave.getEndpoint() != null) {
+            for (Neighbour neighbour : node.getNeighbours()) {
+                if (leave.getEndpoint().equals(neighbour.getEndpoint())) {
+                    node.getNeighbours().remove(neighbour);
+                    routingSummary.remove(neighbour.getEndpoint());
+                    logger.info("Neighbour {} gracefully left the network", neighbour.getEndpoint());
+                    UdpHelper.sendReply("0014 LEAVEOK 0", senderIP, senderPort);
+                    List<Neighbour> leaversNeighbours = leave.getLeaversNeighbours();
+                    if (leaversNeighbours != null && leaversNeighbours.isEmpty() && node.getNeighbours().size() < 4) {
+                        logger.info("Trying to add neighbours sent by the node just left");
+                        node.join(leaversNeighbours);
                     }
+                    return;
                 }
-                UdpHelper.sendMessage("0016 LEAVEOK 9999", senderIP, senderPort);
-                break;
-            case "NONE":
-                //ignore
-                break;
-            default:
-                UdpHelper.sendMessage("0010 ERROR", senderIP, senderPort);
-                break;
+            }
         }
+        UdpHelper.sendReply("0016 LEAVEOK 9999", senderIP, senderPort);
     }
 }
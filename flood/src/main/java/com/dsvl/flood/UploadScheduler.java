@@ -0,0 +1,249 @@
+package com.dsvl.flood;
+
+import com.dsvl.flood.util.TokenBucket;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Upload slots and bandwidth limits of the files this node serves to other nodes.
+ * <br>
+ * At most {@code upload.slots} files are sent at once; further requests wait for a slot, at most
+ * {@code upload.max-queued} of them and each for at most {@code upload.queue-timeout-ms}. A freed
+ * slot goes to the waiting request of the peer with the fewest uploads in progress, the one that
+ * has waited longest among equals, so a node fetching many chunks at once cannot keep the others
+ * out.
+ * <br>
+ * Bytes sent take tokens from a bucket shared by all uploads, filled at {@code upload.rate-kbps},
+ * and from one per peer, filled at {@code upload.peer-rate-kbps}; an upload waits whenever either
+ * runs dry. Both hold up to {@code upload.burst-kb}. A rate of 0 leaves bandwidth unlimited. Keeping
+ * the uploads in check keeps threads and bandwidth for the UDP messages the network runs on.
+ * <br>
+ * With no slots and no rates set, the default, uploads are not limited at all and go straight to
+ * the container, keeping {@code sendfile}; any limit costs it, see {@code UploadFilter}.
+ */
+@Component
+public class UploadScheduler {
+
+    /**
+     * One file being sent, from the time it got a slot
+     */
+    public final class Upload {
+        private final String peer;
+        private final TokenBucket peerBucket;
+        private boolean released;
+
+        private Upload(String peer, TokenBucket peerBucket) {
+            this.peer = peer;
+            this.peerBucket = peerBucket;
+        }
+
+        /**
+         * Waits until the bytes may be sent
+         */
+        public void throttle(int bytes) throws InterruptedException {
+            long wait = Math.max(bucket.take(bytes), peerBucket.take(bytes));
+            if (wait > 0) {
+                throttledNanos.addAndGet(wait);
+                TimeUnit.NANOSECONDS.sleep(wait);
+            }
+            bytesSent.addAndGet(bytes);
+        }
+
+        public String getPeer() {
+            return peer;
+        }
+    }
+
+    private static final class Waiter {
+        final String peer;
+        Upload upload;
+
+        Waiter(String peer) {
+            this.peer = peer;
+        }
+    }
+
+    private final int slots;
+    private final int maxQueued;
+    private final long queueTimeoutNanos;
+    private final long peerBytesPerSecond;
+    private final long burstBytes;
+    private final TokenBucket bucket;
+
+    // guarded by this
+    private int active;
+    private final Map<String, Integer> activeByPeer = new HashMap<>();
+    /**
+     * Kept after the last upload of a peer until they have refilled, so that a peer cannot get a
+     * fresh burst by reconnecting
+     */
+    private final Map<String, TokenBucket> peerBuckets = new HashMap<>();
+    /**
+     * Requests waiting for a slot, in the order they came; there is never a free slot while any is waiting
+     */
+    private final List<Waiter> waiting = new ArrayList<>();
+
+    private final AtomicLong served = new AtomicLong();
+    private final AtomicLong queued = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong timedOut = new AtomicLong();
+    private final AtomicLong bytesSent = new AtomicLong();
+    private final AtomicLong throttledNanos = new AtomicLong();
+    private final AtomicLong queuedNanos = new AtomicLong();
+
+    public UploadScheduler(@Value("${upload.slots:0}") int slots,
+                           @Value("${upload.max-queued:32}") int maxQueued,
+                           @Value("${upload.queue-timeout-ms:5000}") long queueTimeoutMs,
+                           @Value("${upload.rate-kbps:0}") long rateKbps,
+                           @Value("${upload.peer-rate-kbps:0}") long peerRateKbps,
+                           @Value("${upload.burst-kb:256}") long burstKb) {
+        this.slots = slots;
+        this.maxQueued = maxQueued;
+        this.queueTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(queueTimeoutMs);
+        this.peerBytesPerSecond = peerRateKbps * 1024;
+        this.burstBytes = burstKb * 1024;
+        this.bucket = new TokenBucket(rateKbps * 1024, burstBytes);
+    }
+
+    /**
+     * @return whether uploads are limited at all; if not, they need not go through the scheduler
+     */
+    public boolean isEnabled() {
+        return slots > 0 || !bucket.isUnlimited() || peerBytesPerSecond > 0;
+    }
+
+    /**
+     * Waits for a slot
+     *
+     * @param peer the address of the node the file is sent to
+     * @return the upload, to be {@link #release released} once the file is sent; {@code null} if
+     * the queue is full or no slot was freed in time
+     */
+    public synchronized Upload acquire(String peer) throws InterruptedException {
+        if (waiting.isEmpty() && hasFreeSlot()) {
+            served.incrementAndGet();
+            return admit(peer);
+        }
+        if (waiting.size() >= maxQueued) {
+            rejected.incrementAndGet();
+            return null;
+        }
+        Waiter waiter = new Waiter(peer);
+        waiting.add(waiter);
+        queued.incrementAndGet();
+        long start = System.nanoTime();
+        long deadline = start + queueTimeoutNanos;
+        try {
+            while (waiter.upload == null) {
+                long left = deadline - System.nanoTime();
+                if (left <= 0) {
+                    timedOut.incrementAndGet();
+                    return null;
+                }
+                TimeUnit.NANOSECONDS.timedWait(this, left);
+            }
+            served.incrementAndGet();
+            return waiter.upload;
+        } catch (InterruptedException e) {
+            if (waiter.upload != null) {
+                release(waiter.upload);
+            }
+            throw e;
+        } finally {
+            waiting.remove(waiter);
+            queuedNanos.addAndGet(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Frees the slot of the upload for the next request waiting; releasing it again does nothing
+     */
+    public synchronized void release(Upload upload) {
+        if (upload.released) {
+            return;
+        }
+        upload.released = true;
+        active--;
+        int peerActive = activeByPeer.merge(upload.peer, -1, Integer::sum);
+        if (peerActive <= 0) {
+            activeByPeer.remove(upload.peer);
+        }
+        admitWaiting();
+    }
+
+    private boolean hasFreeSlot() {
+        return slots <= 0 || active < slots;
+    }
+
+    private Upload admit(String peer) {
+        active++;
+        activeByPeer.merge(peer, 1, Integer::sum);
+        TokenBucket peerBucket = peerBuckets.get(peer);
+        if (peerBucket == null) {
+            forgetRefilledBuckets();
+            peerBucket = new TokenBucket(peerBytesPerSecond, burstBytes);
+            peerBuckets.put(peer, peerBucket);
+        }
+        return new Upload(peer, peerBucket);
+    }
+
+    /**
+     * Drops the buckets of the peers without uploads that have refilled since their last one, so
+     * that only the peers seen within the time a bucket takes to refill are kept
+     */
+    private void forgetRefilledBuckets() {
+        long now = System.nanoTime();
+        peerBuckets.entrySet().removeIf(entry -> !activeByPeer.containsKey(entry.getKey()) && entry.getValue().isFull(now));
+    }
+
+    /**
+     * Gives the free slots to the waiting requests of the peers with the fewest uploads
+     */
+    private void admitWaiting() {
+        boolean admitted = false;
+        while (hasFreeSlot()) {
+            Waiter next = null;
+            int fewest = Integer.MAX_VALUE;
+            for (Waiter waiter : waiting) {
+                int peerActive = activeByPeer.getOrDefault(waiter.peer, 0);
+                if (peerActive < fewest) {
+                    next = waiter;
+                    fewest = peerActive;
+                }
+            }
+            if (next == null) {
+                break;
+            }
+            waiting.remove(next);
+            next.upload = admit(next.peer);
+            admitted = true;
+        }
+        if (admitted) {
+            notifyAll();
+        }
+    }
+
+    public synchronized Map<String, Long> getStats() {
+        Map<String, Long> stats = new LinkedHashMap<>();
+        stats.put("slots", (long) slots);
+        stats.put("active", (long) active);
+        stats.put("queued", (long) waiting.size());
+        stats.put("peers", (long) activeByPeer.size());
+        stats.put("served", served.get());
+        stats.put("waited", queued.get());
+        stats.put("rejected", rejected.get());
+        stats.put("timedOut", timedOut.get());
+        stats.put("queuedMillis", TimeUnit.NANOSECONDS.toMillis(queuedNanos.get()));
+        stats.put("bytesSent", bytesSent.get());
+        stats.put("throttledMillis", TimeUnit.NANOSECONDS.toMillis(throttledNanos.get()));
+        return stats;
+    }
+}
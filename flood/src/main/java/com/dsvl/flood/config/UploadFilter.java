@@ -0,0 +1,159 @@
+package com.dsvl.flood.config;
+
+import com.dsvl.flood.UploadScheduler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+
+/**
+ * Sends the files this node serves through the {@link UploadScheduler}: a request waits for an
+ * upload slot before it is handled, gets 503 if none is freed in time, and its response is written
+ * no faster than the rate limits allow.
+ * <br>
+ * Tomcat sends a file handed over with {@code sendfile} after the request has been handled, past
+ * any slot or rate limit, so the request is told that the container does not support it.
+ */
+public class UploadFilter implements Filter {
+
+    private static final Logger logger = LoggerFactory.getLogger(UploadFilter.class);
+
+    private static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+
+    /**
+     * Largest write that waits for its tokens at once, so that a large write is sent at an even pace
+     */
+    private static final int MAX_WRITE = 16 * 1024;
+
+    private final UploadScheduler scheduler;
+
+    public UploadFilter(UploadScheduler scheduler) {
+        this.scheduler = scheduler;
+    }
+
+    @Override
+    public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
+            throws IOException, ServletException {
+        if (!scheduler.isEnabled()) {
+            chain.doFilter(request, response);
+            return;
+        }
+        UploadScheduler.Upload upload;
+        try {
+            upload = scheduler.acquire(request.getRemoteAddr());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for an upload slot");
+        }
+        if (upload == null) {
+            logger.info("No upload slot for {}, sending 503", request.getRemoteAddr());
+            HttpServletResponse httpResponse = (HttpServletResponse) response;
+            httpResponse.setHeader("Retry-After", "1");
+            httpResponse.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE, "All upload slots are busy");
+            return;
+        }
+        try {
+            chain.doFilter(new WithoutSendfile((HttpServletRequest) request),
+                    new ShapedResponse((HttpServletResponse) response, upload));
+        } finally {
+            scheduler.release(upload);
+        }
+    }
+
+    private static final class WithoutSendfile extends HttpServletRequestWrapper {
+
+        WithoutSendfile(HttpServletRequest request) {
+            super(request);
+        }
+
+        @Override
+        public Object getAttribute(String name) {
+            return SENDFILE_SUPPORT.equals(name) ? null : super.getAttribute(name);
+        }
+    }
+
+    private static final class ShapedResponse extends HttpServletResponseWrapper {
+        private final UploadScheduler.Upload upload;
+        private ServletOutputStream shaped;
+
+        ShapedResponse(HttpServletResponse response, UploadScheduler.Upload upload) {
+            super(response);
+            this.upload = upload;
+        }
+
+        @Override
+        public ServletOutputStream getOutputStream() throws IOException {
+            if (shaped == null) {
+                shaped = new ShapedOutputStream(super.getOutputStream(), upload);
+            }
+            return shaped;
+        }
+    }
+
+    private static final class ShapedOutputStream extends ServletOutputStream {
+        private final ServletOutputStream out;
+        private final UploadScheduler.Upload upload;
+
+        ShapedOutputStream(ServletOutputStream out, UploadScheduler.Upload upload) {
+            this.out = out;
+            this.upload = upload;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            throttle(1);
+            out.write(b);
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            for (int written = 0; written < length; ) {
+                int chunk = Math.min(MAX_WRITE, length - written);
+                throttle(chunk);
+                out.write(bytes, offset + written, chunk);
+                written += chunk;
+            }
+        }
+
+        private void throttle(int bytes) throws IOException {
+            try {
+                upload.throttle(bytes);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while sending a file");
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+        }
+
+        @Override
+        public boolean isReady() {
+            return out.isReady();
+        }
+
+        @Override
+        public void setWriteListener(WriteListener listener) {
+            out.setWriteListener(listener);
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package com.dsvl.flood.config;
 
+import com.dsvl.flood.UploadScheduler;
 import org.springframework.boot.web.server.ErrorPage;
 import org.springframework.boot.web.server.WebServerFactoryCustomizer;
 import org.springframework.boot.web.servlet.FilterRegistrationBean;
@@ -51,4 +52,12 @@ public class WebConfig implements WebMvcConfigurer {
         bean.setOrder(0);
         return bean;
     }
+
+    @Bean
+    public FilterRegistrationBean uploadFilterRegistrationBean(UploadScheduler uploadScheduler) {
+        FilterRegistrationBean bean = new FilterRegistrationBean(new UploadFilter(uploadScheduler));
+        bean.addUrlPatterns("/file/*");
+        bean.setOrder(1);
+        return bean;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,90 @@
+package com.dsvl.flood.controller;
+
+import com.dsvl.flood.Download;
+import com.dsvl.flood.Node;
+import com.dsvl.flood.SearchSession;
+import com.dsvl.flood.SearchSessions;
+import com.dsvl.flood.model.Result;
+import com.dsvl.flood.service.DownloadService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+@RestController
+public class DownloadController {
+
+    private Node node;
+    private SearchSessions searchSessions;
+    private DownloadService downloadService;
+
+    /**
+     * Downloads the file from every node that listed it in the results of the search
+     *
+     * @param queryId  the id returned by {@code POST /search}
+     * @param fileName a file name of the results
+     * @return the progress of the download, also at {@code /downloads/{id}}; 404 if no result of the
+     * search has the file, 409 if this node already has it
+     */
+    @PostMapping("/downloads/{queryId}")
+    public ResponseEntity<?> download(@PathVariable String queryId, @RequestBody String fileName) {
+        SearchSession session = searchSessions.get(queryId);
+        if (session == null) {
+            return ResponseEntity.notFound().build();
+        }
+        if (node.catalogName(fileName) != null) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body("This node already has " + fileName);
+        }
+        List<String> urls = new ArrayList<>();
+        for (Result result : session.getResults()) {
+            if (result.getFileName().equals(fileName)) {
+                urls.add(result.getUrl());
+            }
+        }
+        if (urls.isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok(downloadService.download(fileName, urls).getProgress());
+    }
+
+    @GetMapping("/downloads")
+    public List<Map<String, Object>> downloads() {
+        List<Map<String, Object>> downloads = new ArrayList<>();
+        for (Download download : downloadService.getDownloads()) {
+            downloads.add(download.getProgress());
+        }
+        return downloads;
+    }
+
+    @GetMapping("/downloads/{id}")
+    public ResponseEntity<Map<String, Object>> download(@PathVariable long id) {
+        Download download = downloadService.get(id);
+        if (download == null) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok(download.getProgress());
+    }
+
+    @Autowired
+    public void setNode(Node node) {
+        this.node = node;
+    }
+
+    @Autowired
+    public void setSearchSessions(SearchSessions searchSessions) {
+        this.searchSessions = searchSessions;
+    }
+
+    @Autowired
+    public void setDownloadService(DownloadService downloadService) {
+        this.downloadService = downloadService;
+    }
+}
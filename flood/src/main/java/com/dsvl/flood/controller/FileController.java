@@ -1,31 +1,57 @@
 package com.dsvl.flood.controller;
 
+import com.dsvl.flood.ContentDigest;
 import com.dsvl.flood.File;
 import com.dsvl.flood.Node;
 import com.dsvl.flood.model.Log;
+import com.dsvl.flood.service.ContentService;
 import com.dsvl.flood.service.LogRepository;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.InputStreamResource;
+import org.springframework.core.io.Resource;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 
 import javax.servlet.http.HttpServletRequest;
-import java.io.FileWriter;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.List;
 
 @RestController
 @Slf4j
 public class FileController {
 
+    /**
+     * Request attributes of Tomcat's sendfile support, see its {@code DefaultServlet}
+     */
+    private static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
+    /**
+     * Smaller files are cheaper to copy than to hand over, as Tomcat's {@code DefaultServlet} does
+     */
+    private static final long SENDFILE_MIN_BYTES = 48 * 1024;
+
+    /**
+     * Requests for more ranges than this get the whole file, many small overlapping ranges cost
+     * far more to send than the file itself
+     */
+    private static final int MAX_RANGES = 16;
+
     private Node node;
     private LogRepository logRepository;
+    private ContentService contentService;
 
     @GetMapping("/files")
     public List<File> getFiles() {
@@ -42,11 +68,11 @@ public class FileController {
         );
         logRepository.save(log);
 
-        File file;
+        List<File> files = new ArrayList<>();
         for (String name : names.split(",")) {
-            file = new File(name);
-            node.addFile(file);
+            files.add(new File(name));
         }
+        node.addFiles(files);
         System.out.println(names);
         return ResponseEntity.ok().build();
     }
@@ -71,29 +97,134 @@ public class FileController {
         return ResponseEntity.ok().build();
     }
 
+    /**
+     * Sends the file from the content root without reading it into memory. On a container that
+     * supports it the file is handed over to be sent with {@code sendfile}, straight from the page
+     * cache to the socket, otherwise it is streamed through a small buffer.
+     * <br>
+     * Downloads can be resumed or fetched in pieces: the ETag is the SHA-256 of the content and
+     * a {@code Range} request is answered with 206 and only the ranges asked for, in a
+     * {@code multipart/byteranges} body if there are several. Spring MVC splits a {@link Resource}
+     * body into the ranges of the request by itself; ranges outside the file get 416.
+     * With an {@code If-Range} that no longer matches the file the whole file is sent instead.
+     * The root of the file's chunk tree is sent in {@link ContentDigest#ROOT_HEADER}.
+     * <br>
+     * The request never waits for the file to be hashed: until the digest is known, which it is
+     * soon after the first request for a file that changed, the file is sent without the ETag and
+     * the root but with a {@code Retry-After} of a second, and an {@code If-Range} can only match
+     * its modification time. Downloads only use sources that send a strong ETag, so they ask such
+     * a source again after the {@code Retry-After}.
+     */
     @GetMapping("/file/{fileName}")
-    public ResponseEntity<ByteArrayResource> downloadFile(@PathVariable(value = "fileName") String fileName, HttpServletRequest httpServletRequest) throws IOException {
+    public ResponseEntity<Resource> downloadFile(@PathVariable(value = "fileName") String fileName, HttpServletRequest httpServletRequest,
+                                                 WebRequest webRequest) throws IOException {
         Log dbLog = new Log(
                 httpServletRequest.getRemoteAddr() + ":" + httpServletRequest.getRemotePort(),
                 "this", "TCP", "get file " + fileName
         );
         logRepository.save(dbLog);
 
-        String toWrite = "This is a temporary file created on the fly: " + fileName;
-        java.io.File tmpFile = java.io.File.createTempFile(fileName, ".txt");
-        FileWriter writer = new FileWriter(tmpFile);
-        writer.write(toWrite);
-        writer.close();
+        Path path = contentService.find(fileName);
+        if (path == null) {
+            return ResponseEntity.notFound().build();
+        }
+        long length = Files.size(path);
+        long lastModified = Files.getLastModifiedTime(path).toMillis();
+        // never waits for the file to be hashed, until it is the file is sent without an ETag
+        ContentDigest digest = contentService.knownDigest(path.getFileName().toString());
+        String eTag = digest == null ? null : '"' + digest.getHash() + '"';
+        if (eTag == null ? webRequest.checkNotModified(lastModified) : webRequest.checkNotModified(eTag, lastModified)) {
+            return null; // 304 or 412, the validators are already set on the response
+        }
+
+        String range = httpServletRequest.getHeader(HttpHeaders.RANGE);
+        if (range != null && ifRangeMatches(httpServletRequest, eTag, lastModified) && rangeCount(range) <= MAX_RANGES) {
+            ResponseEntity.BodyBuilder partial = ResponseEntity.ok();
+            if (digest != null) {
+                partial.header(ContentDigest.ROOT_HEADER, digest.getRoot());
+            } else {
+                partial.header(HttpHeaders.RETRY_AFTER, "1");
+            }
+            return partial.contentType(MediaType.APPLICATION_OCTET_STREAM)
+                    .body(new FileSystemResource(path.toFile()));
+        }
 
-        Path path = Paths.get(tmpFile.getAbsolutePath());
-        ByteArrayResource resource = new ByteArrayResource(Files.readAllBytes(path));
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                .header(HttpHeaders.ACCEPT_RANGES, "bytes")
+                .contentLength(length)
+                .contentType(MediaType.APPLICATION_OCTET_STREAM);
+        if (digest != null) {
+            response.header(ContentDigest.ROOT_HEADER, digest.getRoot());
+        } else {
+            response.header(HttpHeaders.RETRY_AFTER, "1"); // being hashed, see knownDigest
+        }
+        if (length >= SENDFILE_MIN_BYTES && Boolean.TRUE.equals(httpServletRequest.getAttribute(SENDFILE_SUPPORT))) {
+            httpServletRequest.setAttribute(SENDFILE_FILENAME, path.toString());
+            httpServletRequest.setAttribute(SENDFILE_START, 0L);
+            httpServletRequest.setAttribute(SENDFILE_END, length);
+            return response.build();
+        }
+        Resource body = range == null ? new FileSystemResource(path.toFile())
+                // Spring MVC does not split an InputStreamResource, which is what an ignored Range needs
+                : new InputStreamResource(Files.newInputStream(path));
+        return response.body(body);
+    }
 
-        HttpHeaders headers = new HttpHeaders();
+    /**
+     * Sends the SHA-256 of every {@link ContentDigest#CHUNK_SIZE} chunk of the file in hex, one per
+     * line, for a download to check the chunks as they arrive. The ETag is the one of the file, so
+     * that the hashes can be told to be those of the version being downloaded. Until the file has
+     * been hashed, which is never waited for, the answer is 503.
+     */
+    @GetMapping(path = "/file/{fileName}/chunks", produces = MediaType.TEXT_PLAIN_VALUE)
+    public ResponseEntity<String> chunkHashes(@PathVariable(value = "fileName") String fileName) throws IOException {
+        Path path = contentService.find(fileName);
+        if (path == null) {
+            return ResponseEntity.notFound().build();
+        }
+        ContentDigest digest = contentService.knownDigest(path.getFileName().toString());
+        if (digest == null) {
+            // being hashed in the background
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).header(HttpHeaders.RETRY_AFTER, "1").build();
+        }
+        StringBuilder hashes = new StringBuilder();
+        for (String hash : digest.getChunkHashes()) {
+            hashes.append(hash).append('\n');
+        }
         return ResponseEntity.ok()
-                .headers(headers)
-                .contentLength(tmpFile.length())
-                .contentType(MediaType.parseMediaType("application/octet-stream"))
-                .body(resource);
+                .eTag('"' + digest.getHash() + '"')
+                .header(ContentDigest.ROOT_HEADER, digest.getRoot())
+                .body(hashes.toString());
+    }
+
+    /**
+     * @param eTag the ETag of the file, {@code null} if it is not known yet
+     * @return whether the file is still the one an {@code If-Range} validator names; weak ETags never match
+     */
+    static boolean ifRangeMatches(HttpServletRequest request, String eTag, long lastModified) {
+        String ifRange = request.getHeader(HttpHeaders.IF_RANGE);
+        if (ifRange == null) {
+            return true;
+        }
+        if (ifRange.startsWith("\"") || ifRange.startsWith("W/")) {
+            return eTag != null && ifRange.equals(eTag);
+        }
+        try {
+            return request.getDateHeader(HttpHeaders.IF_RANGE) / 1000 == lastModified / 1000;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    /**
+     * @return the number of ranges in a {@code Range} header, or {@link Integer#MAX_VALUE} if it is not valid
+     */
+    static int rangeCount(String range) {
+        try {
+            return HttpRange.parseRanges(range).size();
+        } catch (IllegalArgumentException e) {
+            return Integer.MAX_VALUE;
+        }
     }
 
     @Autowired
@@ -105,4 +236,9 @@ public class FileController {
     public void setLogRepository(LogRepository logRepository) {
         this.logRepository = logRepository;
     }
+
+    @Autowired
+    public void setContentService(ContentService contentService) {
+        this.contentService = contentService;
+    }
 }
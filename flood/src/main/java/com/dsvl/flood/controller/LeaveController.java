@@ -6,14 +6,18 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RestController;
 
+import java.util.Map;
+
 @RestController
 public class LeaveController {
     private Node node;
 
+    /**
+     * @return how each neighbour and the bootstrap server responded, keyed by {@code ip:port}
+     */
     @PostMapping("/leave")
-    public ResponseEntity<?> leave() {
-        node.leaveNetwork();
-        return ResponseEntity.ok().build();
+    public ResponseEntity<Map<String, String>> leave() {
+        return ResponseEntity.ok(node.leaveNetwork());
     }
 
     @Autowired
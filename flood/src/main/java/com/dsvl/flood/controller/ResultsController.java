@@ -1,18 +1,237 @@
 package com.dsvl.flood.controller;
 
-import com.dsvl.flood.Node;
+import com.dsvl.flood.SearchSession;
+import com.dsvl.flood.SearchSessions;
+import com.dsvl.flood.model.FileCopies;
 import com.dsvl.flood.model.Result;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 
 @RestController
 public class ResultsController {
 
+    private static final Logger logger = LoggerFactory.getLogger(ResultsController.class);
+
+    /**
+     * How long after a search was started its results are streamed
+     */
+    @Value("${search.stream.timeout-ms:10000}")
+    private long streamTimeoutMs;
+
+    /**
+     * Threads writing the streamed results to the clients, so that a slow client never holds up
+     * the UDP handler thread that received the result; a stalled client holds up one of them at most
+     */
+    @Value("${search.stream.threads:4}")
+    private int streamThreads;
+
+    /**
+     * Results waiting to be written to one client; a client that falls this far behind is cut off
+     */
+    @Value("${search.stream.max-queued:256}")
+    private int streamMaxQueued;
+
+    private ExecutorService streamWriters;
+
+    private SearchSessions searchSessions;
+
+    /**
+     * @return the results of the latest search of this node
+     */
     @GetMapping("/results")
     public List<Result> results() {
-        return Node.latestSearchResults;
+        SearchSession latest = searchSessions.latest();
+        return latest == null ? new ArrayList<>() : latest.getResults();
+    }
+
+    /**
+     * @param queryId the id returned by {@code POST /search}
+     * @return the results of that search, or 404 if there is no such search or it has expired
+     */
+    @GetMapping("/results/{queryId}")
+    public ResponseEntity<List<Result>> results(@PathVariable String queryId) {
+        SearchSession session = searchSessions.get(queryId);
+        if (session == null) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok(session.getResults());
+    }
+
+    /**
+     * @param queryId the id returned by {@code POST /search}
+     * @return the results of that search with the copies of each file on different nodes collapsed
+     * into one entry, or 404 if there is no such search or it has expired
+     */
+    @GetMapping("/results/{queryId}/files")
+    public ResponseEntity<List<FileCopies>> files(@PathVariable String queryId) {
+        SearchSession session = searchSessions.get(queryId);
+        if (session == null) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok(session.getFiles());
+    }
+
+    /**
+     * Streams the results of the search as Server-Sent Events: the results found so far at once,
+     * then every result as soon as its SEROK is received. Each result is a {@code result} event
+     * with the result as JSON. The stream ends {@code search.stream.timeout-ms} after the search
+     * was started.
+     *
+     * @param queryId the id returned by {@code POST /search}
+     */
+    @GetMapping(path = "/results/{queryId}/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> stream(@PathVariable String queryId) {
+        SearchSession session = searchSessions.get(queryId);
+        if (session == null) {
+            return ResponseEntity.notFound().build();
+        }
+
+        long remainingMs = streamTimeoutMs - session.getAgeMillis();
+        SseEmitter emitter = new SseEmitter(Math.max(1, remainingMs));
+        ResultStream stream = new ResultStream(emitter, streamMaxQueued, streamWriters);
+        Consumer<Result> listener = stream::offer;
+        session.addListener(listener);
+        emitter.onCompletion(() -> session.removeListener(listener));
+        emitter.onTimeout(emitter::complete);
+
+        // registered first, so that no result falls between the ones found so far and the listener
+        for (Result result : session.getResults()) {
+            stream.offer(result);
+        }
+        if (remainingMs <= 0) {
+            stream.finish();
+        }
+        return ResponseEntity.ok(emitter);
     }
 
+    /**
+     * The results waiting to be written to one client. At most one writer thread writes them at a
+     * time, in the order they were offered.
+     */
+    private static final class ResultStream implements Runnable {
+        private final SseEmitter emitter;
+        private final Queue<Result> queue;
+        private final Executor writers;
+        private final AtomicBoolean writing = new AtomicBoolean();
+        private final Set<String> sent = new HashSet<>(); // only touched by the thread writing
+        private volatile boolean finishing;
+        private volatile boolean closed;
+
+        ResultStream(SseEmitter emitter, int maxQueued, Executor writers) {
+            this.emitter = emitter;
+            this.queue = new ArrayBlockingQueue<>(Math.max(1, maxQueued));
+            this.writers = writers;
+        }
+
+        void offer(Result result) {
+            if (closed) {
+                return;
+            }
+            if (!queue.offer(result)) {
+                logger.info("Ending a result stream, the client is {} results behind", queue.size());
+                close(null);
+                return;
+            }
+            schedule();
+        }
+
+        /**
+         * Ends the stream once the results offered so far are written
+         */
+        void finish() {
+            finishing = true;
+            schedule();
+        }
+
+        private void schedule() {
+            if (writing.compareAndSet(false, true)) {
+                try {
+                    writers.execute(this);
+                } catch (RejectedExecutionException e) {
+                    writing.set(false); // shutting down
+                }
+            }
+        }
+
+        @Override
+        public void run() {
+            do {
+                Result result;
+                while (!closed && (result = queue.poll()) != null) {
+                    send(result);
+                }
+                if (finishing && !closed && queue.isEmpty()) {
+                    close(null);
+                }
+                writing.set(false);
+            } while (!closed && !queue.isEmpty() && writing.compareAndSet(false, true));
+        }
+
+        private void send(Result result) {
+            if (!sent.add(result.getUrl())) {
+                return;
+            }
+            try {
+                emitter.send(SseEmitter.event().name("result").data(result, MediaType.APPLICATION_JSON));
+            } catch (IOException | IllegalStateException e) {
+                logger.debug("Result stream closed: {}", e.getMessage());
+                close(e);
+            }
+        }
+
+        private void close(Throwable error) {
+            closed = true;
+            queue.clear();
+            if (error == null) {
+                emitter.complete();
+            } else {
+                emitter.completeWithError(error);
+            }
+        }
+    }
+
+    @PostConstruct
+    public void start() {
+        AtomicInteger count = new AtomicInteger();
+        streamWriters = Executors.newFixedThreadPool(Math.max(1, streamThreads), runnable -> {
+            Thread thread = new Thread(runnable, "result-stream-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void stop() {
+        streamWriters.shutdownNow();
+    }
+
+    @Autowired
+    public void setSearchSessions(SearchSessions searchSessions) {
+        this.searchSessions = searchSessions;
+    }
 }
@@ -1,33 +1,69 @@
 package com.dsvl.flood.controller;
 
-import com.dsvl.flood.MessageObject;
 import com.dsvl.flood.Node;
+import com.dsvl.flood.SearchSession;
+import com.dsvl.flood.service.RingSearchService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestParam;
+
+import java.util.Collections;
 
 @Controller
 public class SearchController {
 
+    private static final String FLOOD = "flood";
+    private static final String RING = "ring";
+    private static final String WALK = "walk";
+
     private Node node;
+    private RingSearchService ringSearchService;
+
+    @Value("${search.hops:5}")
+    private int hops;
+
+    @Value("${search.walk.hops:32}")
+    private int walkHops;
 
+    /**
+     * Default search mode, {@code flood}, {@code ring} or {@code walk}
+     */
+    @Value("${search.mode:flood}")
+    private String defaultMode;
+
+    /**
+     * @param mode {@code flood} sends the query to the whole neighbourhood at once,
+     *             {@code ring} widens the search one hop at a time until enough results have arrived,
+     *             {@code walk} sends a few random walkers instead
+     * @return the id of the search, its results are at {@code /results/{queryId}}
+     */
     @PostMapping("/search")
-    public ResponseEntity search(@RequestBody String fileName) {
-        Node.latestSearchResults.clear();
-
-        MessageObject messageObject = new MessageObject();
-        messageObject.setFile_name(fileName);
-        messageObject.setSearch_ip(node.getNodeAddress());
-        messageObject.setSearch_udp_Port(node.getNodeUdpPort());
-        messageObject.setHops(5);
-        node.search(messageObject);
-        return ResponseEntity.ok().build();
+    public ResponseEntity search(@RequestBody String fileName, @RequestParam(required = false) String mode) {
+        String searchMode = mode == null ? defaultMode : mode;
+        SearchSession session;
+        if (RING.equals(searchMode)) {
+            session = ringSearchService.search(fileName, hops);
+        } else if (WALK.equals(searchMode)) {
+            session = node.startWalk(fileName, walkHops);
+        } else if (FLOOD.equals(searchMode)) {
+            session = node.startSearch(fileName, hops);
+        } else {
+            return ResponseEntity.badRequest().body("Unknown search mode: " + searchMode);
+        }
+        return ResponseEntity.ok(Collections.singletonMap("queryId", session.getKey()));
     }
 
     @Autowired
     public void setNode(Node node) {
         this.node = node;
     }
+
+    @Autowired
+    public void setRingSearchService(RingSearchService ringSearchService) {
+        this.ringSearchService = ringSearchService;
+    }
 }
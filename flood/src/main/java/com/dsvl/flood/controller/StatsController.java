@@ -0,0 +1,80 @@
+package com.dsvl.flood.controller;
+
+import com.dsvl.flood.EndpointRegistry;
+import com.dsvl.flood.MessageDispatcher;
+import com.dsvl.flood.Node;
+import com.dsvl.flood.RoutingSummary;
+import com.dsvl.flood.SearchSessions;
+import com.dsvl.flood.SeenQueryCache;
+import com.dsvl.flood.UploadScheduler;
+import com.dsvl.flood.message.MessagePool;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Runtime counters of the node, useful while load testing the network
+ */
+@RestController
+public class StatsController {
+
+    private MessageDispatcher dispatcher;
+    private MessagePool messagePool;
+    private SeenQueryCache seenQueries;
+    private Node node;
+    private SearchSessions searchSessions;
+    private RoutingSummary routingSummary;
+    private UploadScheduler uploadScheduler;
+
+    @GetMapping("/stats")
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("dispatcher", dispatcher.getStats());
+        stats.put("messages", messagePool.getStats());
+        stats.put("endpoints", EndpointRegistry.size());
+        stats.put("seenQueries", seenQueries.getStats());
+        stats.put("searchCache", node.getSearchCacheStats());
+        stats.put("searchSessions", searchSessions.getStats());
+        stats.put("routing", routingSummary.getStats());
+        stats.put("uploads", uploadScheduler.getStats());
+        return stats;
+    }
+
+    @Autowired
+    public void setDispatcher(MessageDispatcher dispatcher) {
+        this.dispatcher = dispatcher;
+    }
+
+    @Autowired
+    public void setMessagePool(MessagePool messagePool) {
+        this.messagePool = messagePool;
+    }
+
+    @Autowired
+    public void setSeenQueries(SeenQueryCache seenQueries) {
+        this.seenQueries = seenQueries;
+    }
+
+    @Autowired
+    public void setNode(Node node) {
+        this.node = node;
+    }
+
+    @Autowired
+    public void setSearchSessions(SearchSessions searchSessions) {
+        this.searchSessions = searchSessions;
+    }
+
+    @Autowired
+    public void setRoutingSummary(RoutingSummary routingSummary) {
+        this.routingSummary = routingSummary;
+    }
+
+    @Autowired
+    public void setUploadScheduler(UploadScheduler uploadScheduler) {
+        this.uploadScheduler = uploadScheduler;
+    }
+}
@@ -0,0 +1,39 @@
+package com.dsvl.flood.message;
+
+import com.dsvl.flood.MessageType;
+
+/**
+ * length JOINOK value, length LEAVEOK value, length UNROK value or length WALKOK value
+ */
+public class Acknowledgement extends Message {
+
+    /**
+     * Value used when the response carries no valid value
+     */
+    public static final int ERROR = 9999;
+
+    private MessageType type;
+    private int value;
+
+    public Acknowledgement set(MessageType type, int value) {
+        this.type = type;
+        this.value = value;
+        return this;
+    }
+
+    @Override
+    public MessageType getType() {
+        return type;
+    }
+
+    /**
+     * @return 0 if successful, an error code otherwise
+     */
+    public int getValue() {
+        return value;
+    }
+
+    @Override
+    protected void clear() {
+    }
+}
@@ -0,0 +1,34 @@
+package com.dsvl.flood.message;
+
+import com.dsvl.flood.Endpoint;
+import com.dsvl.flood.MessageType;
+
+/**
+ * length JOIN IP_address port_no
+ */
+public class Join extends Message {
+
+    private Endpoint endpoint;
+
+    public Join set(Endpoint endpoint) {
+        this.endpoint = endpoint;
+        return this;
+    }
+
+    @Override
+    public MessageType getType() {
+        return MessageType.JOIN;
+    }
+
+    /**
+     * @return the node that wants to join, {@code null} if the message has no valid IP literal
+     */
+    public Endpoint getEndpoint() {
+        return endpoint;
+    }
+
+    @Override
+    protected void clear() {
+        endpoint = null;
+    }
+}
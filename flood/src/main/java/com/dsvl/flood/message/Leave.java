@@ -0,0 +1,50 @@
+package com.dsvl.flood.message;
+
+import com.dsvl.flood.Endpoint;
+import com.dsvl.flood.MessageType;
+import com.dsvl.flood.Neighbour;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * length LEAVE IP_address port_no
+ * or
+ * length LEAVE IP_address port_no 2 IP_address port_no IP_address port_no
+ */
+public class Leave extends Message {
+
+    private Endpoint endpoint;
+    private List<Neighbour> leaversNeighbours = Collections.emptyList();
+
+    public Leave set(Endpoint endpoint, List<Neighbour> leaversNeighbours) {
+        this.endpoint = endpoint;
+        this.leaversNeighbours = leaversNeighbours;
+        return this;
+    }
+
+    @Override
+    public MessageType getType() {
+        return MessageType.LEAVE;
+    }
+
+    /**
+     * @return the leaving node, {@code null} if the message has no valid IP literal
+     */
+    public Endpoint getEndpoint() {
+        return endpoint;
+    }
+
+    /**
+     * @return up to two neighbours of the leaving node, that this node may join instead
+     */
+    public List<Neighbour> getLeaversNeighbours() {
+        return leaversNeighbours;
+    }
+
+    @Override
+    protected void clear() {
+        endpoint = null;
+        leaversNeighbours = Collections.emptyList();
+    }
+}
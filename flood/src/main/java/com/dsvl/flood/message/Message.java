@@ -0,0 +1,65 @@
+package com.dsvl.flood.message;
+
+import com.dsvl.flood.MessageType;
+
+import java.net.InetAddress;
+
+/**
+ * A decoded protocol message.
+ * <br>
+ * Each message type has its own small class holding only the fields of that message.
+ * Messages taken from a {@link MessagePool} go back to it on {@link #release()}; a message
+ * that is never released, or was created with {@code new}, is simply garbage collected.
+ * <br>
+ * A message is handed to exactly one handler, which must not keep a reference to it after
+ * releasing it. Anything that outlives the handler, e.g. a {@code Neighbour}, is a separate object.
+ */
+public abstract class Message {
+
+    private InetAddress senderAddress;
+    private int senderPort;
+
+    private MessagePool pool;
+    private boolean released;
+
+    public abstract MessageType getType();
+
+    public InetAddress getSenderAddress() {
+        return senderAddress;
+    }
+
+    public int getSenderPort() {
+        return senderPort;
+    }
+
+    public void setSender(InetAddress senderAddress, int senderPort) {
+        this.senderAddress = senderAddress;
+        this.senderPort = senderPort;
+    }
+
+    /**
+     * Returns this message to the pool it was taken from, if any.
+     * Releasing more than once has no effect.
+     */
+    public void release() {
+        if (pool == null || released) {
+            return;
+        }
+        released = true;
+        senderAddress = null;
+        senderPort = 0;
+        clear();
+        pool.release(this);
+    }
+
+    void pooled(MessagePool pool) {
+        this.pool = pool;
+        this.released = false;
+    }
+
+    /**
+     * Drops the references held by this message before it is reused.
+     * Lists are replaced rather than cleared, a handler may have passed them on.
+     */
+    protected abstract void clear();
+}
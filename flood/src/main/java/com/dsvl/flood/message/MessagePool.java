@@ -0,0 +1,66 @@
+package com.dsvl.flood.message;
+
+import com.dsvl.flood.MessageType;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Recycles decoded messages, so that the decode and dispatch path allocates only what a
+ * handler keeps, e.g. file names.
+ * <br>
+ * At most {@code message.pool.size} idle messages are kept per type; messages released
+ * beyond that are left to the garbage collector, so a missing release costs an allocation,
+ * never correctness.
+ */
+@Component
+public class MessagePool {
+
+    private final int size;
+    private final Map<MessageType, Queue<Message>> idle = new EnumMap<>(MessageType.class);
+    private final AtomicLong created = new AtomicLong();
+    private final AtomicLong reused = new AtomicLong();
+
+    public MessagePool(@Value("${message.pool.size:64}") int size) {
+        this.size = size;
+        for (MessageType type : MessageType.values()) {
+            idle.put(type, new ArrayBlockingQueue<>(Math.max(1, size)));
+        }
+    }
+
+    /**
+     * @param factory creates a message of {@code type} if none is idle
+     */
+    @SuppressWarnings("unchecked")
+    public <T extends Message> T acquire(MessageType type, Supplier<T> factory) {
+        Message message = size > 0 ? idle.get(type).poll() : null;
+        if (message == null) {
+            message = factory.get();
+            created.incrementAndGet();
+        } else {
+            reused.incrementAndGet();
+        }
+        message.pooled(this);
+        return (T) message;
+    }
+
+    void release(Message message) {
+        if (size > 0) {
+            idle.get(message.getType()).offer(message);
+        }
+    }
+
+    public Map<String, Long> getStats() {
+        Map<String, Long> stats = new LinkedHashMap<>();
+        stats.put("created", created.get());
+        stats.put("reused", reused.get());
+        return stats;
+    }
+}
@@ -0,0 +1,26 @@
+package com.dsvl.flood.message;
+
+import com.dsvl.flood.MessageType;
+
+/**
+ * A message this node does not act on beyond its command, e.g. ERROR,
+ * an unknown command or something that is not a message at all
+ */
+public class OtherMessage extends Message {
+
+    private MessageType type;
+
+    public OtherMessage set(MessageType type) {
+        this.type = type;
+        return this;
+    }
+
+    @Override
+    public MessageType getType() {
+        return type;
+    }
+
+    @Override
+    protected void clear() {
+    }
+}
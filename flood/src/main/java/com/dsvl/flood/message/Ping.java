@@ -0,0 +1,47 @@
+package com.dsvl.flood.message;
+
+import com.dsvl.flood.Endpoint;
+import com.dsvl.flood.MessageType;
+import com.dsvl.flood.util.BloomFilter;
+
+/**
+ * length PNG IP_address port_no b=routing_summary
+ * <br>
+ * The routing summary is optional, see {@link com.dsvl.flood.RoutingSummary}
+ */
+public class Ping extends Message {
+
+    private Endpoint origin;
+    private BloomFilter[] summary;
+
+    public Ping set(Endpoint origin, BloomFilter[] summary) {
+        this.origin = origin;
+        this.summary = summary;
+        return this;
+    }
+
+    @Override
+    public MessageType getType() {
+        return MessageType.PNG;
+    }
+
+    /**
+     * @return the node that sent the message, as written in the message
+     */
+    public Endpoint getOrigin() {
+        return origin;
+    }
+
+    /**
+     * @return the routing summary of the sender, or {@code null} if it sent none
+     */
+    public BloomFilter[] getSummary() {
+        return summary;
+    }
+
+    @Override
+    protected void clear() {
+        origin = null;
+        summary = null;
+    }
+}
@@ -0,0 +1,61 @@
+package com.dsvl.flood.message;
+
+import com.dsvl.flood.Endpoint;
+import com.dsvl.flood.MessageType;
+import com.dsvl.flood.Neighbour;
+import com.dsvl.flood.util.BloomFilter;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * length PNGOK no_neighbours IP_address port_no IP_1:port_1_IP_2:port_2_ b=routing_summary
+ * <br>
+ * The routing summary is optional, see {@link com.dsvl.flood.RoutingSummary}
+ */
+public class PingOk extends Message {
+
+    private Endpoint origin;
+    private List<Neighbour> routingList = Collections.emptyList();
+    private BloomFilter[] summary;
+
+    public PingOk set(Endpoint origin, List<Neighbour> routingList, BloomFilter[] summary) {
+        this.origin = origin;
+        this.routingList = routingList;
+        this.summary = summary;
+        return this;
+    }
+
+    @Override
+    public MessageType getType() {
+        return MessageType.PNGOK;
+    }
+
+    /**
+     * @return the node that sent the message, as written in the message
+     */
+    public Endpoint getOrigin() {
+        return origin;
+    }
+
+    /**
+     * @return the neighbours of the node that answered, except this node
+     */
+    public List<Neighbour> getRoutingList() {
+        return routingList;
+    }
+
+    /**
+     * @return the routing summary of the node that answered, or {@code null} if it sent none
+     */
+    public BloomFilter[] getSummary() {
+        return summary;
+    }
+
+    @Override
+    protected void clear() {
+        origin = null;
+        routingList = Collections.emptyList();
+        summary = null;
+    }
+}
@@ -0,0 +1,37 @@
+package com.dsvl.flood.message;
+
+import com.dsvl.flood.MessageType;
+import com.dsvl.flood.Neighbour;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * length REGOK no_nodes IP_1 port_1 IP_2 port_2
+ * <br>
+ * Only a successful REGOK is decoded into a message, an error code is thrown as
+ * {@link com.dsvl.flood.exceptions.ErroneousResponseException}
+ */
+public class RegisterOk extends Message {
+
+    private List<Neighbour> existingNodes = Collections.emptyList();
+
+    public RegisterOk set(List<Neighbour> existingNodes) {
+        this.existingNodes = existingNodes;
+        return this;
+    }
+
+    @Override
+    public MessageType getType() {
+        return MessageType.REGOK;
+    }
+
+    public List<Neighbour> getExistingNodes() {
+        return existingNodes;
+    }
+
+    @Override
+    protected void clear() {
+        existingNodes = Collections.emptyList();
+    }
+}
@@ -0,0 +1,157 @@
+package com.dsvl.flood.message;
+
+import com.dsvl.flood.Endpoint;
+import com.dsvl.flood.MessageType;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * length SER IP port file_name hops q=query_id
+ * or
+ * length SER IP port file_name hops m=walk q=query_id
+ * or, with a result limit
+ * length SER IP port file_name hops k=limit [m=walk] q=query_id
+ * <br>
+ * The query id is the same in every copy of a query, so a node can tell a copy that reached it
+ * through another path from a new query. Queries of nodes that do not tag them have {@link #NO_ID}.
+ * <br>
+ * {@code m=walk} marks a query that is passed on by random walkers instead of being flooded.
+ * <br>
+ * {@code k=limit} asks every node to answer with at most that many files, its best matches.
+ * Queries without it, {@link #NO_LIMIT}, are answered with every match.
+ */
+public class Search extends Message {
+
+    public static final long NO_ID = 0;
+    public static final int NO_LIMIT = 0;
+
+    /**
+     * How a query is passed on to the neighbours
+     */
+    public enum Forwarding {
+        /**
+         * To every neighbour but the one it came from
+         */
+        FLOOD,
+        /**
+         * To one random neighbour
+         */
+        WALK
+    }
+
+    private Endpoint origin;
+    private String fileName;
+    private int hops;
+    private long queryId;
+    private Forwarding forwarding = Forwarding.FLOOD;
+    private int limit = NO_LIMIT;
+
+    public Search() {
+    }
+
+    public Search(Endpoint origin, String fileName, int hops) {
+        set(origin, fileName, hops, NO_ID);
+    }
+
+    public Search(Endpoint origin, String fileName, int hops, long queryId) {
+        set(origin, fileName, hops, queryId);
+    }
+
+    public Search(Endpoint origin, String fileName, int hops, long queryId, Forwarding forwarding) {
+        set(origin, fileName, hops, queryId).forwarding = forwarding;
+    }
+
+    public Search(Endpoint origin, String fileName, int hops, long queryId, Forwarding forwarding, int limit) {
+        set(origin, fileName, hops, queryId, forwarding, limit);
+    }
+
+    public Search set(Endpoint origin, String fileName, int hops, long queryId) {
+        return set(origin, fileName, hops, queryId, Forwarding.FLOOD);
+    }
+
+    public Search set(Endpoint origin, String fileName, int hops, long queryId, Forwarding forwarding) {
+        return set(origin, fileName, hops, queryId, forwarding, NO_LIMIT);
+    }
+
+    public Search set(Endpoint origin, String fileName, int hops, long queryId, Forwarding forwarding, int limit) {
+        this.origin = origin;
+        this.fileName = fileName;
+        this.hops = hops;
+        this.queryId = queryId;
+        this.forwarding = forwarding;
+        this.limit = limit;
+        return this;
+    }
+
+    /**
+     * @return a random id for a new query, never {@link #NO_ID}
+     */
+    public static long newQueryId() {
+        long id;
+        do {
+            id = ThreadLocalRandom.current().nextLong() & Long.MAX_VALUE;
+        } while (id == NO_ID);
+        return id;
+    }
+
+    /**
+     * @return a new query to pass on to the neighbours, with one hop less;
+     * this query is left as it is, so the handler replying to it is not affected
+     */
+    public Search forwarded() {
+        Search forwarded = new Search(origin, fileName, hops - 1, queryId, forwarding, limit);
+        forwarded.setSender(getSenderAddress(), getSenderPort());
+        return forwarded;
+    }
+
+    @Override
+    public MessageType getType() {
+        return MessageType.SER;
+    }
+
+    /**
+     * @return the node that started the search, search results are sent straight to it
+     */
+    public Endpoint getOrigin() {
+        return origin;
+    }
+
+    public String getFileName() {
+        return fileName;
+    }
+
+    public int getHops() {
+        return hops;
+    }
+
+    public long getQueryId() {
+        return queryId;
+    }
+
+    public Forwarding getForwarding() {
+        return forwarding;
+    }
+
+    /**
+     * @return the most files a node should answer the query with, or {@link #NO_LIMIT}
+     */
+    public int getLimit() {
+        return limit;
+    }
+
+    /**
+     * @return whether this node started the query; a query received from another node has a sender
+     */
+    public boolean isOwn() {
+        return getSenderAddress() == null;
+    }
+
+    @Override
+    protected void clear() {
+        origin = null;
+        fileName = null;
+        queryId = NO_ID;
+        forwarding = Forwarding.FLOOD;
+        limit = NO_LIMIT;
+    }
+}
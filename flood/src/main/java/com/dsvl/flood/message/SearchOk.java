@@ -0,0 +1,87 @@
+package com.dsvl.flood.message;
+
+import com.dsvl.flood.MessageType;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * length SEROK no_files IP port hops filename1 filename2 ... h=hash1,hash2,... q=query_id
+ * <br>
+ * The query id is that of the SER being answered, {@link Search#NO_ID} if the answering node does not echo it.
+ * The hashes are the shortened content hashes of the files, see {@link com.dsvl.flood.ContentDigest}, in
+ * the order of the file names; a file whose hash the answering node does not know yet has {@code -}.
+ */
+public class SearchOk extends Message {
+
+    private int noOfFiles;
+    private String address;
+    private int tcpPort;
+    private int hops;
+    private List<String> fileNames = Collections.emptyList();
+    private List<String> contentHashes = Collections.emptyList();
+    private long queryId;
+
+    public SearchOk set(int noOfFiles, String address, int tcpPort, int hops, List<String> fileNames,
+                        List<String> contentHashes, long queryId) {
+        this.noOfFiles = noOfFiles;
+        this.address = address;
+        this.tcpPort = tcpPort;
+        this.hops = hops;
+        this.fileNames = fileNames;
+        this.contentHashes = contentHashes;
+        this.queryId = queryId;
+        return this;
+    }
+
+    @Override
+    public MessageType getType() {
+        return MessageType.SEROK;
+    }
+
+    /**
+     * @return number of files found, or an error code: 9999 node unreachable, 9998 some other error
+     */
+    public int getNoOfFiles() {
+        return noOfFiles;
+    }
+
+    public String getAddress() {
+        return address;
+    }
+
+    public int getTcpPort() {
+        return tcpPort;
+    }
+
+    /**
+     * @return number of hops from this node to the node that has the files
+     */
+    public int getHops() {
+        return hops;
+    }
+
+    public List<String> getFileNames() {
+        return fileNames;
+    }
+
+    /**
+     * @return the content hash of each file, in the order of {@link #getFileNames()}; {@code null}
+     * where it is unknown, all of them if the answering node does not send hashes
+     */
+    public List<String> getContentHashes() {
+        return contentHashes;
+    }
+
+    public long getQueryId() {
+        return queryId;
+    }
+
+    @Override
+    protected void clear() {
+        address = null;
+        fileNames = Collections.emptyList();
+        contentHashes = Collections.emptyList();
+        queryId = Search.NO_ID;
+    }
+}
@@ -0,0 +1,36 @@
+package com.dsvl.flood.message;
+
+import com.dsvl.flood.MessageType;
+
+/**
+ * length WALK q=query_id
+ * <br>
+ * Sent by a node holding a random walker of the query to the node that started it, which answers
+ * {@code length WALKOK 0} if the walk should go on or {@code length WALKOK 1} if it should stop
+ */
+public class WalkCheck extends Message {
+
+    public static final int CONTINUE = 0;
+    public static final int STOP = 1;
+
+    private long queryId;
+
+    public WalkCheck set(long queryId) {
+        this.queryId = queryId;
+        return this;
+    }
+
+    @Override
+    public MessageType getType() {
+        return MessageType.WALK;
+    }
+
+    public long getQueryId() {
+        return queryId;
+    }
+
+    @Override
+    protected void clear() {
+        queryId = Search.NO_ID;
+    }
+}
@@ -0,0 +1,23 @@
+package com.dsvl.flood.model;
+
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The results of a search that are copies of the same file: the same name and the same content
+ */
+@Data
+public class FileCopies {
+    private String fileName;
+    /**
+     * {@code null} if the node that has the copy did not send it, such a copy is listed on its own
+     */
+    private String contentHash;
+    /**
+     * Hops to the nearest copy
+     */
+    private int hopCount;
+    private List<String> urls = new ArrayList<>();
+}
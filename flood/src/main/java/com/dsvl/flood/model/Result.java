@@ -11,5 +11,12 @@ public class Result {
     private String fileName;
     private String url;
     private int hopCount;
+    /**
+     * Shortened SHA-256 of the file's content, {@code null} if the node that has it did not send it
+     */
+    private String contentHash;
 
+    public Result(String fileName, String url, int hopCount) {
+        this(fileName, url, hopCount, null);
+    }
 }
@@ -0,0 +1,46 @@
+package com.dsvl.flood.service;
+
+import com.dsvl.flood.ContentDigest;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+public interface ContentService {
+    /**
+     * @param fileName name of a file in the node's catalog, as in {@code /file/{fileName}}
+     * @return the file to serve, or {@code null} if the node does not have it
+     */
+    Path find(String fileName) throws IOException;
+
+    /**
+     * @param file a file returned by {@link #find(String)} or {@link #newPartFile()}
+     * @return the digest of the file's content, computed again only when the file changes; waits
+     * for it to be computed if need be
+     */
+    ContentDigest digest(Path file) throws IOException;
+
+    /**
+     * Never waits for a digest to be computed, and never creates a placeholder
+     *
+     * @param fileName name of a file in the node's catalog
+     * @return the digest of the file if it is already known, {@code null} otherwise; the digest of
+     * a file that has one is then computed in the background
+     */
+    ContentDigest knownDigest(String fileName);
+
+    /**
+     * @return a new empty file in the content root to write a download to, see {@link #store(Path, String)}
+     */
+    Path newPartFile() throws IOException;
+
+    /**
+     * Moves a finished download in place and adds it to the node's catalog, so that the node
+     * serves the file from then on
+     *
+     * @param part a file returned by {@link #newPartFile()}
+     * @return the file in the content root
+     * @throws java.nio.file.FileAlreadyExistsException if there already is a file by that name,
+     * which is left as it is
+     */
+    Path store(Path part, String fileName) throws IOException;
+}
@@ -0,0 +1,27 @@
+package com.dsvl.flood.service;
+
+import com.dsvl.flood.Download;
+
+import java.util.List;
+
+public interface DownloadService {
+    /**
+     * Starts downloading the file from all the sources at once, without blocking the caller.
+     * The file is added to the node's catalog once it has been downloaded and verified.
+     *
+     * @param fileName the name of the file, as the sources list it
+     * @param urls     {@code /file/{fileName}} URLs of the nodes that have the file
+     * @return the download, to follow its progress
+     */
+    Download download(String fileName, List<String> urls);
+
+    /**
+     * @return the download, or {@code null} if there is no such download
+     */
+    Download get(long id);
+
+    /**
+     * @return the downloads this node remembers, the latest last
+     */
+    List<Download> getDownloads();
+}
@@ -0,0 +1,23 @@
+package com.dsvl.flood.service;
+
+import com.dsvl.flood.MessageEncoder;
+import com.dsvl.flood.Neighbour;
+import com.dsvl.flood.message.Search;
+
+import java.util.List;
+
+/**
+ * Decides which neighbours a query is passed on to, one implementation per {@link Search.Forwarding}
+ */
+public interface ForwardingStrategy {
+
+    Search.Forwarding getForwarding();
+
+    /**
+     * @param query      the query to pass on, already with one hop less
+     * @param neighbours the neighbours of this node
+     * @param searchMsg  writes the query as a SER message
+     */
+    void forward(Search query, List<Neighbour> neighbours, MessageEncoder.Writer searchMsg);
+
+}
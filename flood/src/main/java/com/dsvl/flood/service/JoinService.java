@@ -1,6 +1,7 @@
 package com.dsvl.flood.service;
 
 import java.net.InetAddress;
+import java.util.concurrent.CompletableFuture;
 
 public interface JoinService {
 
@@ -10,7 +11,8 @@ public interface JoinService {
      * @param peerPort
      * @param nodeAddress
      * @param nodePort
+     * @return a future completed with whether the peer accepted the join, without blocking the caller
      */
-    Boolean join(InetAddress peerAddress, Integer peerPort, InetAddress nodeAddress, Integer nodePort);
+    CompletableFuture<Boolean> join(InetAddress peerAddress, Integer peerPort, InetAddress nodeAddress, Integer nodePort);
 
 }
@@ -4,6 +4,7 @@ import com.dsvl.flood.Neighbour;
 
 import java.net.InetAddress;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 public interface LeaveService {
     /**
@@ -13,7 +14,8 @@ public interface LeaveService {
      * @param nodeAddress my ip
      * @param nodePort my udpPort
      * @param myNeighbours my neighbours
+     * @return a future completed with whether the neighbour acknowledged, without blocking the caller
      */
-    Boolean leave(InetAddress neighbourAddress, Integer neighbourPort,
-                  InetAddress nodeAddress, Integer nodePort, List<Neighbour> myNeighbours);
+    CompletableFuture<Boolean> leave(InetAddress neighbourAddress, Integer neighbourPort,
+                                     InetAddress nodeAddress, Integer nodePort, List<Neighbour> myNeighbours);
 }
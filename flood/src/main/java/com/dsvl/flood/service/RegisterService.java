@@ -4,6 +4,7 @@ import com.dsvl.flood.Neighbour;
 
 import java.net.InetAddress;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 public interface RegisterService {
 
@@ -16,8 +17,8 @@ public interface RegisterService {
      * @param nodeUdpPort          - this node's udp port
      * @param username             - username of this p2p network
      * @param existingNodes        - an ArrayList to add the ip addresses sent by bootstrap server
-     * @return  whether the registration is successful or not
+     * @return  a future completed with whether the registration is successful or not
      */
-    Boolean register(InetAddress bootstrapAddress, int bootstrapServerPort,
-                     InetAddress nodeAddress, int nodeUdpPort, String username, List<Neighbour> existingNodes);
+    CompletableFuture<Boolean> register(InetAddress bootstrapAddress, int bootstrapServerPort,
+                                        InetAddress nodeAddress, int nodeUdpPort, String username, List<Neighbour> existingNodes);
 }
@@ -0,0 +1,18 @@
+package com.dsvl.flood.service;
+
+import com.dsvl.flood.SearchSession;
+
+public interface RingSearchService {
+
+    /**
+     * Searches the network in rings of growing radius: the query is sent to the neighbours first,
+     * then again to the nodes up to two hops away, and so on up to {@code maxHops}.
+     * Returns at once; the search stops as soon as enough results have arrived.
+     *
+     * @param fileName the file to search for
+     * @param maxHops  the hops of the widest ring, as with a plain flood
+     * @return the session the results are added to
+     */
+    SearchSession search(String fileName, int maxHops);
+
+}
@@ -1,6 +1,7 @@
 package com.dsvl.flood.service;
 
 import java.net.InetAddress;
+import java.util.concurrent.CompletableFuture;
 
 public interface UnregisterService {
 
@@ -12,8 +13,8 @@ public interface UnregisterService {
      * @param nodeAddress          - this node address
      * @param nodeUdpPort          - this node's udp port
      * @param username             - username of this p2p network
-     * @return  whether the registration is successful or not
+     * @return  a future completed with whether the unregistration is successful or not
      */
-    Boolean unregister(InetAddress bootstrapAddress, int bootstrapServerPort,
-                     InetAddress nodeAddress, int nodeUdpPort, String username);
+    CompletableFuture<Boolean> unregister(InetAddress bootstrapAddress, int bootstrapServerPort,
+                                          InetAddress nodeAddress, int nodeUdpPort, String username);
 }
@@ -0,0 +1,284 @@
+package com.dsvl.flood.service.impl;
+
+import com.dsvl.flood.ContentDigest;
+import com.dsvl.flood.File;
+import com.dsvl.flood.Node;
+import com.dsvl.flood.service.ContentService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Serves the files of the catalog from {@code node.content-root}, one file per catalog entry
+ * named exactly like it. Only files directly in the root are served, a name that resolves
+ * anywhere else, e.g. {@code ../application.yml}, is treated as missing.
+ * <br>
+ * The catalog of a node is made up of names only, so with {@code node.content-placeholders}
+ * an entry that has no file yet is given a small placeholder the first time it is asked for.
+ * The placeholder is kept in the root and served like any other file from then on.
+ * <br>
+ * Digests are computed by {@code node.hash-threads} threads of their own, those of the files
+ * already in the root as soon as the node starts. A digest is saved in {@code .digests} in the
+ * root, so that it is computed once and not on every start, and is only used as long as the size
+ * and modification time of the file are still the ones it was computed from; a file that is
+ * replaced gets a new digest the next time it is asked for.
+ */
+@Service
+public class ContentServiceImpl implements ContentService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ContentServiceImpl.class);
+
+    /**
+     * Directory in the root the digests are saved in, one file per file of the root
+     */
+    private static final String DIGESTS = ".digests";
+
+    private final Path root;
+    private final boolean placeholders;
+    private final ExecutorService hashers;
+    private final Map<Path, CompletableFuture<ContentDigest>> digests = new ConcurrentHashMap<>();
+    private Node node;
+
+    public ContentServiceImpl(@Value("${node.content-root:content}") String root,
+                              @Value("${node.content-placeholders:true}") boolean placeholders,
+                              @Value("${node.hash-threads:2}") int hashThreads) throws IOException {
+        this.root = Paths.get(root).toAbsolutePath().normalize();
+        this.placeholders = placeholders;
+        AtomicInteger count = new AtomicInteger();
+        this.hashers = Executors.newFixedThreadPool(hashThreads, runnable -> {
+            Thread thread = new Thread(runnable, "content-hash-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        Files.createDirectories(this.root);
+    }
+
+    @Override
+    public Path find(String fileName) throws IOException {
+        String catalogName = node.catalogName(fileName);
+        if (catalogName == null) {
+            return null;
+        }
+        Path path = inRoot(catalogName);
+        if (path == null) {
+            logger.warn("Refusing to serve {}, it is not in the content root", catalogName);
+            return null;
+        }
+        if (Files.isRegularFile(path)) {
+            return path;
+        }
+        if (!placeholders) {
+            return null;
+        }
+        writePlaceholder(path, catalogName);
+        return path;
+    }
+
+    @Override
+    public Path newPartFile() throws IOException {
+        return Files.createTempFile(root, ".", ".part");
+    }
+
+    @Override
+    public Path store(Path part, String fileName) throws IOException {
+        Path path = inRoot(fileName);
+        if (path == null) {
+            throw new IOException(fileName + " is not a name in the content root");
+        }
+        // without REPLACE_EXISTING, a file that appeared under the name in the meantime is never
+        // overwritten, the move fails with FileAlreadyExistsException instead; in the same
+        // directory it is still a rename, so the file never shows up partly written
+        Files.move(part, path);
+        // the move keeps the modification time, so the digest of the download still holds
+        CompletableFuture<ContentDigest> digest = digests.remove(part);
+        Path saved = savedDigest(path);
+        if (digest != null && saved != null) {
+            digests.put(path, digest);
+            digest.thenAccept(known -> save(known, saved));
+        }
+        node.addFile(new File(fileName));
+        return path;
+    }
+
+    /**
+     * @return the path of the file directly in the root, or {@code null} if the name resolves anywhere else
+     */
+    private Path inRoot(String fileName) {
+        Path path;
+        try {
+            path = root.resolve(fileName).normalize();
+        } catch (InvalidPathException e) {
+            return null;
+        }
+        return root.equals(path.getParent()) ? path : null;
+    }
+
+    @Override
+    public ContentDigest digest(Path file) throws IOException {
+        for (int attempt = 0; attempt < 3; attempt++) {
+            BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+            ContentDigest digest;
+            try {
+                digest = digestFuture(file, attributes).get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while hashing " + file);
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                throw cause instanceof UncheckedIOException ? ((UncheckedIOException) cause).getCause() : new IOException(cause);
+            }
+            if (digest.isCurrent(attributes)) {
+                return digest;
+            }
+            // changed while it was hashed, or hashed by an earlier call before it changed
+        }
+        throw new IOException(file + " keeps changing while it is hashed");
+    }
+
+    @Override
+    public ContentDigest knownDigest(String fileName) {
+        Path path = inRoot(fileName);
+        if (path == null) {
+            return null;
+        }
+        BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        } catch (IOException e) {
+            return null;
+        }
+        if (!attributes.isRegularFile()) {
+            return null;
+        }
+        CompletableFuture<ContentDigest> digest = digestFuture(path, attributes);
+        return digest.isDone() && isCurrent(digest, attributes) ? digest.join() : null;
+    }
+
+    /**
+     * @return the digest of the file being computed or already computed, started again if the
+     * file has changed since
+     */
+    private CompletableFuture<ContentDigest> digestFuture(Path file, BasicFileAttributes attributes) {
+        return digests.compute(file, (path, digest) -> digest != null && (!digest.isDone() || isCurrent(digest, attributes))
+                ? digest : CompletableFuture.supplyAsync(() -> load(path), hashers));
+    }
+
+    private static boolean isCurrent(CompletableFuture<ContentDigest> digest, BasicFileAttributes attributes) {
+        return !digest.isCompletedExceptionally() && digest.join().isCurrent(attributes);
+    }
+
+    /**
+     * Reads the digest saved for the file, or computes it and saves it
+     */
+    private ContentDigest load(Path file) {
+        Path saved = savedDigest(file);
+        try {
+            if (saved != null) {
+                ContentDigest digest = readSaved(saved);
+                if (digest != null && digest.isCurrent(Files.readAttributes(file, BasicFileAttributes.class))) {
+                    return digest;
+                }
+            }
+            ContentDigest digest = ContentDigest.compute(file);
+            if (saved != null) {
+                save(digest, saved);
+            }
+            return digest;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static ContentDigest readSaved(Path saved) {
+        try {
+            return ContentDigest.read(saved);
+        } catch (IOException e) {
+            logger.warn("Cannot read the digest {}, computing it again: {}", saved, e.toString());
+            return null;
+        }
+    }
+
+    private static void save(ContentDigest digest, Path saved) {
+        try {
+            Files.createDirectories(saved.getParent());
+            digest.write(saved);
+        } catch (IOException e) {
+            logger.warn("Cannot save the digest {}: {}", saved, e.toString());
+        }
+    }
+
+    /**
+     * @return where the digest of the file is saved, {@code null} for the hidden files of
+     * downloads in progress, which are never saved
+     */
+    private Path savedDigest(Path file) {
+        String fileName = file.getFileName().toString();
+        return fileName.startsWith(".") ? null : root.resolve(DIGESTS).resolve(fileName);
+    }
+
+    /**
+     * Starts computing the digests of the files already in the root, so that they are known
+     * before they are first asked for
+     */
+    @PostConstruct
+    public void hashAll() {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(root)) {
+            for (Path file : files) {
+                BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+                if (attributes.isRegularFile() && savedDigest(file) != null) {
+                    digestFuture(file, attributes);
+                }
+            }
+        } catch (IOException e) {
+            logger.warn("Cannot list {}: {}", root, e.toString());
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        hashers.shutdownNow();
+    }
+
+    /**
+     * Creates the placeholder only if there is no file by that name yet, so that it never replaces
+     * one written in the meantime, e.g. by a concurrent download of the same file
+     */
+    private void writePlaceholder(Path path, String fileName) throws IOException {
+        try {
+            Files.write(path, ("This is a placeholder for " + fileName).getBytes(StandardCharsets.UTF_8),
+                    StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+            logger.info("Created a placeholder for {} in {}", fileName, root);
+        } catch (FileAlreadyExistsException e) {
+            // created in the meantime
+        }
+    }
+
+    @Autowired
+    public void setNode(Node node) {
+        this.node = node;
+    }
+}
@@ -0,0 +1,473 @@
+package com.dsvl.flood.service.impl;
+
+import com.dsvl.flood.ContentDigest;
+import com.dsvl.flood.Download;
+import com.dsvl.flood.service.ContentService;
+import com.dsvl.flood.service.DownloadService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Downloads a file from every node that has it at once.
+ * <br>
+ * The sources are first asked for the first byte of the file, which gives its size and its
+ * ETag, the SHA-256 of its content; a source that has not hashed the file yet is asked again
+ * after its {@code Retry-After}. Nodes can list different files under the same name, so only
+ * the sources serving the version most of them have are used. The file is then fetched in chunks
+ * of {@code download.chunk-size-kb} by one worker per source, see {@link Download} for how the
+ * chunks are shared out. A source that fails {@code download.max-failures} times, or gets
+ * {@code download.slow-factor} times slower than the fastest one, stops taking chunks.
+ * <br>
+ * Every chunk is asked for with {@code If-Range} set to the ETag, so a source whose file has
+ * changed since answers with the whole file instead of the chunk and the chunk is rejected; so is
+ * a chunk whose {@code Content-Range} or length is not the one asked for. When the sources send
+ * the root of the file's chunk tree, the chunk hashes are fetched from one of them and checked
+ * against that root, and every chunk is checked against its hashes as it arrives; a damaged chunk
+ * is fetched again from another source instead of failing the whole download. Once all chunks
+ * are in, the whole file is checked against the ETag before it is added to the node's catalog.
+ * Chunks are whole multiples of {@link ContentDigest#CHUNK_SIZE}.
+ * <br>
+ * Chunks are fetched with {@link HttpURLConnection}, whose connections to a node are kept alive
+ * and reused as long as every response is read to the end, so a source costs one connection.
+ */
+@Service
+public class DownloadServiceImpl implements DownloadService {
+
+    private static final Logger logger = LoggerFactory.getLogger(DownloadServiceImpl.class);
+
+    /**
+     * How many times a source that is still hashing the file is asked again
+     */
+    private static final int MAX_PROBE_WAITS = 5;
+
+    private final int chunkSize;
+    private final int maxSources;
+    private final int timeoutMs;
+    private final int maxFailures;
+    private final int slowFactor;
+    private final int maxKept;
+
+    /**
+     * Plans the downloads, so that waiting for the probes never takes a worker away from them
+     */
+    private final ExecutorService planner = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "download-planner");
+        thread.setDaemon(true);
+        return thread;
+    });
+    /**
+     * Probes the sources of the download being planned all at once; apart from the workers, which
+     * may all be busy fetching the chunks of other downloads
+     */
+    private final ExecutorService probes;
+    private final ExecutorService workers;
+
+    private final AtomicLong nextId = new AtomicLong();
+    /**
+     * Downloads by id, oldest first
+     */
+    private final Map<Long, Download> downloads = new LinkedHashMap<>();
+    private ContentService contentService;
+
+    /**
+     * A source's answer to the probe
+     */
+    private static final class Probe {
+        final String url;
+        final long size;
+        final String eTag;
+        /**
+         * Root of the chunk tree, {@code null} from nodes that do not send it
+         */
+        final String root;
+
+        Probe(String url, long size, String eTag, String root) {
+            this.url = url;
+            this.size = size;
+            this.eTag = eTag;
+            this.root = root;
+        }
+    }
+
+    public DownloadServiceImpl(@Value("${download.chunk-size-kb:1024}") int chunkSizeKb,
+                               @Value("${download.threads:8}") int threads,
+                               @Value("${download.max-sources:8}") int maxSources,
+                               @Value("${download.timeout-ms:10000}") int timeoutMs,
+                               @Value("${download.max-failures:3}") int maxFailures,
+                               @Value("${download.slow-factor:4}") int slowFactor,
+                               @Value("${download.max-kept:32}") int maxKept) {
+        // whole chunks of the tree, so that every chunk fetched can be checked against its hashes
+        this.chunkSize = Math.max(1, (chunkSizeKb * 1024 + ContentDigest.CHUNK_SIZE - 1) / ContentDigest.CHUNK_SIZE)
+                * ContentDigest.CHUNK_SIZE;
+        this.maxSources = maxSources;
+        this.timeoutMs = timeoutMs;
+        this.maxFailures = maxFailures;
+        this.slowFactor = slowFactor;
+        this.maxKept = maxKept;
+        AtomicInteger probeCount = new AtomicInteger();
+        this.probes = Executors.newFixedThreadPool(Math.max(1, maxSources), runnable -> {
+            Thread thread = new Thread(runnable, "download-probe-" + probeCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        AtomicInteger count = new AtomicInteger();
+        this.workers = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "download-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @Override
+    public Download download(String fileName, List<String> urls) {
+        Download download = new Download(nextId.incrementAndGet(), fileName);
+        remember(download);
+        List<String> sources = new ArrayList<>(new LinkedHashSet<>(urls));
+        if (sources.size() > maxSources) {
+            sources = sources.subList(0, maxSources);
+        }
+        List<String> probed = sources;
+        planner.execute(() -> plan(download, probed));
+        return download;
+    }
+
+    @Override
+    public synchronized Download get(long id) {
+        return downloads.get(id);
+    }
+
+    @Override
+    public synchronized List<Download> getDownloads() {
+        return new ArrayList<>(downloads.values());
+    }
+
+    /**
+     * Keeps at most {@code download.max-kept} downloads, forgetting the oldest finished ones first
+     */
+    private synchronized void remember(Download download) {
+        downloads.put(download.getId(), download);
+        Iterator<Download> oldest = downloads.values().iterator();
+        while (downloads.size() > maxKept && oldest.hasNext()) {
+            if (oldest.next().isFinished()) {
+                oldest.remove();
+            }
+        }
+    }
+
+    private void plan(Download download, List<String> urls) {
+        List<CompletableFuture<Probe>> answers = new ArrayList<>(urls.size());
+        for (String url : urls) {
+            answers.add(CompletableFuture.supplyAsync(() -> probe(url), probes));
+        }
+        // sources are grouped by the version of the file they serve
+        Map<String, List<Probe>> versions = new LinkedHashMap<>();
+        for (CompletableFuture<Probe> future : answers) {
+            Probe probe = future.join();
+            if (probe != null) {
+                versions.computeIfAbsent(probe.eTag + '/' + probe.size + '/' + probe.root, version -> new ArrayList<>()).add(probe);
+            }
+        }
+        List<Probe> chosen = null;
+        for (List<Probe> version : versions.values()) {
+            if (chosen == null || version.size() > chosen.size()) {
+                chosen = version;
+            }
+        }
+        if (chosen == null) {
+            download.fail("No source answered");
+            return;
+        }
+
+        Path part;
+        FileChannel channel;
+        try {
+            part = contentService.newPartFile();
+            channel = FileChannel.open(part, StandardOpenOption.WRITE);
+        } catch (IOException e) {
+            download.fail("Cannot write the file: " + e.getMessage());
+            return;
+        }
+        List<Download.Source> sources = new ArrayList<>(chosen.size());
+        for (Probe probe : chosen) {
+            sources.add(new Download.Source(probe.url));
+        }
+        Probe first = chosen.get(0);
+        ContentDigest chunkHashes = first.root == null ? null : chunkHashes(chosen);
+        download.plan(first.size, first.eTag, chunkSize, sources, urls.size() - chosen.size(), chunkHashes);
+        logger.info("Downloading {} of {} bytes from {} sources, {}", download.getFileName(), first.size, sources.size(),
+                chunkHashes == null ? "checking the whole file only" : "checking every chunk");
+
+        for (int i = 0; i < sources.size(); i++) {
+            download.workerStarted();
+        }
+        for (Download.Source source : sources) {
+            workers.execute(() -> fetchFrom(download, source, channel, part));
+        }
+    }
+
+    /**
+     * Asks the source for the first byte of the file. A source that is still hashing the file
+     * answers without an ETag and with a {@code Retry-After}, it is asked again once that has
+     * passed, at most {@link #MAX_PROBE_WAITS} times.
+     *
+     * @return the size and version of the file, or {@code null} if the source does not serve it
+     * with a strong ETag
+     */
+    private Probe probe(String url) {
+        for (int waits = 0; ; waits++) {
+            HttpURLConnection connection = null;
+            try {
+                connection = open(url, "bytes=0-0", null);
+                int status = connection.getResponseCode();
+                String eTag = connection.getHeaderField("ETag");
+                long size;
+                if (status == 206 || status == 416) {
+                    // bytes 0-0/size, or bytes */0 for an empty file
+                    String contentRange = connection.getHeaderField("Content-Range");
+                    size = contentRange == null ? -1 : Long.parseLong(contentRange.substring(contentRange.indexOf('/') + 1));
+                } else if (status == 200) {
+                    size = connection.getContentLengthLong();
+                } else {
+                    size = -1;
+                }
+                String retryAfter = connection.getHeaderField("Retry-After");
+                drain(connection);
+                if (size >= 0 && eTag == null && retryAfter != null && waits < MAX_PROBE_WAITS) {
+                    // being hashed, never waits longer than a request could take
+                    Thread.sleep(Math.min(Long.parseLong(retryAfter.trim()) * 1000, timeoutMs));
+                    continue;
+                }
+                if (size < 0 || eTag == null || eTag.startsWith("W/")) {
+                    logger.info("Not downloading from {}, it answered {}", url, status);
+                    return null;
+                }
+                return new Probe(url, size, eTag, connection.getHeaderField(ContentDigest.ROOT_HEADER));
+            } catch (IOException | NumberFormatException e) {
+                logger.info("Not downloading from {}: {}", url, e.toString());
+                drain(connection);
+                return null;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Asks the sources in turn for the chunk hashes of the file, until one sends hashes that add
+     * up to the root all of them sent with the file
+     *
+     * @return the chunk hashes, or {@code null} if no source sent the right ones
+     */
+    private ContentDigest chunkHashes(List<Probe> sources) {
+        for (Probe source : sources) {
+            HttpURLConnection connection = null;
+            try {
+                connection = (HttpURLConnection) new URL(source.url + "/chunks").openConnection();
+                connection.setConnectTimeout(timeoutMs);
+                connection.setReadTimeout(timeoutMs);
+                if (connection.getResponseCode() != 200 || !source.eTag.equals(connection.getHeaderField("ETag"))) {
+                    drain(connection);
+                    continue;
+                }
+                List<String> hashes = new ArrayList<>();
+                try (BufferedReader reader = new BufferedReader(
+                        new InputStreamReader(connection.getInputStream(), StandardCharsets.US_ASCII))) {
+                    String line;
+                    while ((line = reader.readLine()) != null) {
+                        hashes.add(line);
+                    }
+                }
+                String hash = source.eTag.substring(1, source.eTag.length() - 1);
+                ContentDigest digest = ContentDigest.of(source.size, hash, hashes);
+                if (digest != null && digest.getRoot().equals(source.root)) {
+                    return digest;
+                }
+                logger.info("{} sent chunk hashes that do not add up to the root of the file", source.url);
+            } catch (IOException e) {
+                logger.info("No chunk hashes from {}: {}", source.url, e.toString());
+                drain(connection);
+            }
+        }
+        return null;
+    }
+
+    private void fetchFrom(Download download, Download.Source source, FileChannel channel, Path part) {
+        try {
+            ByteBuffer buffer = ByteBuffer.allocate(chunkSize);
+            while (!download.isFinished() && source.isActive()) {
+                if (download.isSlow(source, slowFactor)) {
+                    logger.info("{} is too slow, leaving its chunks to the other sources", source.getUrl());
+                    source.retire();
+                    break;
+                }
+                int chunk = download.nextChunk();
+                if (chunk < 0) {
+                    break;
+                }
+                long started = System.nanoTime();
+                try {
+                    fetchChunk(download, source.getUrl(), chunk, buffer);
+                    ContentDigest chunkHashes = download.getChunkHashes();
+                    if (chunkHashes != null && !chunkHashes.matches(download.chunkStart(chunk), buffer)) {
+                        throw new IOException("Sent a chunk that does not match its hash");
+                    }
+                    long position = download.chunkStart(chunk);
+                    while (buffer.hasRemaining()) {
+                        position += channel.write(buffer, position);
+                    }
+                    source.fetched(download.chunkLength(chunk), System.nanoTime() - started);
+                    download.fetched(chunk);
+                } catch (IOException | RuntimeException e) {
+                    // a chunk is never lost, whatever went wrong it goes back to be fetched again
+                    download.retry(chunk);
+                    if (e instanceof RuntimeException) {
+                        logger.warn("Chunk {} of {} from {} failed", chunk, download.getFileName(), source.getUrl(), e);
+                    } else {
+                        logger.info("Chunk {} of {} from {} failed: {}", chunk, download.getFileName(), source.getUrl(), e.toString());
+                    }
+                    if (source.failed() >= maxFailures) {
+                        source.retire();
+                    }
+                }
+            }
+        } finally {
+            if (download.workerDone()) {
+                finish(download, channel, part);
+            }
+        }
+    }
+
+    /**
+     * Reads the chunk into the buffer, ready to be written
+     */
+    private void fetchChunk(Download download, String url, int chunk, ByteBuffer buffer) throws IOException {
+        long start = download.chunkStart(chunk);
+        int length = download.chunkLength(chunk);
+        String range = "bytes " + start + '-' + (start + length - 1) + '/' + download.getSize();
+        HttpURLConnection connection = open(url, "bytes=" + start + '-' + (start + length - 1), download.getETag());
+        int status = connection.getResponseCode();
+        String contentRange = connection.getHeaderField("Content-Range");
+        if (status != 206 || !range.equals(contentRange)) {
+            drain(connection);
+            throw new IOException(status == 200 ? "Answered with the whole file, it has changed"
+                    : "Answered " + status + " " + contentRange + " instead of " + range);
+        }
+        buffer.clear().limit(length);
+        try (InputStream in = connection.getInputStream()) {
+            int read;
+            while (buffer.hasRemaining()
+                    && (read = in.read(buffer.array(), buffer.position(), buffer.remaining())) != -1) {
+                buffer.position(buffer.position() + read);
+            }
+            if (buffer.hasRemaining() || in.read() != -1) {
+                connection.disconnect();
+                throw new IOException("Sent a chunk of the wrong length");
+            }
+        }
+        buffer.flip();
+    }
+
+    private HttpURLConnection open(String url, String range, String ifRange) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        connection.setConnectTimeout(timeoutMs);
+        connection.setReadTimeout(timeoutMs);
+        connection.setRequestProperty("Range", range);
+        if (ifRange != null) {
+            connection.setRequestProperty("If-Range", ifRange);
+        }
+        return connection;
+    }
+
+    /**
+     * Reads what is left of the response, so that the connection can be reused
+     */
+    private static void drain(HttpURLConnection connection) {
+        if (connection == null) {
+            return;
+        }
+        try {
+            InputStream in = connection.getResponseCode() >= 400 ? connection.getErrorStream() : connection.getInputStream();
+            if (in != null) {
+                byte[] skipped = new byte[8192];
+                while (in.read(skipped) != -1) {
+                    // discard
+                }
+                in.close();
+            }
+        } catch (IOException e) {
+            connection.disconnect();
+        }
+    }
+
+    /**
+     * Called by the last worker to stop, when no chunk can be written any more
+     */
+    private void finish(Download download, FileChannel channel, Path part) {
+        try {
+            channel.close();
+            if (!download.isComplete()) {
+                download.fail("Every source failed before the file was complete");
+            } else {
+                download.setState(Download.State.VERIFYING);
+                String hash = '"' + contentService.digest(part).getHash() + '"';
+                if (!hash.equals(download.getETag())) {
+                    download.fail("The file does not match its content hash");
+                } else {
+                    contentService.store(part, download.getFileName());
+                    download.setState(Download.State.DONE);
+                    logger.info("Downloaded {}", download.getFileName());
+                }
+            }
+        } catch (IOException e) {
+            download.fail("Cannot store the file: " + e.getMessage());
+        }
+        if (download.getState() == Download.State.FAILED) {
+            try {
+                Files.deleteIfExists(part);
+            } catch (IOException e) {
+                logger.warn("Cannot delete {}", part, e);
+            }
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        planner.shutdownNow();
+        probes.shutdownNow();
+        workers.shutdownNow();
+    }
+
+    @Autowired
+    public void setContentService(ContentService contentService) {
+        this.contentService = contentService;
+    }
+}
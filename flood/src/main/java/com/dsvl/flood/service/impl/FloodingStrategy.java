@@ -0,0 +1,46 @@
+package com.dsvl.flood.service.impl;
+
+import com.dsvl.flood.FileIndex;
+import com.dsvl.flood.MessageEncoder;
+import com.dsvl.flood.Neighbour;
+import com.dsvl.flood.RoutingSummary;
+import com.dsvl.flood.UdpHelper;
+import com.dsvl.flood.message.Search;
+import com.dsvl.flood.service.ForwardingStrategy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Passes the query on to every neighbour but the one it came from, skipping the neighbours
+ * whose {@link RoutingSummary} rules out a match within the hops the query has left
+ */
+@Component
+public class FloodingStrategy implements ForwardingStrategy {
+
+    private RoutingSummary routingSummary;
+
+    @Autowired
+    public void setRoutingSummary(RoutingSummary routingSummary) {
+        this.routingSummary = routingSummary;
+    }
+
+    @Override
+    public Search.Forwarding getForwarding() {
+        return Search.Forwarding.FLOOD;
+    }
+
+    @Override
+    public void forward(Search query, List<Neighbour> neighbours, MessageEncoder.Writer searchMsg) {
+        Set<String> words = FileIndex.tokens(query.getFileName());
+        for (int i = 0; i < neighbours.size(); i++) {
+            // the query may have come from any of the sender's ports, so only the address is compared
+            if (!neighbours.get(i).getIpAddress().equals(query.getSenderAddress())
+                    && routingSummary.mayMatch(neighbours.get(i).getEndpoint(), words, query.getHops())) {
+                UdpHelper.sendMessage(searchMsg, neighbours.get(i).getIpAddress(), neighbours.get(i).getUdpPort());
+            }
+        }
+    }
+}
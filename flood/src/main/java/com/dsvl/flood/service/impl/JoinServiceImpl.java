@@ -6,8 +6,8 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
 
-import java.net.DatagramPacket;
 import java.net.InetAddress;
+import java.util.concurrent.CompletableFuture;
 
 @Service
 public class JoinServiceImpl implements JoinService {
@@ -15,15 +15,17 @@ public class JoinServiceImpl implements JoinService {
     private static final Logger logger = LoggerFactory.getLogger(JoinServiceImpl.class);
 
     @Override
-    public Boolean join(InetAddress peerAddress, Integer peerPort, InetAddress nodeAddress, Integer nodeUdpPort) {
+    public CompletableFuture<Boolean> join(InetAddress peerAddress, Integer peerPort, InetAddress nodeAddress, Integer nodeUdpPort) {
         String joinMsg = UdpMsgBuilder.buildJoinMsg(nodeAddress.getHostAddress(), nodeUdpPort);
-        DatagramPacket responsePacket =  UdpHelper.sendAndReceiveMessage(joinMsg, peerAddress, peerPort,
-                nodeUdpPort, 2000);
-
-        if (responsePacket.getAddress() == null) { // no response from peer
-            return false;
-        }
-        String response = new String(responsePacket.getData(), 0, responsePacket.getLength());
-        return "0013 JOINOK 0".equals(response);
+        CompletableFuture<String> response = UdpHelper.sendRequest(joinMsg, peerAddress, peerPort, MessageDecoder.JOINOK, 2000);
+        CompletableFuture<Boolean> joined = response
+                .thenApply("0013 JOINOK 0"::equals)
+                .exceptionally(e -> { // no response from peer
+                    logger.info("Join request to {}:{} failed: {}", peerAddress.getHostAddress(), peerPort, e.getMessage());
+                    return false;
+                });
+        // cancelling the join stops waiting for the JOINOK too
+        joined.whenComplete((joinSuccessful, e) -> response.cancel(false));
+        return joined;
     }
 }
@@ -2,25 +2,28 @@ package com.dsvl.flood.service.impl;
 
 import com.dsvl.flood.*;
 import com.dsvl.flood.service.LeaveService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
 
-import java.net.DatagramPacket;
 import java.net.InetAddress;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 @Service
 public class LeaveServiceImpl implements LeaveService {
 
+    private static final Logger logger = LoggerFactory.getLogger(LeaveServiceImpl.class);
+
     @Override
-    public Boolean leave(InetAddress neighbourAddress, Integer neighbourPort,
-                         InetAddress nodeAddress, Integer nodeUdpPort, List<Neighbour> myNeighbours) {
+    public CompletableFuture<Boolean> leave(InetAddress neighbourAddress, Integer neighbourPort,
+                                            InetAddress nodeAddress, Integer nodeUdpPort, List<Neighbour> myNeighbours) {
         String leaveMsg = UdpMsgBuilder.buildLeaveMsg(nodeAddress.getHostAddress(), nodeUdpPort, myNeighbours);
-        DatagramPacket responsePacket = UdpHelper.sendAndReceiveMessage(leaveMsg, neighbourAddress, neighbourPort,
-                nodeUdpPort, 5000);
-        if (responsePacket.getAddress() == null) { // no response from peer
-            return false;
-        }
-        String response = new String(responsePacket.getData(), 0, responsePacket.getLength());
-        return "0014 LEAVEOK 0".equals(response);
+        return UdpHelper.sendRequest(leaveMsg, neighbourAddress, neighbourPort, MessageDecoder.LEAVEOK, 5000)
+                .thenApply("0014 LEAVEOK 0"::equals)
+                .exceptionally(e -> { // no response from peer
+                    logger.info("Leave request to {}:{} failed: {}", neighbourAddress.getHostAddress(), neighbourPort, e.getMessage());
+                    return false;
+                });
     }
 }
@@ -0,0 +1,99 @@
+package com.dsvl.flood.service.impl;
+
+import com.dsvl.flood.MessageEncoder;
+import com.dsvl.flood.MessageType;
+import com.dsvl.flood.Neighbour;
+import com.dsvl.flood.UdpHelper;
+import com.dsvl.flood.UdpMsgBuilder;
+import com.dsvl.flood.message.Search;
+import com.dsvl.flood.service.ForwardingStrategy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * k random walkers.
+ * <br>
+ * The node starting the query sends it to {@code search.walk.walkers} random neighbours, every
+ * other node passes it on to one random neighbour, preferably not the one it came from. A query
+ * therefore costs at most walkers times hops messages, however large the overlay is.
+ * <br>
+ * Every {@code search.walk.check-every} hops the node holding a walker asks the node that
+ * started the query whether to go on (WALK / WALKOK), so the walkers stop soon after enough
+ * results have been found. A walker whose origin does not answer stops as well.
+ */
+@Component
+public class RandomWalkStrategy implements ForwardingStrategy {
+
+    private static final Logger logger = LoggerFactory.getLogger(RandomWalkStrategy.class);
+
+    private static final String CONTINUE = "0013 WALKOK 0";
+
+    private final int walkers;
+    private final int checkEvery;
+    private final long checkTimeoutMs;
+
+    public RandomWalkStrategy(@Value("${search.walk.walkers:2}") int walkers,
+                              @Value("${search.walk.check-every:4}") int checkEvery,
+                              @Value("${search.walk.check-timeout-ms:1000}") long checkTimeoutMs) {
+        this.walkers = walkers;
+        this.checkEvery = checkEvery;
+        this.checkTimeoutMs = checkTimeoutMs;
+    }
+
+    @Override
+    public Search.Forwarding getForwarding() {
+        return Search.Forwarding.WALK;
+    }
+
+    @Override
+    public void forward(Search query, List<Neighbour> neighbours, MessageEncoder.Writer searchMsg) {
+        List<Neighbour> next = pick(query, neighbours, query.isOwn() ? walkers : 1);
+        if (next.isEmpty()) {
+            return;
+        }
+        if (query.isOwn() || checkEvery <= 0 || query.getHops() % checkEvery != 0) {
+            send(next, searchMsg);
+            return;
+        }
+        UdpHelper.sendRequest(UdpMsgBuilder.buildWalkMsg(query.getQueryId()), query.getOrigin().getAddress(),
+                query.getOrigin().getPort(), MessageType.WALKOK.name(), checkTimeoutMs)
+                .whenComplete((response, e) -> {
+                    if (CONTINUE.equals(response)) {
+                        send(next, searchMsg);
+                    } else {
+                        logger.debug("Walker of query {} for {} stopped", Long.toHexString(query.getQueryId()),
+                                query.getFileName());
+                    }
+                });
+    }
+
+    /**
+     * @return up to {@code count} random neighbours, the sender only if there is no other neighbour
+     */
+    static List<Neighbour> pick(Search query, List<Neighbour> neighbours, int count) {
+        List<Neighbour> candidates = new ArrayList<>(neighbours.size());
+        for (Neighbour neighbour : neighbours) {
+            if (!neighbour.getIpAddress().equals(query.getSenderAddress())) {
+                candidates.add(neighbour);
+            }
+        }
+        if (candidates.isEmpty()) {
+            candidates.addAll(neighbours); // a dead end, the walker goes back
+        }
+        Collections.shuffle(candidates, ThreadLocalRandom.current());
+        return candidates.subList(0, Math.min(count, candidates.size()));
+    }
+
+    private static void send(List<Neighbour> next, MessageEncoder.Writer searchMsg) {
+        for (Neighbour neighbour : next) {
+            UdpHelper.sendMessage(searchMsg, neighbour.getIpAddress(), neighbour.getUdpPort());
+        }
+    }
+}
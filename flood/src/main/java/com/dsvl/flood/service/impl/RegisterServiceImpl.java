@@ -2,14 +2,15 @@ package com.dsvl.flood.service.impl;
 
 import com.dsvl.flood.*;
 import com.dsvl.flood.exceptions.ErroneousResponseException;
+import com.dsvl.flood.message.RegisterOk;
 import com.dsvl.flood.service.RegisterService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
 
-import java.net.DatagramPacket;
 import java.net.InetAddress;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 @Service
 public class RegisterServiceImpl implements RegisterService {
@@ -17,28 +18,28 @@ public class RegisterServiceImpl implements RegisterService {
     private static final Logger logger = LoggerFactory.getLogger(RegisterServiceImpl.class);
 
     @Override
-    public Boolean register(InetAddress bootstrapAddress, int bootstrapServerPort,
-                            InetAddress nodeAddress, int nodeUdpPort, String username, List<Neighbour> existingNodes) {
-        //send and receive - to stay synced with the bootstrap server
+    public CompletableFuture<Boolean> register(InetAddress bootstrapAddress, int bootstrapServerPort,
+                                               InetAddress nodeAddress, int nodeUdpPort, String username, List<Neighbour> existingNodes) {
         String regMsg = UdpMsgBuilder.buildRegisterMsg(nodeAddress.getHostAddress(), nodeUdpPort, username);
-        DatagramPacket responsePacket =  UdpHelper.sendAndReceiveMessage(regMsg, bootstrapAddress, bootstrapServerPort,
-                nodeUdpPort, 2000);
-
-        //process response
-        if (responsePacket.getAddress() == null) { // no response from bootstrap server
-            return false;
-        }
-        MessageObject response;
-        try {
-            //here the data looks like: length REGOK no_nodes IP_1 port_1 IP_2 port_2
-            response = MessageDecoder.decode(responsePacket.getData(), responsePacket.getLength());
-        } catch (ErroneousResponseException e) { // error response from bootstrap server
-            logger.error(e.getMessage());
-            return false;
-        }
-        existingNodes.addAll(response.getExistingNodes());
-        logger.debug("{} existing node addresses received from the bootstrap server", existingNodes.size());
-        return true;
+        return UdpHelper.sendRequest(regMsg, bootstrapAddress, bootstrapServerPort, MessageDecoder.REGOK, 2000)
+                .thenApply(responseMsg -> {
+                    RegisterOk response;
+                    try {
+                        //here the data looks like: length REGOK no_nodes IP_1 port_1 IP_2 port_2
+                        byte[] data = responseMsg.getBytes();
+                        response = (RegisterOk) MessageDecoder.decode(data, data.length);
+                    } catch (ErroneousResponseException e) { // error response from bootstrap server
+                        logger.error(e.getMessage());
+                        return false;
+                    }
+                    existingNodes.addAll(response.getExistingNodes());
+                    logger.debug("{} existing node addresses received from the bootstrap server", existingNodes.size());
+                    return true;
+                })
+                .exceptionally(e -> { // no response from bootstrap server
+                    logger.info("Register request failed: {}", e.getMessage());
+                    return false;
+                });
     }
 
 }
@@ -0,0 +1,102 @@
+package com.dsvl.flood.service.impl;
+
+import com.dsvl.flood.Node;
+import com.dsvl.flood.SearchSession;
+import com.dsvl.flood.message.Search;
+import com.dsvl.flood.service.RingSearchService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Expanding ring search.
+ * <br>
+ * Ring {@code r} is a query sent with {@code r + 1} hops, so that it reaches the nodes up to
+ * {@code r} hops away. After each ring the search waits {@code search.ring.wait-ms} per hop of
+ * the ring for the results to come in, and stops when {@code search.ring.wanted-results} have
+ * arrived, the widest ring has been sent or {@code search.ring.deadline-ms} has passed.
+ * A file found near this node therefore costs a few messages instead of a full flood.
+ * <br>
+ * Every ring is a new query with a new id, so that the nodes that have already seen the
+ * previous ring handle it too. All rings add their results to the same {@link SearchSession},
+ * where a node that answers several rings is only listed once.
+ */
+@Service
+public class RingSearchServiceImpl implements RingSearchService {
+
+    private static final Logger logger = LoggerFactory.getLogger(RingSearchServiceImpl.class);
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "ring-search");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @Value("${search.ring.wanted-results:3}")
+    private int wantedResults;
+
+    @Value("${search.ring.wait-ms:500}")
+    private long waitMs;
+
+    @Value("${search.ring.deadline-ms:5000}")
+    private long deadlineMs;
+
+    private Node node;
+
+    private final class Ring {
+        final SearchSession session;
+        final int maxHops;
+        final long deadline;
+        int radius;
+
+        Ring(SearchSession session, int maxHops) {
+            this.session = session;
+            this.maxHops = maxHops;
+            this.deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(deadlineMs);
+        }
+    }
+
+    @Override
+    public SearchSession search(String fileName, int maxHops) {
+        SearchSession session = node.recentSearch(fileName, maxHops);
+        if (session != null) {
+            return session;
+        }
+        Ring ring = new Ring(node.newSearch(fileName, maxHops), maxHops);
+        scheduler.execute(() -> expand(ring));
+        return ring.session;
+    }
+
+    private void expand(Ring ring) {
+        SearchSession session = ring.session;
+        if (session.size() >= wantedResults || ring.radius + 1 >= ring.maxHops
+                || System.nanoTime() - ring.deadline >= 0) {
+            logger.info("Ring search for {} stopped at radius {} with {} results",
+                    session.getFileName(), ring.radius, session.size());
+            return;
+        }
+        ring.radius++;
+        logger.debug("Searching {} up to {} hops away", session.getFileName(), ring.radius);
+        node.sendQuery(session, ring.radius + 1, Search.Forwarding.FLOOD);
+        long remainingMs = TimeUnit.NANOSECONDS.toMillis(ring.deadline - System.nanoTime());
+        scheduler.schedule(() -> expand(ring), Math.max(0, Math.min(waitMs * ring.radius, remainingMs)),
+                TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        scheduler.shutdownNow();
+    }
+
+    @Autowired
+    public void setNode(Node node) {
+        this.node = node;
+    }
+}
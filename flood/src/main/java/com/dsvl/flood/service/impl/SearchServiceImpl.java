@@ -1,22 +1,40 @@
 package com.dsvl.flood.service.impl;
 
 import com.dsvl.flood.*;
+import com.dsvl.flood.message.Search;
+import com.dsvl.flood.service.ForwardingStrategy;
 import com.dsvl.flood.service.SearchService;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import java.net.InetAddress;
+import java.util.EnumMap;
 import java.util.List;
+import java.util.Map;
 
 @Service
 public class SearchServiceImpl implements SearchService {
 
+    private final Map<Search.Forwarding, ForwardingStrategy> strategies = new EnumMap<>(Search.Forwarding.class);
+
     @Override
-    public void search(MessageObject msgObject, List<Neighbour> neighbours, InetAddress nodeAddress, Integer nodeUdpPort) {
-        String searchMsg = UdpMsgBuilder.buildSearchMsg(msgObject.getSearch_ip(), msgObject.getSearch_udp_Port(), msgObject.getFile_name(), msgObject.getHops());
-        for (int i = 0; i < neighbours.size(); i++) {
-            if (!(neighbours.get(i).getIpAddress().getHostAddress().equals(msgObject.getSenderIP()))){
-                UdpHelper.sendMessage(searchMsg, neighbours.get(i).getIpAddress(), neighbours.get(i).getUdpPort());
-            }
+    public void search(Search query, List<Neighbour> neighbours, InetAddress nodeAddress, Integer nodeUdpPort) {
+        String searchIp = query.getOrigin().getHostAddress();
+        int searchPort = query.getOrigin().getPort();
+        String fileName = query.getFileName();
+        int hops = query.getHops();
+        long queryId = query.getQueryId();
+        Search.Forwarding forwarding = query.getForwarding();
+        int limit = query.getLimit();
+        MessageEncoder.Writer searchMsg = buffer -> MessageEncoder.encodeSearch(buffer, searchIp, searchPort, fileName,
+                hops, queryId, forwarding, limit);
+        strategies.get(forwarding).forward(query, neighbours, searchMsg);
+    }
+
+    @Autowired
+    public void setStrategies(List<ForwardingStrategy> strategies) {
+        for (ForwardingStrategy strategy : strategies) {
+            this.strategies.put(strategy.getForwarding(), strategy);
         }
     }
 }
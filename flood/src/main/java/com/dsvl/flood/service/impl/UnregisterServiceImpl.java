@@ -1,28 +1,30 @@
 package com.dsvl.flood.service.impl;
 
+import com.dsvl.flood.MessageDecoder;
 import com.dsvl.flood.UdpHelper;
 import com.dsvl.flood.UdpMsgBuilder;
 import com.dsvl.flood.service.UnregisterService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
 
-import java.net.DatagramPacket;
 import java.net.InetAddress;
+import java.util.concurrent.CompletableFuture;
 
 @Service
 public class UnregisterServiceImpl implements UnregisterService {
+
+    private static final Logger logger = LoggerFactory.getLogger(UnregisterServiceImpl.class);
+
     @Override
-    public Boolean unregister(InetAddress bootstrapAddress, int bootstrapServerPort,
-                              InetAddress nodeAddress, int nodeUdpPort, String username) {
-        //send and receive - to stay synced with the bootstrap server
+    public CompletableFuture<Boolean> unregister(InetAddress bootstrapAddress, int bootstrapServerPort,
+                                                 InetAddress nodeAddress, int nodeUdpPort, String username) {
         String unregMsg = UdpMsgBuilder.buildUnregisterMsg(nodeAddress.getHostAddress(), nodeUdpPort, username);
-        DatagramPacket responsePacket =  UdpHelper.sendAndReceiveMessage(unregMsg, bootstrapAddress, bootstrapServerPort,
-                nodeUdpPort, 2000);
-
-        //process response
-        if (responsePacket.getAddress() == null) { // no response from bootstrap server
-            return false;
-        }
-        String response = new String(responsePacket.getData(), 0, responsePacket.getLength());
-        return "0012 UNROK 0".equals(response);
+        return UdpHelper.sendRequest(unregMsg, bootstrapAddress, bootstrapServerPort, MessageDecoder.UNROK, 2000)
+                .thenApply("0012 UNROK 0"::equals)
+                .exceptionally(e -> { // no response from bootstrap server
+                    logger.info("Unregister request failed: {}", e.getMessage());
+                    return false;
+                });
     }
 }
@@ -0,0 +1,144 @@
+package com.dsvl.flood.util;
+
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collection;
+
+/**
+ * Fixed size Bloom filter of words, the same size on every node so that filters can be
+ * exchanged and merged.
+ * <br>
+ * A word is hashed with {@link String#hashCode()}, which is the same on every JVM, and
+ * {@link #HASHES} indexes are derived from it by double hashing. With {@link #BITS} bits
+ * a filter of a few hundred words has a false positive rate of about 2%.
+ * <br>
+ * Not thread safe; a filter is built by one thread and only read once it is shared.
+ */
+public final class BloomFilter {
+
+    public static final int BITS = 2048;
+    public static final int HASHES = 3;
+
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+    private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+
+    private final long[] bits;
+
+    public BloomFilter() {
+        this(new long[BITS / Long.SIZE]);
+    }
+
+    private BloomFilter(long[] bits) {
+        this.bits = bits;
+    }
+
+    public static BloomFilter of(Collection<String> words) {
+        BloomFilter filter = new BloomFilter();
+        for (String word : words) {
+            filter.add(word);
+        }
+        return filter;
+    }
+
+    public void add(String word) {
+        int h1 = word.hashCode();
+        int h2 = mix(h1);
+        for (int i = 0; i < HASHES; i++) {
+            int index = Math.floorMod(h1 + i * h2, BITS);
+            bits[index >>> 6] |= 1L << index;
+        }
+    }
+
+    /**
+     * @return {@code false} if the word was certainly not added
+     */
+    public boolean mightContain(String word) {
+        int h1 = word.hashCode();
+        int h2 = mix(h1);
+        for (int i = 0; i < HASHES; i++) {
+            int index = Math.floorMod(h1 + i * h2, BITS);
+            if ((bits[index >>> 6] & (1L << index)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return {@code false} if any of the words was certainly not added
+     */
+    public boolean mightContainAll(Collection<String> words) {
+        for (String word : words) {
+            if (!mightContain(word)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Adds every word of the other filter to this one
+     */
+    public BloomFilter or(BloomFilter other) {
+        for (int i = 0; i < bits.length; i++) {
+            bits[i] |= other.bits[i];
+        }
+        return this;
+    }
+
+    public boolean isEmpty() {
+        for (long word : bits) {
+            if (word != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the filter in URL safe Base64, a single protocol token
+     */
+    public String encode() {
+        byte[] bytes = new byte[bits.length * Long.BYTES];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) (bits[i >>> 3] >>> ((i & 7) * 8));
+        }
+        return ENCODER.encodeToString(bytes);
+    }
+
+    /**
+     * @return the filter, or {@code null} if the text is not a filter of this size
+     */
+    public static BloomFilter decode(String text) {
+        byte[] bytes;
+        try {
+            bytes = DECODER.decode(text);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        if (bytes.length != BITS / Byte.SIZE) {
+            return null;
+        }
+        long[] bits = new long[BITS / Long.SIZE];
+        for (int i = 0; i < bytes.length; i++) {
+            bits[i >>> 3] |= (bytes[i] & 0xffL) << ((i & 7) * 8);
+        }
+        return new BloomFilter(bits);
+    }
+
+    private static int mix(int hash) {
+        int h = hash * 0x9e3779b9;
+        h ^= h >>> 16;
+        return h | 1; // odd, so the indexes differ
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof BloomFilter && Arrays.equals(bits, ((BloomFilter) o).bits);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(bits);
+    }
+}
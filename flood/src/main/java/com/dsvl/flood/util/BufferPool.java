@@ -0,0 +1,54 @@
+package com.dsvl.flood.util;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * A bounded pool of direct {@link ByteBuffer}s.
+ * <br>
+ * All buffers are allocated up front, so the pool never allocates after construction.
+ * A caller that finds the pool empty gets {@code null} and is expected to shed load
+ * instead of waiting.
+ */
+public class BufferPool {
+
+    private final BlockingQueue<ByteBuffer> buffers;
+    private final int bufferSize;
+
+    public BufferPool(int bufferCount, int bufferSize) {
+        this.buffers = new ArrayBlockingQueue<>(bufferCount);
+        this.bufferSize = bufferSize;
+        for (int i = 0; i < bufferCount; i++) {
+            buffers.add(ByteBuffer.allocateDirect(bufferSize));
+        }
+    }
+
+    /**
+     * @return a cleared buffer, or {@code null} if every buffer is in use
+     */
+    public ByteBuffer acquire() {
+        ByteBuffer buffer = buffers.poll();
+        if (buffer != null) {
+            buffer.clear();
+        }
+        return buffer;
+    }
+
+    /**
+     * Returns the buffer to the pool. Buffers that did not come from this pool are ignored.
+     */
+    public void release(ByteBuffer buffer) {
+        if (buffer != null && buffer.isDirect() && buffer.capacity() == bufferSize) {
+            buffers.offer(buffer);
+        }
+    }
+
+    public int available() {
+        return buffers.size();
+    }
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+}
@@ -0,0 +1,62 @@
+package com.dsvl.flood.util;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token bucket of bytes: fills at a fixed rate up to its capacity, and a transfer takes as many
+ * tokens as it sends bytes.
+ * <br>
+ * A transfer is never refused. It takes its tokens at once, running the bucket into debt if need
+ * be, and is told how long to wait for the debt to be paid back; so a transfer larger than the
+ * capacity still goes through, at the rate of the bucket. Safe for concurrent use.
+ */
+public final class TokenBucket {
+
+    private final long bytesPerSecond;
+    private final long capacity;
+    private double tokens;
+    private long filledAt;
+
+    /**
+     * @param bytesPerSecond the rate, {@code 0} or less for a bucket that never makes anyone wait
+     * @param capacity       the most bytes that can be sent at once after the bucket was idle
+     */
+    public TokenBucket(long bytesPerSecond, long capacity) {
+        this.bytesPerSecond = bytesPerSecond;
+        this.capacity = Math.max(1, capacity);
+        this.tokens = this.capacity;
+        this.filledAt = System.nanoTime();
+    }
+
+    public boolean isUnlimited() {
+        return bytesPerSecond <= 0;
+    }
+
+    /**
+     * @param now the current {@link System#nanoTime()}
+     * @return whether the bucket has refilled to its capacity, so that a new bucket would be the same
+     */
+    public synchronized boolean isFull(long now) {
+        return isUnlimited() || tokens + (now - filledAt) * (double) bytesPerSecond / TimeUnit.SECONDS.toNanos(1) >= capacity;
+    }
+
+    /**
+     * @return how many nanoseconds to wait before sending the bytes
+     */
+    public long take(long bytes) {
+        return take(bytes, System.nanoTime());
+    }
+
+    /**
+     * @param now the current {@link System#nanoTime()}
+     */
+    public synchronized long take(long bytes, long now) {
+        if (isUnlimited()) {
+            return 0;
+        }
+        tokens = Math.min(capacity, tokens + (now - filledAt) * (double) bytesPerSecond / TimeUnit.SECONDS.toNanos(1));
+        filledAt = now;
+        tokens -= bytes;
+        return tokens >= 0 ? 0 : (long) Math.ceil(-tokens * TimeUnit.SECONDS.toNanos(1) / bytesPerSecond);
+    }
+}
@@ -0,0 +1,48 @@
+package com.dsvl.flood;
+
+import org.junit.Test;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class EndpointRegistryTest {
+
+    @Test
+    public void parseIpLiteral() {
+        Endpoint endpoint = EndpointRegistry.parse("192.168.1.20", 45555);
+        assertEquals("192.168.1.20", endpoint.getHostAddress());
+        assertEquals(45555, endpoint.getPort());
+        assertEquals("192.168.1.20:45555", endpoint.toString());
+    }
+
+    @Test
+    public void hostNamesAreNotResolved() {
+        assertNull(EndpointRegistry.parse("localhost", 45555));
+        assertNull(EndpointRegistry.parse("10.0.0", 45555));
+        assertNull(EndpointRegistry.parse("10.0.0.256", 45555));
+        assertNull(EndpointRegistry.parse("10..0.1", 45555));
+    }
+
+    @Test
+    public void endpointsAreInterned() throws UnknownHostException {
+        Endpoint parsed = EndpointRegistry.parse("10.0.0.7", 5007);
+        Endpoint fromAddress = EndpointRegistry.of(InetAddress.getByAddress(new byte[]{10, 0, 0, 7}), 5007);
+        assertSame(parsed, fromAddress);
+        assertSame(parsed, new Neighbour(InetAddress.getByAddress(new byte[]{10, 0, 0, 7}), 5007).getEndpoint());
+        assertTrue(parsed.is(InetAddress.getByAddress(new byte[]{10, 0, 0, 7}), 5007));
+    }
+
+    @Test
+    public void differentPortIsDifferentEndpoint() {
+        Endpoint a = EndpointRegistry.parse("10.0.0.7", 5007);
+        Endpoint b = EndpointRegistry.parse("10.0.0.7", 5008);
+        assertEquals(a.getIp(), b.getIp());
+        assertTrue(a.key() != b.key());
+        assertTrue(!a.equals(b));
+    }
+}
@@ -0,0 +1,109 @@
+package com.dsvl.flood;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class FileIndexTest {
+
+    private FileIndex index;
+
+    @Before
+    public void setUp() {
+        index = new FileIndex();
+        index.add(new File("Lord of the Rings"));
+        index.add(new File("Adventures of Tintin"));
+        index.add(new File("Super Mario"));
+        index.add(new File("Super Mario 2"));
+    }
+
+    @Test
+    public void matchesEveryWordOfTheQuery() {
+        List<File> results = index.search("super_mario");
+        assertEquals(2, results.size());
+        assertEquals("Super Mario", results.get(0).getFileName());
+        assertEquals("Super Mario 2", results.get(1).getFileName());
+
+        assertEquals(1, index.search("Mario 2").size());
+        assertEquals(1, index.search("of_the").size());
+    }
+
+    @Test
+    public void noMatchWhenAnyWordIsMissing() {
+        assertTrue(index.search("Super_Tintin").isEmpty());
+        assertTrue(index.search("Marioo").isEmpty());
+        assertTrue(index.search("_").isEmpty());
+    }
+
+    @Test
+    public void ranksTheClosestMatchesFirst() {
+        index.add(new File("Super Mario Galaxy"));
+        index.add(new File("Mario Kart"));
+        index.add(new File("New Super Mario Bros"));
+
+        List<File> results = index.search("mario", 3);
+        assertEquals(3, results.size());
+        assertEquals("Super Mario", results.get(0).getFileName());
+        assertEquals("Mario Kart", results.get(1).getFileName()); // "kart" is rarer than "super"
+        assertEquals("Super Mario 2", results.get(2).getFileName());
+
+        assertEquals(5, index.search("mario", 0).size());
+        assertEquals(5, index.search("mario", 50).size());
+        assertTrue(index.search("super_tintin", 3).isEmpty());
+    }
+
+    @Test
+    public void equallyGoodMatchesKeepTheirOrder() {
+        for (int i = 10; i < 100; i++) {
+            index.add(new File("track " + i));
+        }
+        List<File> results = index.search("track", 3);
+        assertEquals("track 10", results.get(0).getFileName());
+        assertEquals("track 11", results.get(1).getFileName());
+        assertEquals("track 12", results.get(2).getFileName());
+    }
+
+    @Test
+    public void removedFileIsNoLongerFound() {
+        int tintin = index.add(new File("Adventures of Tintin"));
+        assertTrue(index.remove(new File("Super Mario")));
+        assertFalse(index.remove(new File("Super Mario")));
+
+        List<File> results = index.search("mario");
+        assertEquals(1, results.size());
+        assertEquals("Super Mario 2", results.get(0).getFileName());
+        assertEquals(3, index.size());
+        assertEquals(tintin, index.add(new File("Adventures of Tintin"))); // ids stay as they were
+    }
+
+    @Test
+    public void duplicatesAreIndexedOnce() {
+        index.addAll(Arrays.asList(new File("Super Mario"), new File("Super Mario 3")));
+        assertEquals(5, index.size());
+        assertEquals(3, index.search("super_mario").size());
+    }
+
+    @Test
+    public void largeCatalog() {
+        List<File> titles = new ArrayList<>();
+        for (int i = 0; i < 50_000; i++) {
+            titles.add(new File("Title " + i + " volume " + (i % 10)));
+        }
+        index.addAll(titles);
+        for (int i = 0; i < 50_000; i += 2) {
+            index.remove(titles.get(i));
+        }
+        assertEquals(0, index.search("title_49998").size());
+        assertEquals(1, index.search("title_49999").size());
+        assertEquals(5_000, index.search("volume_3").size());
+        assertEquals(0, index.search("volume_4").size());
+        assertEquals(2, index.search("mario").size());
+    }
+}
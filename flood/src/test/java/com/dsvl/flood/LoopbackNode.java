@@ -0,0 +1,63 @@
+package com.dsvl.flood;
+
+import com.dsvl.flood.service.LogRepository;
+import com.dsvl.flood.util.BufferPool;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.net.InetSocketAddress;
+
+/**
+ * The UDP side of a node on the loopback interface, for tests: a listening port whose responses
+ * are handed to a {@link RequestCorrelator}, and the {@link UdpHelper} sending from it. Other
+ * messages are dropped.
+ */
+public final class LoopbackNode implements Closeable {
+
+    private final UdpReceiver receiver;
+    private final UdpSender sender;
+    private final RequestCorrelator correlator = new RequestCorrelator();
+
+    public LoopbackNode() throws IOException {
+        receiver = new UdpReceiver(0, new BufferPool(8, 2048), 32);
+        sender = new UdpSender(1);
+        sender.attachNodeChannel(receiver.getChannel());
+        LogRepository logs = (LogRepository) Proxy.newProxyInstance(LogRepository.class.getClassLoader(),
+                new Class<?>[]{LogRepository.class}, (proxy, method, args) -> null);
+        new UdpHelper(logs, sender, correlator);
+
+        Thread receiving = new Thread(() -> {
+            try {
+                receiver.receiveLoop(() -> false);
+            } catch (IOException e) {
+                // closed
+            }
+        }, "test-udp-receiver");
+        receiving.setDaemon(true);
+        receiving.start();
+        Thread handling = new Thread(this::handlePackets, "test-udp-handler");
+        handling.setDaemon(true);
+        handling.start();
+    }
+
+    private void handlePackets() {
+        MessageFrame frame = new MessageFrame();
+        receiver.handleLoop(packet -> {
+            MessageDecoder.decode(packet.getData(), frame);
+            correlator.complete(frame.type().name(), packet.getSender().getAddress(),
+                    packet.getSender().getPort(), frame.toString());
+        });
+    }
+
+    public int getPort() throws IOException {
+        return ((InetSocketAddress) receiver.getChannel().getLocalAddress()).getPort();
+    }
+
+    @Override
+    public void close() throws IOException {
+        receiver.close();
+        sender.close();
+        correlator.shutdown();
+    }
+}
@@ -0,0 +1,240 @@
+package com.dsvl.flood;
+
+import com.dsvl.flood.exceptions.ErroneousResponseException;
+import com.dsvl.flood.message.Join;
+import com.dsvl.flood.message.MessagePool;
+import com.dsvl.flood.message.Ping;
+import com.dsvl.flood.message.PingOk;
+import com.dsvl.flood.message.Search;
+import com.dsvl.flood.message.SearchOk;
+import com.dsvl.flood.message.WalkCheck;
+import com.dsvl.flood.util.BloomFilter;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class MessageDecoderTest {
+
+    private static ByteBuffer direct(String message) {
+        byte[] bytes = message.getBytes(StandardCharsets.US_ASCII);
+        ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.length);
+        buffer.put(bytes).flip();
+        return buffer;
+    }
+
+    @Test
+    public void decodeSearchMsg() throws ErroneousResponseException {
+        byte[] data = "0044 SER 127.0.0.1 45555 Lord of the rings 2".getBytes(StandardCharsets.US_ASCII);
+        Search msg = (Search) MessageDecoder.decode(data, data.length);
+        assertEquals(MessageType.SER, msg.getType());
+        assertEquals("127.0.0.1", msg.getOrigin().getHostAddress());
+        assertEquals(45555, msg.getOrigin().getPort());
+        assertEquals("Lord of the rings", msg.getFileName());
+        assertEquals(2, msg.getHops());
+    }
+
+    @Test
+    public void decodeTaggedSearchMsg() throws ErroneousResponseException {
+        ByteBuffer buffer = ByteBuffer.allocate(128);
+        MessageEncoder.encodeSearch(buffer, "127.0.0.1", 45555, "Lord of the rings", 2, 0x7fffffffffffffffL);
+        Search msg = (Search) MessageDecoder.decode(buffer.array(), buffer.position());
+        assertEquals("Lord of the rings", msg.getFileName());
+        assertEquals(2, msg.getHops());
+        assertEquals(0x7fffffffffffffffL, msg.getQueryId());
+        assertEquals(msg.getQueryId(), msg.forwarded().getQueryId());
+
+        byte[] untagged = "0044 SER 127.0.0.1 45555 Lord of the rings 2".getBytes(StandardCharsets.US_ASCII);
+        assertEquals(Search.NO_ID, ((Search) MessageDecoder.decode(untagged, untagged.length)).getQueryId());
+        byte[] badId = "0049 SER 127.0.0.1 45555 Lord of the rings 2 q=xyz".getBytes(StandardCharsets.US_ASCII);
+        msg = (Search) MessageDecoder.decode(badId, badId.length);
+        assertEquals(Search.NO_ID, msg.getQueryId());
+        assertEquals(2, msg.getHops());
+    }
+
+    @Test
+    public void decodeLimitedSearchMsg() throws ErroneousResponseException {
+        ByteBuffer buffer = ByteBuffer.allocate(128);
+        MessageEncoder.encodeSearch(buffer, "127.0.0.1", 45555, "Tintin", 3, 0xabcL, Search.Forwarding.WALK, 20);
+        assertEquals("0051 SER 127.0.0.1 45555 Tintin 3 k=20 m=walk q=abc",
+                new String(buffer.array(), 0, buffer.position(), StandardCharsets.US_ASCII));
+        Search msg = (Search) MessageDecoder.decode(buffer.array(), buffer.position());
+        assertEquals("Tintin", msg.getFileName());
+        assertEquals(20, msg.getLimit());
+        assertEquals(20, msg.forwarded().getLimit());
+
+        byte[] badLimit = "0037 SER 127.0.0.1 45555 Tintin 3 k=x".getBytes(StandardCharsets.US_ASCII);
+        msg = (Search) MessageDecoder.decode(badLimit, badLimit.length);
+        assertEquals(Search.NO_LIMIT, msg.getLimit());
+        assertEquals(3, msg.getHops());
+    }
+
+    @Test
+    public void decodeWalkingSearchMsg() throws ErroneousResponseException {
+        ByteBuffer buffer = ByteBuffer.allocate(128);
+        MessageEncoder.encodeSearch(buffer, "127.0.0.1", 45555, "Tintin", 30, 0xabcL, Search.Forwarding.WALK);
+        assertEquals("0047 SER 127.0.0.1 45555 Tintin 30 m=walk q=abc",
+                new String(buffer.array(), 0, buffer.position(), StandardCharsets.US_ASCII));
+        Search msg = (Search) MessageDecoder.decode(buffer.array(), buffer.position());
+        assertEquals(Search.Forwarding.WALK, msg.getForwarding());
+        assertEquals(30, msg.getHops());
+        assertEquals(0xabcL, msg.getQueryId());
+        assertEquals(Search.Forwarding.WALK, msg.forwarded().getForwarding());
+
+        byte[] data = UdpMsgBuilder.buildWalkMsg(0xabcL).getBytes(StandardCharsets.US_ASCII);
+        assertEquals(0xabcL, ((WalkCheck) MessageDecoder.decode(data, data.length)).getQueryId());
+    }
+
+    @Test
+    public void decodeSearchOkEchoingTheQueryId() throws ErroneousResponseException {
+        ByteBuffer buffer = ByteBuffer.allocate(128);
+        MessageEncoder.encodeSearchOk(buffer, 1, "10.0.0.1", 8080, 3, Collections.singletonList("Tintin"), 0xabcL);
+        SearchOk msg = (SearchOk) MessageDecoder.decode(buffer.array(), buffer.position());
+        assertEquals(Collections.singletonList("Tintin"), msg.getFileNames());
+        assertEquals(0xabcL, msg.getQueryId());
+
+        byte[] untagged = "0034 SEROK 1 10.0.0.1 8080 3 Tintin".getBytes(StandardCharsets.US_ASCII);
+        msg = (SearchOk) MessageDecoder.decode(untagged, untagged.length);
+        assertEquals(Collections.singletonList("Tintin"), msg.getFileNames());
+        assertEquals(Search.NO_ID, msg.getQueryId());
+    }
+
+    @Test
+    public void decodeSearchOkWithContentHashes() throws ErroneousResponseException {
+        ByteBuffer buffer = ByteBuffer.allocate(128);
+        MessageEncoder.encodeSearchOk(buffer, 2, "10.0.0.1", 8080, 3, Arrays.asList("Tintin", "Super Mario"),
+                Arrays.asList("ba7816bf8f01cfea", null), 0xabcL);
+        SearchOk msg = (SearchOk) MessageDecoder.decode(buffer.array(), buffer.position());
+        assertEquals(Arrays.asList("Tintin", "Super_Mario"), msg.getFileNames());
+        assertEquals(Arrays.asList("ba7816bf8f01cfea", null), msg.getContentHashes());
+        assertEquals(0xabcL, msg.getQueryId());
+
+        byte[] unhashed = "0034 SEROK 1 10.0.0.1 8080 3 Tintin".getBytes(StandardCharsets.US_ASCII);
+        msg = (SearchOk) MessageDecoder.decode(unhashed, unhashed.length);
+        assertEquals(Collections.singletonList(null), msg.getContentHashes());
+    }
+
+    @Test
+    public void decodeJoinMsgFromBuffer() throws ErroneousResponseException {
+        ByteBuffer buffer = direct("0025 JOIN 127.0.0.1 45555\n");
+        MessageFrame frame = MessageDecoder.decode(buffer, new MessageFrame());
+        assertEquals(MessageType.JOIN, frame.type());
+        assertEquals(4, frame.tokenCount());
+        assertTrue(frame.isIpv4Token(2));
+        assertEquals(0x7f000001, frame.ipv4Token(2));
+        assertEquals(45555, frame.intToken(3));
+        assertEquals(0, buffer.position());
+
+        Join msg = (Join) MessageDecoder.toMessage(frame, null);
+        assertSame(EndpointRegistry.parse("127.0.0.1", 45555), msg.getEndpoint());
+    }
+
+    @Test
+    public void decodePingOkMsg() throws ErroneousResponseException {
+        byte[] data = "0060 PNGOK 2 10.0.0.1 5001 10.0.0.2:5002_10.0.0.3:5003_".getBytes(StandardCharsets.US_ASCII);
+        PingOk msg = (PingOk) MessageDecoder.decode(data, data.length);
+        assertEquals(MessageType.PNGOK, msg.getType());
+        assertEquals(2, msg.getRoutingList().size());
+        assertEquals("10.0.0.3", msg.getRoutingList().get(1).getIpAddress().getHostAddress());
+        assertEquals(5003, msg.getRoutingList().get(1).getUdpPort());
+    }
+
+    @Test
+    public void decodePingMsgsWithSummary() throws ErroneousResponseException {
+        BloomFilter[] summary = {BloomFilter.of(Collections.singleton("mario")), new BloomFilter()};
+        ByteBuffer buffer = ByteBuffer.allocate(2048);
+        MessageEncoder.encodePingOk(buffer, "10.0.0.1", 5001, Collections.emptyList(), RoutingSummary.encode(summary));
+        PingOk pingOk = (PingOk) MessageDecoder.decode(buffer.array(), buffer.position());
+        assertEquals(0, pingOk.getRoutingList().size());
+        assertArrayEquals(summary, pingOk.getSummary());
+
+        buffer.clear();
+        MessageEncoder.encodePing(buffer, "10.0.0.1", 5001, RoutingSummary.encode(summary));
+        Ping ping = (Ping) MessageDecoder.decode(buffer.array(), buffer.position());
+        assertSame(EndpointRegistry.parse("10.0.0.1", 5001), ping.getOrigin());
+        assertArrayEquals(summary, ping.getSummary());
+    }
+
+    @Test(expected = ErroneousResponseException.class)
+    public void decodeRegisterError() throws ErroneousResponseException {
+        byte[] data = "0015 REGOK 9998".getBytes(StandardCharsets.US_ASCII);
+        MessageDecoder.decode(data, data.length);
+    }
+
+    @Test
+    public void decodeNonMessage() {
+        MessageFrame frame = MessageDecoder.decode(direct("0004"), new MessageFrame());
+        assertEquals(MessageType.NONE, frame.type());
+        frame = MessageDecoder.decode(direct("0010 HELLO"), new MessageFrame());
+        assertEquals(MessageType.UNKNOWN, frame.type());
+        assertFalse(frame.isIpv4Token(1));
+        assertEquals(-1, frame.intToken(5));
+    }
+
+    @Test
+    public void releasedMessagesAreReused() throws ErroneousResponseException {
+        MessagePool pool = new MessagePool(4);
+        MessageFrame frame = MessageDecoder.decode(direct("0025 JOIN 127.0.0.1 45555"), new MessageFrame());
+        Join first = (Join) MessageDecoder.toMessage(frame, pool);
+        Join second = (Join) MessageDecoder.toMessage(frame, pool);
+        assertNotSame(first, second);
+
+        first.release();
+        first.release(); // has no effect
+        Join third = (Join) MessageDecoder.toMessage(frame, pool);
+        assertSame(first, third);
+        assertEquals(45555, third.getEndpoint().getPort());
+        assertNotSame(third, MessageDecoder.toMessage(frame, pool));
+    }
+
+    @Test
+    public void forwardedSearchLeavesQueryAsItIs() throws ErroneousResponseException {
+        byte[] data = "0045 SER 127.0.0.1 45555 Lord_of_the_rings 2".getBytes(StandardCharsets.US_ASCII);
+        Search query = (Search) MessageDecoder.decode(data, data.length);
+        Search forwarded = query.forwarded();
+        assertEquals(1, forwarded.getHops());
+        assertEquals(2, query.getHops());
+        assertEquals(query.getFileName(), forwarded.getFileName());
+    }
+
+    @Test
+    public void decodeDoesNotAllocate() {
+        java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (!(threads instanceof com.sun.management.ThreadMXBean)) {
+            return; // allocation counters are not available on this JVM
+        }
+        com.sun.management.ThreadMXBean allocation = (com.sun.management.ThreadMXBean) threads;
+        long threadId = Thread.currentThread().getId();
+
+        ByteBuffer buffer = direct("0047 SER 192.168.1.20 45555 Lord_of_the_rings 3");
+        MessageFrame frame = new MessageFrame();
+        long checksum = 0;
+        for (int i = 0; i < 20_000; i++) { // let the JIT settle
+            checksum += decode(buffer, frame);
+        }
+
+        long before = allocation.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < 100_000; i++) {
+            checksum += decode(buffer, frame);
+        }
+        long allocated = allocation.getThreadAllocatedBytes(threadId) - before;
+
+        assertTrue(checksum > 0);
+        assertTrue("decoding allocated " + allocated + " bytes", allocated < 1024);
+    }
+
+    private static long decode(ByteBuffer buffer, MessageFrame frame) {
+        MessageDecoder.decode(buffer, frame);
+        return frame.type().ordinal() + (frame.ipv4Token(2) & 0xffffffffL) + frame.intToken(3) + frame.intToken(5);
+    }
+}
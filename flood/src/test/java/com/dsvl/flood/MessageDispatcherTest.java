@@ -0,0 +1,72 @@
+package com.dsvl.flood;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class MessageDispatcherTest {
+
+    private final MessageDispatcher dispatcher = new MessageDispatcher(1, 1, 1, 1, 1, 1);
+
+    @Before
+    public void setUp() {
+        dispatcher.start();
+    }
+
+    @After
+    public void tearDown() {
+        dispatcher.shutdown();
+    }
+
+    private long stat(MessageDispatcher.MessageClass messageClass, String name) {
+        return dispatcher.getStats().get(messageClass.name().toLowerCase()).get(name);
+    }
+
+    @Test
+    public void saturatedExecutorsDropAndCount() throws Exception {
+        for (MessageDispatcher.MessageClass messageClass : MessageDispatcher.MessageClass.values()) {
+            CountDownLatch release = new CountDownLatch(1);
+            CountDownLatch started = new CountDownLatch(1);
+            dispatcher.dispatch(messageClass, () -> {
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            assertTrue(started.await(1, TimeUnit.SECONDS));
+            CompletableFuture<String> queued = new CompletableFuture<>();
+            dispatcher.dispatch(messageClass, () -> queued.complete(Thread.currentThread().getName()));
+            AtomicBoolean ranOnCaller = new AtomicBoolean();
+            dispatcher.dispatch(messageClass, () -> ranOnCaller.set(true)); // neither running nor queued
+
+            assertFalse(ranOnCaller.get());
+            assertEquals(1, stat(messageClass, "queued"));
+            assertEquals(1, stat(messageClass, "rejected"));
+
+            release.countDown();
+            assertTrue(queued.get(1, TimeUnit.SECONDS).startsWith("dispatch-" + messageClass.name().toLowerCase()));
+            assertFalse(ranOnCaller.get());
+        }
+    }
+
+    @Test
+    public void failingHandlersDoNotStopTheExecutor() throws Exception {
+        dispatcher.dispatch(MessageDispatcher.MessageClass.CONTROL, () -> {
+            throw new IllegalStateException("broken handler");
+        });
+        CompletableFuture<Boolean> next = new CompletableFuture<>();
+        dispatcher.dispatch(MessageDispatcher.MessageClass.CONTROL, () -> next.complete(true));
+        assertTrue(next.get(1, TimeUnit.SECONDS));
+    }
+}
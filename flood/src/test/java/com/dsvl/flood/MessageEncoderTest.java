@@ -0,0 +1,50 @@
+package com.dsvl.flood;
+
+import org.junit.Test;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+
+public class MessageEncoderTest {
+
+    private final ByteBuffer buffer = ByteBuffer.allocate(1024);
+
+    private String written() {
+        return new String(buffer.array(), 0, buffer.position(), StandardCharsets.US_ASCII);
+    }
+
+    @Test
+    public void encodeSearchOk() {
+        // length SEROK no_files IP port hops filename1 filename2 ...
+        MessageEncoder.encodeSearchOk(buffer, 2, "10.0.0.1", 8080, 3, Arrays.asList("Lord of the rings", "Tintin"));
+        assertEquals("0053 SEROK 2 10.0.0.1 8080 3 Lord_of_the_rings Tintin", written());
+    }
+
+    @Test
+    public void encodePingOk() throws UnknownHostException {
+        // length PNGOK no_neighbours IP_address port_no IP_1:port_1_IP_2:port_2_
+        MessageEncoder.encodePingOk(buffer, "10.0.0.1", 5001, Arrays.asList(
+                new Neighbour(InetAddress.getByName("10.0.0.2"), 5002),
+                new Neighbour(InetAddress.getByName("10.0.0.3"), 5003)));
+        assertEquals("0055 PNGOK 2 10.0.0.1 5001 10.0.0.2:5002_10.0.0.3:5003_", written());
+    }
+
+    @Test
+    public void encodeValue() {
+        MessageEncoder.encodeValue(buffer, MessageType.JOINOK, 0);
+        assertEquals("0013 JOINOK 0", written());
+    }
+
+    @Test
+    public void encodeAfterAnotherMessage() {
+        MessageEncoder.encodeError(buffer);
+        MessageEncoder.encodeLeave(buffer, "127.0.0.1", 45555, Collections.emptyList());
+        assertEquals("0010 ERROR0026 LEAVE 127.0.0.1 45555", written());
+    }
+}
@@ -1,15 +1,27 @@
 package com.dsvl.flood;
 
+import com.dsvl.flood.message.Search;
+import com.dsvl.flood.service.impl.LeaveServiceImpl;
 import org.junit.Assert;
 import org.junit.Ignore;
 import org.junit.Test;
 
 import java.io.IOException;
 import java.net.*;
-import java.util.ArrayList;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 //@RunWith(SpringRunner.class)
 //@SpringBootTest
@@ -56,19 +68,12 @@ public class NodeTest {
     @Test
     @Ignore
     public void searchForExistingFileInTheNode() throws SocketException {
-        MessageObject msgObj = new MessageObject();
-
-        Node.latestSearchResults = new ArrayList<>();
-
         String ip = "127.0.0.1";
         int udpPort = Integer.parseInt("44444");
         String file_name = "Mario";
         String hops = "2";
         int hopss = Integer.parseInt(hops);
-        msgObj.setSearch_udp_Port(udpPort);
-        msgObj.setSearch_ip(ip);
-        msgObj.setFile_name(file_name);
-        msgObj.setHops(hopss);
+        Search msgObj = new Search(EndpointRegistry.parse(ip, udpPort), file_name, hopss);
 
         try {
             Node node = new Node("127.0.0.1", 55555, "DSVL", 8080, 44444);
@@ -80,19 +85,12 @@ public class NodeTest {
 
     @Test
     public void searchForNonExistingFileInTheNode() throws SocketException {
-        MessageObject msgObj = new MessageObject();
-
-        Node.latestSearchResults = new ArrayList<>();
-
         String ip = "127.0.0.1";
         int udpPort = Integer.parseInt("44444");
         String file_name = "Marioo";
         String hops = "2";
         int hopss = Integer.parseInt(hops);
-        msgObj.setSearch_udp_Port(udpPort);
-        msgObj.setSearch_ip(ip);
-        msgObj.setFile_name(file_name);
-        msgObj.setHops(hopss);
+        Search msgObj = new Search(EndpointRegistry.parse(ip, udpPort), file_name, hopss);
 
         try {
             Node node = new Node("127.0.0.1", 55555, "DSVL", 4500, 45555);
@@ -118,4 +116,84 @@ public class NodeTest {
             Assert.assertEquals("10.10.2.160", ip);
         }
     }
-}
\ No newline at end of file
+
+    @Test
+    public void duplicateJoinsAddThePeerOnce() throws Exception {
+        Node node = new Node("127.0.0.1", 55555, "DSVL", 4500, 45555);
+        Endpoint peer = EndpointRegistry.parse("10.0.0.1", 5001);
+        ExecutorService handlers = Executors.newFixedThreadPool(2);
+        try {
+            for (int i = 0; i < 50; i++) {
+                node.getNeighbours().clear();
+                CountDownLatch go = new CountDownLatch(1);
+                Callable<Boolean> join = () -> {
+                    go.await();
+                    return node.acceptJoin(peer);
+                };
+                Future<Boolean> first = handlers.submit(join);
+                Future<Boolean> second = handlers.submit(join);
+                go.countDown();
+                assertTrue(first.get() ^ second.get());
+                assertEquals(1, node.getNeighbours().size());
+            }
+        } finally {
+            handlers.shutdownNow();
+        }
+    }
+
+    /**
+     * A neighbour on the loopback interface that answers the first message it gets from its
+     * listening port, or never answers if {@code reply} is {@code null}
+     */
+    private static DatagramChannel neighbour(String reply) throws IOException {
+        DatagramChannel channel = DatagramChannel.open().bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        if (reply != null) {
+            UdpSender sender = new UdpSender(1);
+            sender.attachNodeChannel(channel);
+            Thread answering = new Thread(() -> {
+                try {
+                    ByteBuffer request = ByteBuffer.allocate(1024);
+                    InetSocketAddress from = (InetSocketAddress) channel.receive(request);
+                    sender.sendFromNodePort(reply, from.getAddress(), from.getPort());
+                } catch (IOException e) {
+                    // closed
+                } finally {
+                    sender.close();
+                }
+            });
+            answering.setDaemon(true);
+            answering.start();
+        }
+        return channel;
+    }
+
+    private static String key(DatagramChannel neighbour) throws IOException {
+        return "127.0.0.1:" + ((InetSocketAddress) neighbour.getLocalAddress()).getPort();
+    }
+
+    @Test
+    public void leavingReportsEveryNeighbour() throws IOException {
+        try (LoopbackNode udp = new LoopbackNode();
+             DatagramChannel informed = neighbour("0014 LEAVEOK 0");
+             DatagramChannel refused = neighbour("0016 LEAVEOK 9999");
+             DatagramChannel silent = neighbour(null)) {
+            Node node = new Node("127.0.0.1", 55555, "DSVL", 4500, udp.getPort());
+            node.setLeaveService(new LeaveServiceImpl());
+            node.setUnregisterService((bootstrap, bootstrapPort, address, port, name) ->
+                    CompletableFuture.completedFuture(true));
+            node.configureLeave(1000);
+            for (DatagramChannel neighbour : Arrays.asList(informed, refused, silent)) {
+                node.getNeighbours().add(new Neighbour(InetAddress.getLoopbackAddress(),
+                        ((InetSocketAddress) neighbour.getLocalAddress()).getPort()));
+            }
+
+            Map<String, String> report = node.leaveNetwork();
+            assertEquals(4, report.size());
+            assertEquals(Node.INFORMED, report.get("bootstrap-server"));
+            assertEquals(Node.INFORMED, report.get(key(informed)));
+            assertEquals(Node.NOT_ACKNOWLEDGED, report.get(key(refused)));
+            assertEquals(Node.TIMED_OUT, report.get(key(silent)));
+            assertTrue(node.getNeighbours().isEmpty());
+        }
+    }
+}
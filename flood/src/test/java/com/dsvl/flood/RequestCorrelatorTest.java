@@ -0,0 +1,90 @@
+package com.dsvl.flood;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class RequestCorrelatorTest {
+
+    private final RequestCorrelator correlator = new RequestCorrelator();
+
+    @After
+    public void tearDown() {
+        correlator.shutdown();
+    }
+
+    private static InetAddress address(String host) throws UnknownHostException {
+        return InetAddress.getByName(host);
+    }
+
+    /**
+     * Requests are dropped by the thread completing them, just after the caller may see the result
+     */
+    private void assertNothingPending() throws InterruptedException {
+        for (int i = 0; i < 100 && correlator.pendingKeys() > 0; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(0, correlator.pendingKeys());
+    }
+
+    @Test
+    public void completesTheRequestSentToTheSender() throws Exception {
+        CompletableFuture<String> first = correlator.expect("JOINOK", address("10.0.0.1"), 45555, 5000);
+        CompletableFuture<String> second = correlator.expect("JOINOK", address("10.0.0.1"), 45555, 5000);
+
+        assertFalse(correlator.complete("REGOK", address("10.0.0.1"), 45555, "0013 REGOK 0"));
+        assertTrue(correlator.complete("JOINOK", address("10.0.0.1"), 45555, "0013 JOINOK 0"));
+        assertEquals("0013 JOINOK 0", first.get(1, TimeUnit.SECONDS));
+        assertFalse(second.isDone());
+
+        assertTrue(correlator.complete("JOINOK", address("10.0.0.1"), 45555, "0016 JOINOK 9999"));
+        assertEquals("0016 JOINOK 9999", second.get(1, TimeUnit.SECONDS));
+        assertNothingPending();
+    }
+
+    @Test
+    public void ignoresResponsesFromOtherHosts() throws Exception {
+        CompletableFuture<String> response = correlator.expect("LEAVEOK", address("10.0.0.1"), 45555, 5000);
+
+        // same port, another node
+        assertFalse(correlator.complete("LEAVEOK", address("10.0.0.2"), 45555, "0014 LEAVEOK 0"));
+        assertFalse(correlator.complete("LEAVEOK", address("10.0.0.1"), 45556, "0014 LEAVEOK 0"));
+        assertFalse(response.isDone());
+    }
+
+    @Test
+    public void takesNoResponseFromAnotherPortOfThePeer() throws Exception {
+        CompletableFuture<String> response = correlator.expect("JOINOK", address("10.0.0.1"), 45555, 5000);
+
+        // sent through one of the peer's sending lanes instead of from the port the JOIN went to
+        assertFalse(correlator.complete("JOINOK", address("10.0.0.1"), 51234, "0013 JOINOK 0"));
+        assertFalse(response.isDone());
+
+        assertTrue(correlator.complete("JOINOK", address("10.0.0.1"), 45555, "0013 JOINOK 0"));
+        assertEquals("0013 JOINOK 0", response.get(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void timesOutUnansweredRequests() throws Exception {
+        CompletableFuture<String> response = correlator.expect("REGOK", address("10.0.0.1"), 55555, 50);
+        try {
+            response.get(1, TimeUnit.SECONDS);
+            fail("The request should have timed out");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof TimeoutException);
+        }
+        assertNothingPending();
+        assertFalse(correlator.complete("REGOK", address("10.0.0.1"), 55555, "0013 REGOK 0"));
+    }
+}
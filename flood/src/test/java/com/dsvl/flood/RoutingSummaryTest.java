@@ -0,0 +1,106 @@
+package com.dsvl.flood;
+
+import com.dsvl.flood.util.BloomFilter;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class RoutingSummaryTest {
+
+    private final Endpoint a = EndpointRegistry.parse("10.0.0.1", 5001);
+    private final Endpoint b = EndpointRegistry.parse("10.0.0.2", 5002);
+    private final List<Neighbour> neighbours = Arrays.asList(new Neighbour(a), new Neighbour(b));
+
+    private static BloomFilter[] levels(String... words) {
+        BloomFilter[] levels = new BloomFilter[words.length];
+        for (int i = 0; i < words.length; i++) {
+            levels[i] = BloomFilter.of(Collections.singleton(words[i]));
+        }
+        return levels;
+    }
+
+    @Test
+    public void summariesSurviveTheWire() {
+        BloomFilter[] levels = levels("mario", "tintin", "rings");
+        assertArrayEquals(levels, RoutingSummary.decode(RoutingSummary.encode(levels)));
+        assertNull(RoutingSummary.decode("not a filter"));
+        assertNull(BloomFilter.decode("AAAA"));
+    }
+
+    @Test
+    public void prunesNeighboursThatCannotMatch() {
+        RoutingSummary routing = new RoutingSummary(true, 4, 90_000);
+        routing.update(a, levels("mario", "tintin"));
+
+        assertTrue(routing.mayMatch(a, FileIndex.tokens("Mario"), 1));
+        assertFalse(routing.mayMatch(a, FileIndex.tokens("Tintin"), 1));
+        assertTrue(routing.mayMatch(a, FileIndex.tokens("Tintin"), 2));
+        assertFalse(routing.mayMatch(a, FileIndex.tokens("Lord of the Rings"), 2));
+        assertEquals(2L, (long) routing.getStats().get("pruned"));
+    }
+
+    @Test
+    public void forwardsWhenNothingIsKnown() {
+        RoutingSummary routing = new RoutingSummary(true, 4, 90_000);
+        routing.update(a, levels("mario"));
+
+        // no summary from b, and a's summary does not reach 3 hops
+        assertTrue(routing.mayMatch(b, FileIndex.tokens("Tintin"), 1));
+        assertTrue(routing.mayMatch(a, FileIndex.tokens("Tintin"), 3));
+
+        RoutingSummary disabled = new RoutingSummary(false, 4, 90_000);
+        disabled.update(a, levels("mario"));
+        assertTrue(disabled.mayMatch(a, FileIndex.tokens("Tintin"), 1));
+    }
+
+    @Test
+    public void summaryForANeighbourLeavesItsOwnSummaryOut() {
+        RoutingSummary routing = new RoutingSummary(true, 3, 90_000);
+        routing.setLocalWords(() -> FileIndex.tokens("Super Mario"));
+        routing.update(a, levels("tintin", "rings"));
+        routing.update(b, levels("dummies"));
+
+        BloomFilter[] forA = routing.summaryFor(a, neighbours);
+        // level 2 would need b's level 1, which b did not send
+        assertEquals(2, forA.length);
+        assertTrue(forA[0].mightContain("mario"));
+        assertTrue(forA[1].mightContain("dummies"));
+        assertFalse(forA[1].mightContain("tintin"));
+
+        BloomFilter[] forB = routing.summaryFor(b, neighbours);
+        assertEquals(3, forB.length);
+        assertTrue(forB[1].mightContain("tintin"));
+        assertTrue(forB[2].mightContain("rings"));
+    }
+
+    @Test
+    public void ownWordsAreRebuiltOnlyAfterAChange() {
+        RoutingSummary routing = new RoutingSummary(true, 1, 90_000);
+        Set<String> words = new HashSet<>(FileIndex.tokens("Super Mario"));
+        AtomicInteger reads = new AtomicInteger();
+        routing.setLocalWords(() -> {
+            reads.incrementAndGet();
+            return words;
+        });
+
+        assertTrue(routing.summaryFor(a, neighbours)[0].mightContain("mario"));
+        routing.summaryFor(b, neighbours);
+        assertEquals(1, reads.get());
+
+        words.addAll(FileIndex.tokens("Tintin"));
+        routing.localWordsChanged();
+        assertTrue(routing.summaryFor(a, neighbours)[0].mightContain("tintin"));
+        assertEquals(2, reads.get());
+    }
+}
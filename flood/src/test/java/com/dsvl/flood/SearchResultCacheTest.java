@@ -0,0 +1,54 @@
+package com.dsvl.flood;
+
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class SearchResultCacheTest {
+
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    @Test
+    public void equivalentQueriesShareAnEntry() {
+        SearchResultCache<List<String>> cache = new SearchResultCache<>(16, 30_000);
+        List<String> results = Collections.singletonList("Super Mario");
+        cache.put("Super Mario", 5, results, 0);
+
+        assertSame(results, cache.get("mario_super", 5, SECOND));
+        assertSame(results, cache.get("super mario MARIO", 5, SECOND));
+        assertNull(cache.get("Super Mario", 4, SECOND)); // sent with other hops
+        assertNull(cache.get("Super Mario", 5, 31 * SECOND)); // expired
+
+        assertEquals(2L, (long) cache.getStats().get("hits"));
+        assertEquals(2L, (long) cache.getStats().get("misses"));
+    }
+
+    @Test
+    public void resultsOfAnOlderCatalogAreNotCached() {
+        SearchResultCache<List<String>> cache = new SearchResultCache<>(16, 30_000);
+        long generation = cache.generation();
+        cache.invalidate(); // the catalog changed while the query was searched
+        cache.putIfCurrent("Tintin", SearchResultCache.ANY_HOPS, Collections.singletonList("Tintin"), generation);
+        assertNull(cache.get("Tintin", SearchResultCache.ANY_HOPS));
+
+        cache.putIfCurrent("Tintin", SearchResultCache.ANY_HOPS, Collections.emptyList(), cache.generation());
+        assertEquals(0, cache.get("Tintin", SearchResultCache.ANY_HOPS).size());
+    }
+
+    @Test
+    public void leastRecentlyUsedEntryIsDropped() {
+        SearchResultCache<List<String>> cache = new SearchResultCache<>(2, 30_000);
+        cache.put("a", 1, Collections.emptyList(), 0);
+        cache.put("b", 1, Collections.emptyList(), 0);
+        cache.get("a", 1, 0);
+        cache.put("c", 1, Collections.emptyList(), 0);
+        assertNull(cache.get("b", 1, 0));
+        assertEquals(0, cache.get("a", 1, 0).size());
+    }
+}
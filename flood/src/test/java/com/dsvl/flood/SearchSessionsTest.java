@@ -0,0 +1,88 @@
+package com.dsvl.flood;
+
+import com.dsvl.flood.message.Search;
+import com.dsvl.flood.model.Result;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class SearchSessionsTest {
+
+    private static Result result(String node, String fileName) {
+        return new Result(fileName, "http://" + node + ":8080/file/" + fileName, 1);
+    }
+
+    @Test
+    public void resultsGoToTheSearchOfTheirQuery() {
+        SearchSessions sessions = new SearchSessions(8, 60_000, 10);
+        SearchSession mario = sessions.create("Mario");
+        SearchSession tintin = sessions.create("Tintin");
+        sessions.attach(1, mario);
+        sessions.attach(2, mario); // a second ring of the same search
+        sessions.attach(3, tintin);
+
+        assertTrue(sessions.addResult(1, result("10.0.0.1", "Super_Mario")));
+        assertFalse(sessions.addResult(2, result("10.0.0.1", "Super_Mario"))); // the same node answered again
+        assertTrue(sessions.addResult(3, result("10.0.0.1", "Adventures_of_Tintin")));
+        assertTrue(sessions.addResult(Search.NO_ID, result("10.0.0.2", "Tintin"))); // to the latest search
+        assertFalse(sessions.addResult(4, result("10.0.0.2", "Tintin"))); // no such query
+
+        assertEquals(1, mario.size());
+        assertEquals(2, tintin.size());
+        assertSame(tintin, sessions.latest());
+        assertSame(mario, sessions.get(mario.getId()));
+    }
+
+    @Test
+    public void sessionsAreBounded() {
+        SearchSessions sessions = new SearchSessions(2, 60_000, 2);
+        long now = System.nanoTime();
+        SearchSession first = sessions.create("a", now);
+        sessions.attach(1, first);
+        assertTrue(first.add(result("10.0.0.1", "a")));
+        assertTrue(first.add(result("10.0.0.2", "a")));
+        assertFalse(first.add(result("10.0.0.3", "a"))); // full
+
+        sessions.create("b", now);
+        SearchSession third = sessions.create("c", now);
+        assertNull(sessions.get(first.getId()));
+        assertNull(sessions.forQuery(1));
+
+        sessions.create("d", now + TimeUnit.MINUTES.toNanos(2));
+        assertNull(sessions.get(third.getId())); // expired
+    }
+
+    @Test
+    public void latestSearchExpires() {
+        SearchSessions sessions = new SearchSessions(8, 60_000, 10);
+        sessions.create("Tintin", System.nanoTime() - TimeUnit.MINUTES.toNanos(2));
+
+        assertNull(sessions.latest());
+        assertFalse(sessions.addResult(Search.NO_ID, result("10.0.0.1", "Tintin")));
+    }
+
+    @Test
+    public void listenersAreGivenEveryNewResult() {
+        SearchSession session = new SearchSessions(8, 60_000, 10).create("Tintin");
+        List<Result> streamed = new ArrayList<>();
+        Consumer<Result> listener = streamed::add;
+        session.add(result("10.0.0.1", "Tintin"));
+        session.addListener(listener);
+        session.add(result("10.0.0.2", "Tintin"));
+        session.add(result("10.0.0.2", "Tintin"));
+        session.removeListener(listener);
+        session.add(result("10.0.0.3", "Tintin"));
+
+        assertEquals(1, streamed.size());
+        assertEquals("http://10.0.0.2:8080/file/Tintin", streamed.get(0).getUrl());
+    }
+}
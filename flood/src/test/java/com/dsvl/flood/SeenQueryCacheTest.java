@@ -0,0 +1,38 @@
+package com.dsvl.flood;
+
+import com.dsvl.flood.message.Search;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SeenQueryCacheTest {
+
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    @Test
+    public void dropsCopiesOfAQuery() {
+        SeenQueryCache cache = new SeenQueryCache(16, 30_000);
+        assertTrue(cache.firstSeen(42, 0));
+        assertFalse(cache.firstSeen(42, SECOND));
+        assertTrue(cache.firstSeen(43, SECOND));
+        assertTrue(cache.firstSeen(Search.NO_ID, SECOND));
+        assertTrue(cache.firstSeen(Search.NO_ID, SECOND));
+        assertEquals(1L, (long) cache.getStats().get("duplicatesDropped"));
+    }
+
+    @Test
+    public void forgetsOldQueries() {
+        SeenQueryCache cache = new SeenQueryCache(2, 30_000);
+        cache.firstSeen(1, 0);
+        cache.firstSeen(2, 0);
+        cache.firstSeen(3, 0);
+        assertTrue(cache.firstSeen(1, 0)); // evicted by 3, the oldest goes first
+
+        assertFalse(cache.firstSeen(3, 30 * SECOND));
+        assertTrue(cache.firstSeen(3, 31 * SECOND));
+    }
+}
@@ -0,0 +1,103 @@
+package com.dsvl.flood;
+
+import com.dsvl.flood.util.BufferPool;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class UdpReceiverTest {
+
+    private final BufferPool pool = new BufferPool(2, 2048);
+    private final BlockingQueue<String> handled = new LinkedBlockingQueue<>();
+    private UdpReceiver receiver;
+    private DatagramSocket peer;
+
+    @Before
+    public void setUp() throws IOException {
+        receiver = new UdpReceiver(0, pool, 4);
+        peer = new DatagramSocket(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        Thread receiving = new Thread(() -> {
+            try {
+                receiver.receiveLoop(() -> false);
+            } catch (IOException e) {
+                // closed
+            }
+        }, "test-udp-receiver");
+        receiving.setDaemon(true);
+        receiving.start();
+        Thread handling = new Thread(() -> receiver.handleLoop(packet -> {
+            ByteBuffer data = packet.getData();
+            byte[] bytes = new byte[data.remaining()];
+            data.get(bytes);
+            String text = new String(bytes, StandardCharsets.UTF_8);
+            if (text.startsWith("bad")) {
+                throw new IllegalArgumentException(text);
+            }
+            handled.add(text);
+        }), "test-udp-handler");
+        handling.setDaemon(true);
+        handling.start();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        peer.close();
+        receiver.close();
+    }
+
+    private void send(String text) throws IOException {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        peer.send(new DatagramPacket(bytes, bytes.length, InetAddress.getLoopbackAddress(),
+                ((InetSocketAddress) receiver.getChannel().getLocalAddress()).getPort()));
+    }
+
+    @Test
+    public void handlesMorePacketsThanThePoolHoldsAndSurvivesFailingHandlers() throws Exception {
+        for (int i = 0; i < 6; i++) {
+            send("bad " + i);
+            send("good " + i);
+            assertEquals("good " + i, handled.poll(5, TimeUnit.SECONDS));
+        }
+        assertEquals(12, receiver.getReceivedCount());
+        assertEquals(0, receiver.getDroppedCount());
+
+        // every buffer went back to the pool, so twelve packets got by with two buffers
+        long deadline = System.currentTimeMillis() + 5000;
+        while (pool.available() < 2 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(2, pool.available());
+    }
+
+    @Test
+    public void poolHandsOutItsOwnBuffersOnly() {
+        BufferPool small = new BufferPool(1, 64);
+        ByteBuffer buffer = small.acquire();
+        assertNull(small.acquire());
+
+        small.release(ByteBuffer.allocate(64)); // not one of ours
+        assertNull(small.acquire());
+
+        buffer.put((byte) 1);
+        small.release(buffer);
+        ByteBuffer again = small.acquire();
+        assertSame(buffer, again);
+        assertTrue(again.position() == 0 && again.remaining() == 64);
+    }
+}
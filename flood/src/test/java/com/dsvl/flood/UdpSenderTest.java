@@ -0,0 +1,85 @@
+package com.dsvl.flood;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.channels.DatagramChannel;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class UdpSenderTest {
+
+    private final InetAddress loopback = InetAddress.getLoopbackAddress();
+    private DatagramSocket peer;
+    private DatagramChannel nodeChannel;
+    private UdpSender sender;
+
+    @Before
+    public void setUp() throws IOException {
+        peer = new DatagramSocket(new InetSocketAddress(loopback, 0));
+        peer.setSoTimeout(2000);
+        nodeChannel = DatagramChannel.open().bind(new InetSocketAddress(loopback, 0));
+        sender = new UdpSender(2);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        sender.close();
+        nodeChannel.close();
+        peer.close();
+    }
+
+    private DatagramPacket receive() throws IOException {
+        DatagramPacket packet = new DatagramPacket(new byte[1024], 1024);
+        peer.receive(packet);
+        return packet;
+    }
+
+    private static String text(DatagramPacket packet) {
+        return new String(packet.getData(), packet.getOffset(), packet.getLength(), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void sendsThroughTheLanes() throws IOException {
+        assertTrue(sender.send("0013 JOINOK 0", loopback, peer.getLocalPort()));
+        assertEquals("0013 JOINOK 0", text(receive()));
+
+        // the next lane, encoded in place
+        String sent = sender.send(buffer -> MessageEncoder.encodeValue(buffer, MessageType.WALKOK, 0),
+                loopback, peer.getLocalPort());
+        DatagramPacket packet = receive();
+        assertEquals(sent, text(packet));
+        assertNotEquals(nodePort(), packet.getPort());
+    }
+
+    @Test
+    public void repliesComeFromTheNodePort() throws IOException {
+        assertFalse(sender.sendFromNodePort("0013 JOINOK 0", loopback, peer.getLocalPort())); // not attached yet
+        sender.attachNodeChannel(nodeChannel);
+
+        assertTrue(sender.sendFromNodePort("0013 JOINOK 0", loopback, peer.getLocalPort()));
+        DatagramPacket packet = receive();
+        assertEquals("0013 JOINOK 0", text(packet));
+        assertEquals(nodePort(), packet.getPort());
+
+        String sent = sender.sendFromNodePort(buffer -> MessageEncoder.encodeValue(buffer, MessageType.WALKOK, 1),
+                loopback, peer.getLocalPort());
+        packet = receive();
+        assertEquals(sent, text(packet));
+        assertEquals(nodePort(), packet.getPort());
+    }
+
+    private int nodePort() throws IOException {
+        return ((InetSocketAddress) nodeChannel.getLocalAddress()).getPort();
+    }
+}
@@ -0,0 +1,109 @@
+package com.dsvl.flood;
+
+import com.dsvl.flood.util.TokenBucket;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class UploadSchedulerTest {
+
+    private final ExecutorService peers = Executors.newCachedThreadPool();
+
+    @After
+    public void tearDown() {
+        peers.shutdownNow();
+    }
+
+    private CompletableFuture<UploadScheduler.Upload> acquireLater(UploadScheduler scheduler, String peer) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return scheduler.acquire(peer);
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+        }, peers);
+    }
+
+    private static void awaitQueued(UploadScheduler scheduler, long queued) throws InterruptedException {
+        for (int i = 0; i < 200 && scheduler.getStats().get("queued") != queued; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(queued, (long) scheduler.getStats().get("queued"));
+    }
+
+    @Test
+    public void freedSlotsGoToThePeerWithFewestUploads() throws Exception {
+        UploadScheduler scheduler = new UploadScheduler(2, 8, 5000, 0, 0, 256);
+        UploadScheduler.Upload first = scheduler.acquire("10.0.0.1");
+        scheduler.acquire("10.0.0.1");
+
+        CompletableFuture<UploadScheduler.Upload> third = acquireLater(scheduler, "10.0.0.1");
+        awaitQueued(scheduler, 1);
+        CompletableFuture<UploadScheduler.Upload> other = acquireLater(scheduler, "10.0.0.2");
+        awaitQueued(scheduler, 2);
+
+        scheduler.release(first);
+        assertEquals("10.0.0.2", other.get(1, TimeUnit.SECONDS).getPeer());
+        assertFalse(third.isDone());
+
+        scheduler.release(first); // a second release does not free another slot
+        assertFalse(third.isDone());
+        scheduler.release(other.get());
+        assertNotNull(third.get(1, TimeUnit.SECONDS));
+        assertEquals(2L, (long) scheduler.getStats().get("active"));
+    }
+
+    @Test
+    public void turnsRequestsAwayWhenNoSlotIsFreed() throws Exception {
+        UploadScheduler scheduler = new UploadScheduler(1, 1, 500, 0, 0, 256);
+        scheduler.acquire("10.0.0.1");
+
+        CompletableFuture<UploadScheduler.Upload> waiting = acquireLater(scheduler, "10.0.0.2");
+        awaitQueued(scheduler, 1);
+        assertNull(scheduler.acquire("10.0.0.3")); // the queue is full
+        assertNull(waiting.get(1, TimeUnit.SECONDS));
+
+        assertEquals(1L, (long) scheduler.getStats().get("rejected"));
+        assertEquals(1L, (long) scheduler.getStats().get("timedOut"));
+        assertEquals(0L, (long) scheduler.getStats().get("queued"));
+    }
+
+    @Test
+    public void peersKeepTheirBucketUntilItRefills() throws Exception {
+        UploadScheduler scheduler = new UploadScheduler(0, 8, 5000, 0, 1, 1);
+        UploadScheduler.Upload upload = scheduler.acquire("10.0.0.1");
+        upload.throttle(1024);
+        scheduler.release(upload);
+        assertEquals(0L, (long) scheduler.getStats().get("throttledMillis"));
+
+        // reconnecting does not give the peer a fresh burst
+        upload = scheduler.acquire("10.0.0.1");
+        upload.throttle(100);
+        scheduler.release(upload);
+        assertTrue(scheduler.getStats().get("throttledMillis") > 0);
+    }
+
+    @Test
+    public void bucketsRunIntoDebtAndRefill() {
+        TokenBucket bucket = new TokenBucket(1000, 1000);
+        long now = System.nanoTime();
+
+        assertEquals(0, bucket.take(1000, now));
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(500), bucket.take(500, now));
+        assertEquals(0, bucket.take(500, now + TimeUnit.SECONDS.toNanos(1)));
+        assertEquals(0, new TokenBucket(0, 1).take(Long.MAX_VALUE / 2, now));
+
+        assertFalse(bucket.isFull(now + TimeUnit.SECONDS.toNanos(1)));
+        assertTrue(bucket.isFull(now + TimeUnit.SECONDS.toNanos(2)));
+    }
+}
@@ -1,13 +1,80 @@
 package com.dsvl.flood.controller;
 
+import com.dsvl.flood.ContentDigest;
+import com.dsvl.flood.service.ContentService;
+import com.dsvl.flood.service.LogRepository;
+import org.junit.Before;
 import org.junit.Test;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
 
 import java.io.*;
+import java.lang.reflect.Proxy;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 
 public class FileControllerTest {
 
+    private final byte[] content = new byte[1000];
+    private Path file;
+    private MockMvc mvc;
+
+    @Before
+    public void setUp() throws IOException {
+        new Random(7).nextBytes(content);
+        file = Files.createTempDirectory("flood-files").resolve("movie");
+        Files.write(file, content);
+        ContentDigest digest = ContentDigest.compute(file);
+
+        FileController controller = new FileController();
+        controller.setLogRepository((LogRepository) Proxy.newProxyInstance(LogRepository.class.getClassLoader(),
+                new Class<?>[]{LogRepository.class}, (proxy, method, args) -> null));
+        controller.setContentService(new ContentService() {
+            @Override
+            public Path find(String fileName) {
+                return fileName.equals("movie") ? file : null;
+            }
+
+            @Override
+            public ContentDigest digest(Path path) {
+                return digest;
+            }
+
+            @Override
+            public ContentDigest knownDigest(String fileName) {
+                return digest;
+            }
+
+            @Override
+            public Path newPartFile() {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public Path store(Path part, String fileName) {
+                throw new UnsupportedOperationException();
+            }
+        });
+        mvc = MockMvcBuilders.standaloneSetup(controller).build();
+    }
+
+    private MockHttpServletResponse download(MockHttpServletRequestBuilder request) throws Exception {
+        return mvc.perform(request).andReturn().getResponse();
+    }
+
+    private String eTag() throws IOException {
+        return '"' + ContentDigest.compute(file).getHash() + '"';
+    }
+
     @Test
     public void createFileOnTheFly() throws IOException {
         String toWrite = "Hello";
@@ -21,4 +88,64 @@ public class FileControllerTest {
         reader.close();
     }
 
-}
\ No newline at end of file
+    @Test
+    public void wholeFileWithItsValidators() throws Exception {
+        MockHttpServletResponse response = download(get("/file/{fileName}", "movie"));
+        assertEquals(200, response.getStatus());
+        assertEquals(eTag(), response.getHeader("ETag"));
+        assertEquals("bytes", response.getHeader("Accept-Ranges"));
+        assertArrayEquals(content, response.getContentAsByteArray());
+
+        assertEquals(404, download(get("/file/{fileName}", "missing")).getStatus());
+    }
+
+    @Test
+    public void rangeIsPartialContent() throws Exception {
+        MockHttpServletResponse response = download(get("/file/{fileName}", "movie").header("Range", "bytes=100-199"));
+        assertEquals(206, response.getStatus());
+        assertEquals("bytes 100-199/1000", response.getHeader("Content-Range"));
+        assertArrayEquals(Arrays.copyOfRange(content, 100, 200), response.getContentAsByteArray());
+
+        // a matching If-Range still gets the range
+        response = download(get("/file/{fileName}", "movie").header("Range", "bytes=-10").header("If-Range", eTag()));
+        assertEquals(206, response.getStatus());
+        assertArrayEquals(Arrays.copyOfRange(content, 990, 1000), response.getContentAsByteArray());
+    }
+
+    @Test
+    public void severalRangesAreMultipart() throws Exception {
+        MockHttpServletResponse response = download(get("/file/{fileName}", "movie").header("Range", "bytes=0-9,500-509"));
+        assertEquals(206, response.getStatus());
+        assertTrue(response.getContentType().startsWith("multipart/byteranges"));
+        String body = new String(response.getContentAsByteArray(), "ISO-8859-1");
+        assertTrue(body.contains("Content-Range: bytes 0-9/1000"));
+        assertTrue(body.contains("Content-Range: bytes 500-509/1000"));
+        assertTrue(body.contains(new String(Arrays.copyOfRange(content, 500, 510), "ISO-8859-1")));
+    }
+
+    @Test
+    public void ifRangeMismatchSendsTheWholeFile() throws Exception {
+        MockHttpServletResponse response = download(get("/file/{fileName}", "movie")
+                .header("Range", "bytes=100-199").header("If-Range", "\"an-older-version\""));
+        assertEquals(200, response.getStatus());
+        assertEquals(null, response.getHeader("Content-Range"));
+        assertArrayEquals(content, response.getContentAsByteArray());
+    }
+
+    @Test
+    public void tooManyRangesSendTheWholeFile() throws Exception {
+        StringBuilder ranges = new StringBuilder("bytes=0-0");
+        for (int i = 1; i <= 16; i++) { // one more than FileController.MAX_RANGES
+            ranges.append(',').append(i * 10).append('-').append(i * 10 + 5);
+        }
+        MockHttpServletResponse response = download(get("/file/{fileName}", "movie").header("Range", ranges.toString()));
+        assertEquals(200, response.getStatus());
+        assertArrayEquals(content, response.getContentAsByteArray());
+    }
+
+    @Test
+    public void rangeOutsideTheFileIsNotSatisfiable() throws Exception {
+        MockHttpServletResponse response = download(get("/file/{fileName}", "movie").header("Range", "bytes=5000-"));
+        assertEquals(416, response.getStatus());
+    }
+}
@@ -0,0 +1,127 @@
+package com.dsvl.flood.service.impl;
+
+import com.dsvl.flood.ContentDigest;
+import com.dsvl.flood.File;
+import com.dsvl.flood.Node;
+import com.dsvl.flood.RoutingSummary;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ContentServiceImplTest {
+
+    private Path root;
+    private Node node;
+
+    @Before
+    public void setUp() throws IOException {
+        root = Files.createTempDirectory("content");
+        node = new Node("127.0.0.1", 55555, "DSVL", 4500, 45555);
+        node.setRoutingSummary(new RoutingSummary(true, 4, 90_000));
+    }
+
+    @Test
+    public void servesCatalogFilesFromTheRoot() throws IOException {
+        Files.write(root.resolve("Super Mario"), "mario".getBytes(StandardCharsets.UTF_8));
+        ContentServiceImpl content = new ContentServiceImpl(root.toString(), false, 1);
+        content.setNode(node);
+
+        assertEquals(root.resolve("Super Mario"), content.find("Super Mario"));
+        assertNull(content.find("Adventures of Tintin")); // in the catalog but not on disk
+        assertNull(content.find("Super Mario 3")); // on disk would not matter, not in the catalog
+    }
+
+    @Test
+    public void createsPlaceholdersOnce() throws IOException {
+        ContentServiceImpl content = new ContentServiceImpl(root.toString(), true, 1);
+        content.setNode(node);
+
+        Path tintin = content.find("Adventures of Tintin");
+        assertTrue(Files.isRegularFile(tintin));
+        Files.write(tintin, "tintin".getBytes(StandardCharsets.UTF_8));
+        assertEquals("tintin", new String(Files.readAllBytes(content.find("Adventures of Tintin")), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void neverStoresOverAnExistingFile() throws IOException {
+        Path mario = Files.write(root.resolve("Super Mario"), "mario".getBytes(StandardCharsets.UTF_8));
+        ContentServiceImpl content = new ContentServiceImpl(root.toString(), true, 1);
+        content.setNode(node);
+
+        Path part = Files.write(content.newPartFile(), "other".getBytes(StandardCharsets.UTF_8));
+        try {
+            content.store(part, "Super Mario");
+            fail("stored over an existing file");
+        } catch (FileAlreadyExistsException e) {
+            assertEquals("mario", new String(Files.readAllBytes(mario), StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    public void hashesChangeWithTheContent() throws IOException {
+        Path mario = Files.write(root.resolve("Super Mario"), "abc".getBytes(StandardCharsets.UTF_8));
+        ContentServiceImpl content = new ContentServiceImpl(root.toString(), false, 1);
+        content.setNode(node);
+
+        String hash = content.digest(mario).getHash();
+        assertEquals("ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad", hash);
+        assertEquals(hash, content.digest(mario).getHash());
+        Files.write(mario, "abcd".getBytes(StandardCharsets.UTF_8));
+        assertEquals("88d4266fd4e6338d13b845fcf289579d209c897823b9217da3e161936f031589", content.digest(mario).getHash());
+    }
+
+    @Test
+    public void savesDigestsAndChecksChunks() throws Exception {
+        byte[] bytes = new byte[2 * ContentDigest.CHUNK_SIZE + 100];
+        new Random(7).nextBytes(bytes);
+        Path mario = Files.write(root.resolve("Super Mario"), bytes);
+        ContentServiceImpl content = new ContentServiceImpl(root.toString(), false, 1);
+        content.setNode(node);
+
+        ContentDigest digest = content.digest(mario);
+        assertEquals(digest, content.knownDigest("Super Mario"));
+        assertEquals(3, digest.getChunkHashes().size());
+        assertEquals(digest.getShortHash(), digest.getHash().substring(0, ContentDigest.SHORT_HASH_LENGTH));
+        assertTrue(Files.isRegularFile(root.resolve(".digests").resolve("Super Mario")));
+
+        // read back after a restart, as long as the file has not changed
+        ContentServiceImpl restarted = new ContentServiceImpl(root.toString(), false, 1);
+        restarted.setNode(node);
+        ContentDigest saved = restarted.digest(mario);
+        assertEquals(digest.getHash(), saved.getHash());
+        assertEquals(digest.getRoot(), saved.getRoot());
+        assertEquals(digest.getRoot(), ContentDigest.of(bytes.length, digest.getHash(), digest.getChunkHashes()).getRoot());
+
+        ByteBuffer tail = ByteBuffer.wrap(bytes, ContentDigest.CHUNK_SIZE, ContentDigest.CHUNK_SIZE + 100).slice();
+        assertTrue(saved.matches(ContentDigest.CHUNK_SIZE, tail));
+        bytes[bytes.length - 1]++;
+        assertFalse(saved.matches(ContentDigest.CHUNK_SIZE, tail));
+        assertFalse(saved.matches(1, tail));
+    }
+
+    @Test
+    public void staysInsideTheRoot() throws IOException {
+        Files.write(root.resolveSibling("secret"), "secret".getBytes(StandardCharsets.UTF_8));
+        node.addFiles(Arrays.asList(new File("../secret"), new File("sub/file")));
+        ContentServiceImpl content = new ContentServiceImpl(root.toString(), true, 1);
+        content.setNode(node);
+
+        assertNull(content.find("../secret"));
+        assertNull(content.find("sub/file"));
+        assertFalse(Files.exists(root.resolve("sub")));
+    }
+}
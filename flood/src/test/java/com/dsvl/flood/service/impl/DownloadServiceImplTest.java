@@ -0,0 +1,203 @@
+package com.dsvl.flood.service.impl;
+
+import com.dsvl.flood.ContentDigest;
+import com.dsvl.flood.Download;
+import com.dsvl.flood.Node;
+import com.dsvl.flood.RoutingSummary;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+
+public class DownloadServiceImplTest {
+
+    private final byte[] content = new byte[3 * ContentDigest.CHUNK_SIZE + 512];
+    private final byte[] otherContent = new byte[100];
+    private HttpServer server;
+    private Path root;
+    private Node node;
+    private DownloadServiceImpl downloads;
+
+    @Before
+    public void setUp() throws IOException {
+        new Random(42).nextBytes(content);
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/good/", exchange -> serve(exchange, content, false));
+        server.createContext("/other/", exchange -> serve(exchange, otherContent, false));
+        server.createContext("/corrupt/", exchange -> serve(exchange, content, true));
+        server.createContext("/flaky/", exchange -> {
+            // answers the probe, then fails every chunk
+            if ("bytes=0-0".equals(exchange.getRequestHeaders().getFirst("Range"))) {
+                serve(exchange, content, false);
+            } else {
+                exchange.sendResponseHeaders(500, -1);
+                exchange.close();
+            }
+        });
+        AtomicInteger hashing = new AtomicInteger(2);
+        server.createContext("/hashing/", exchange -> {
+            // like a node that has not hashed the file yet, the first probes get it without an ETag
+            if (hashing.getAndDecrement() > 0) {
+                exchange.getResponseHeaders().set("Retry-After", "1");
+                exchange.sendResponseHeaders(200, content.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(content);
+                }
+            } else {
+                serve(exchange, content, false);
+            }
+        });
+        server.createContext("/broken/", exchange -> {
+            exchange.sendResponseHeaders(500, -1);
+            exchange.close();
+        });
+        server.start();
+
+        root = Files.createTempDirectory("content");
+        node = new Node("127.0.0.1", 55555, "DSVL", 4500, 45555);
+        node.setRoutingSummary(new RoutingSummary(true, 4, 90_000));
+        ContentServiceImpl contentService = new ContentServiceImpl(root.toString(), false, 1);
+        contentService.setNode(node);
+        downloads = new DownloadServiceImpl(1, 2, 8, 2000, 3, 4, 32);
+        downloads.setContentService(contentService);
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+        downloads.stop();
+    }
+
+    /**
+     * Serves a single byte range of the content, or all of it when the If-Range does not match,
+     * and the chunk hashes of the content
+     *
+     * @param corrupt whether to damage every chunk but the first byte of the file
+     */
+    private static void serve(HttpExchange exchange, byte[] content, boolean corrupt) throws IOException {
+        String eTag = '"' + sha256(content) + '"';
+        ContentDigest digest = digest(content);
+        exchange.getResponseHeaders().set("ETag", eTag);
+        exchange.getResponseHeaders().set(ContentDigest.ROOT_HEADER, digest.getRoot());
+        if (exchange.getRequestURI().getPath().endsWith("/chunks")) {
+            byte[] hashes = String.join("\n", digest.getChunkHashes()).getBytes(StandardCharsets.US_ASCII);
+            exchange.sendResponseHeaders(200, hashes.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(hashes);
+            }
+            return;
+        }
+        String range = exchange.getRequestHeaders().getFirst("Range");
+        String ifRange = exchange.getRequestHeaders().getFirst("If-Range");
+        int start = 0;
+        int end = content.length - 1;
+        int status = 200;
+        if (range != null && (ifRange == null || ifRange.equals(eTag))) {
+            String[] bounds = range.substring("bytes=".length()).split("-");
+            start = Integer.parseInt(bounds[0]);
+            end = Math.min(Integer.parseInt(bounds[1]), content.length - 1);
+            exchange.getResponseHeaders().set("Content-Range", "bytes " + start + '-' + end + '/' + content.length);
+            status = 206;
+        }
+        byte[] body = Arrays.copyOfRange(content, start, end + 1);
+        if (corrupt && end > 0) {
+            body[body.length - 1]++;
+        }
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private static ContentDigest digest(byte[] content) throws IOException {
+        Path file = Files.createTempFile("content", null);
+        try {
+            return ContentDigest.compute(Files.write(file, content));
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    private static String sha256(byte[] content) {
+        try {
+            StringBuilder hex = new StringBuilder();
+            for (byte b : MessageDigest.getInstance("SHA-256").digest(content)) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private Download await(Download download) throws InterruptedException {
+        for (int i = 0; i < 200 && !download.isFinished(); i++) {
+            Thread.sleep(50);
+        }
+        return download;
+    }
+
+    private String url(String context) {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + context + "Tintin";
+    }
+
+    @Test
+    public void downloadsFromTheSourcesThatHaveTheFile() throws Exception {
+        Download download = await(downloads.download("Tintin",
+                Arrays.asList(url("/flaky/"), url("/good/"), url("/broken/"), url("/other/"), url("/missing/"),
+                        url("/good/"))));
+
+        assertEquals(Download.State.DONE, download.getState());
+        assertEquals(4, download.getProgress().get("chunks"));
+        assertEquals(2, download.getSources().size());
+        assertEquals(content.length, download.getSize());
+        assertArrayEquals(content, Files.readAllBytes(root.resolve("Tintin")));
+        assertNotNull(node.catalogName("Tintin"));
+        // the sources that do not answer and the one with another file of the same name are left out
+        assertEquals(3, download.getProgress().get("rejectedSources"));
+    }
+
+    @Test
+    public void fetchesDamagedChunksAgainFromAnotherSource() throws Exception {
+        Download download = await(downloads.download("Tintin", Arrays.asList(url("/corrupt/"), url("/good/"))));
+
+        assertEquals(Download.State.DONE, download.getState());
+        assertEquals(true, download.getProgress().get("chunksChecked"));
+        assertArrayEquals(content, Files.readAllBytes(root.resolve("Tintin")));
+    }
+
+    @Test
+    public void waitsForASourceThatIsStillHashing() throws Exception {
+        Download download = await(downloads.download("Tintin", Arrays.asList(url("/hashing/"))));
+
+        assertEquals(Download.State.DONE, download.getState());
+        assertEquals(1, download.getSources().size());
+        assertArrayEquals(content, Files.readAllBytes(root.resolve("Tintin")));
+    }
+
+    @Test
+    public void failsWhenNoSourceAnswers() throws Exception {
+        Download download = await(downloads.download("Tintin", Arrays.asList(url("/broken/"))));
+
+        assertEquals(Download.State.FAILED, download.getState());
+        assertFalse(Files.exists(root.resolve("Tintin")));
+    }
+}
@@ -0,0 +1,120 @@
+package com.dsvl.flood.service.impl;
+
+import com.dsvl.flood.EndpointRegistry;
+import com.dsvl.flood.LoopbackNode;
+import com.dsvl.flood.MessageEncoder;
+import com.dsvl.flood.Neighbour;
+import com.dsvl.flood.UdpSender;
+import com.dsvl.flood.message.Search;
+import org.junit.Test;
+
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.nio.channels.DatagramChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class RandomWalkStrategyTest {
+
+    private static Neighbour neighbour(String address) throws UnknownHostException {
+        return new Neighbour(InetAddress.getByName(address), 5000);
+    }
+
+    private static Search receivedFrom(String address) throws UnknownHostException {
+        Search query = new Search(EndpointRegistry.parse("10.0.0.9", 5000), "Tintin", 8, 42, Search.Forwarding.WALK);
+        query.setSender(InetAddress.getByName(address), 5000);
+        return query;
+    }
+
+    @Test
+    public void walkerDoesNotGoBackWhileItCanGoOn() throws UnknownHostException {
+        List<Neighbour> neighbours = Arrays.asList(neighbour("10.0.0.1"), neighbour("10.0.0.2"), neighbour("10.0.0.3"));
+        for (int i = 0; i < 50; i++) {
+            List<Neighbour> next = RandomWalkStrategy.pick(receivedFrom("10.0.0.1"), neighbours, 1);
+            assertEquals(1, next.size());
+            assertFalse(next.get(0).getIpAddress().getHostAddress().equals("10.0.0.1"));
+        }
+    }
+
+    @Test
+    public void walkerGoesBackFromADeadEnd() throws UnknownHostException {
+        List<Neighbour> next = RandomWalkStrategy.pick(receivedFrom("10.0.0.1"),
+                Collections.singletonList(neighbour("10.0.0.1")), 1);
+        assertEquals("10.0.0.1", next.get(0).getIpAddress().getHostAddress());
+    }
+
+    @Test
+    public void originSendsDistinctWalkers() throws UnknownHostException {
+        Search own = new Search(EndpointRegistry.parse("10.0.0.9", 5000), "Tintin", 8, 42, Search.Forwarding.WALK);
+        assertTrue(own.isOwn());
+        List<Neighbour> neighbours = Arrays.asList(neighbour("10.0.0.1"), neighbour("10.0.0.2"), neighbour("10.0.0.3"));
+        List<Neighbour> next = RandomWalkStrategy.pick(own, neighbours, 2);
+        assertEquals(2, next.size());
+        assertFalse(next.get(0).equals(next.get(1)));
+        assertEquals(3, RandomWalkStrategy.pick(own, neighbours, 5).size());
+    }
+
+    @Test
+    public void walkerGoesOnWhenTheOriginSaysSo() throws Exception {
+        assertEquals("SER", checkBack(0));
+    }
+
+    @Test
+    public void walkerStopsWhenTheOriginSaysSo() throws Exception {
+        assertNull(checkBack(1));
+    }
+
+    /**
+     * Sends a walker that has to check back with its origin over real sockets: the walker's node
+     * asks from its listening port and the origin answers from its own, as UdpServer does
+     *
+     * @param walkState the origin's answer
+     * @return what the next node got, {@code null} if nothing
+     */
+    private static String checkBack(int walkState) throws Exception {
+        InetAddress loopback = InetAddress.getLoopbackAddress();
+        UdpSender originSender = new UdpSender(1);
+        try (LoopbackNode walker = new LoopbackNode();
+             DatagramChannel origin = DatagramChannel.open().bind(new InetSocketAddress(loopback, 0));
+             DatagramSocket next = new DatagramSocket(new InetSocketAddress(loopback, 0))) {
+            originSender.attachNodeChannel(origin);
+
+            int originPort = ((InetSocketAddress) origin.getLocalAddress()).getPort();
+            Search query = new Search(EndpointRegistry.parse("127.0.0.1", originPort), "Tintin", 4, 42,
+                    Search.Forwarding.WALK);
+            query.setSender(InetAddress.getByName("10.0.0.1"), 5000);
+            new RandomWalkStrategy(2, 4, 2000).forward(query,
+                    Collections.singletonList(new Neighbour(loopback, next.getLocalPort())),
+                    buffer -> MessageEncoder.put(buffer, "SER"));
+
+            origin.socket().setSoTimeout(2000);
+            DatagramPacket walk = new DatagramPacket(new byte[1024], 1024);
+            origin.socket().receive(walk);
+            assertEquals(walker.getPort(), walk.getPort());
+            assertTrue(new String(walk.getData(), 0, walk.getLength(), StandardCharsets.UTF_8).contains("WALK"));
+            assertTrue(originSender.sendFromNodePort("0013 WALKOK " + walkState, walk.getAddress(), walk.getPort()));
+
+            next.setSoTimeout(walkState == 0 ? 2000 : 500);
+            DatagramPacket forwarded = new DatagramPacket(new byte[1024], 1024);
+            try {
+                next.receive(forwarded);
+            } catch (SocketTimeoutException e) {
+                return null;
+            }
+            return new String(forwarded.getData(), 0, forwarded.getLength(), StandardCharsets.UTF_8);
+        } finally {
+            originSender.close();
+        }
+    }
+}